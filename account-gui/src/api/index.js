@@ -134,6 +134,10 @@ export function pollEnrollment(enrollmentKey) {
     return fetchJson(`/tiqr/poll-enrollment?enrollmentKey=${enrollmentKey}`)
 }
 
+export function longPollEnrollment(enrollmentKey, status) {
+    return fetchJson(`/tiqr/long-poll-enrollment?enrollmentKey=${enrollmentKey}&status=${status}`)
+}
+
 export function fetchQrCode(url) {
     return postPutJson("/tiqr/qrcode", {url}, "POST");
 }
@@ -165,6 +169,10 @@ export function pollAuthentication(sessionKey, id) {
     return fetchJson(`/tiqr/poll-authentication?sessionKey=${sessionKey}&id=${id}`)
 }
 
+export function longPollAuthentication(sessionKey, id, status) {
+    return fetchJson(`/tiqr/long-poll-authentication?sessionKey=${sessionKey}&id=${id}&status=${status}`)
+}
+
 export function rememberMe(hash) {
     return postPutJson("/tiqr/remember-me", {hash}, "PUT");
 }
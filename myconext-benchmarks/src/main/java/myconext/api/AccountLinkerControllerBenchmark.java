@@ -0,0 +1,52 @@
+package myconext.api;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The affiliations of the attributes returned by the institution when an account is linked
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountLinkerControllerBenchmark {
+
+    private static final String SCHAC_HOME_ORGANIZATION = "university.nl";
+
+    private Map<String, Object> affiliations;
+    private Map<String, Object> scopedAffiliations;
+
+    @Setup
+    public void setup() {
+        affiliations = new HashMap<>();
+        affiliations.put("eduperson_affiliation", Arrays.asList("student", "member", "employee", "affiliate"));
+
+        scopedAffiliations = new HashMap<>(affiliations);
+        scopedAffiliations.put("eduperson_scoped_affiliation", Arrays.asList(
+                "student@university.nl", "member@university.nl", "employee@faculty.university.nl", "affiliate@university.nl"));
+    }
+
+    @Benchmark
+    public List<String> parseAffiliations() {
+        return AccountLinkerController.parseAffiliations(affiliations, SCHAC_HOME_ORGANIZATION);
+    }
+
+    @Benchmark
+    public List<String> parseScopedAffiliations() {
+        return AccountLinkerController.parseAffiliations(scopedAffiliations, SCHAC_HOME_ORGANIZATION);
+    }
+
+    @Benchmark
+    public List<String> parseNoAffiliations() {
+        return AccountLinkerController.parseAffiliations(Collections.emptyMap(), SCHAC_HOME_ORGANIZATION);
+    }
+}
@@ -0,0 +1,28 @@
+package myconext.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks with the standard JMH command line options, e.g. java -jar benchmarks.jar ACRBenchmark -f 1.
+ * Unless a result file or format is given with -rff or -rf the results are written as JSON to jmh-result-{version}.json, so the
+ * results of different releases can be compared.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (!commandLineOptions.getResult().hasValue() && !commandLineOptions.getResultFormat().hasValue()) {
+            String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+            options.resultFormat(ResultFormatType.JSON)
+                    .result(String.format("jmh-result-%s.json", version == null ? "SNAPSHOT" : version));
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,89 @@
+package myconext.benchmarks;
+
+import myconext.crypto.TokenGenerator;
+import myconext.manage.ServiceProviderResolver;
+import myconext.model.LinkedAccount;
+import myconext.model.ServiceProvider;
+import myconext.model.User;
+import myconext.repository.UserRepository;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/*
+ * Realistic fixtures for the benchmarks: a user who has logged in at 50 service providers and linked 5 institution
+ * accounts. Half of the service providers belong to an institution and are matched on the institution guid.
+ */
+public class Fixtures {
+
+    public static final int SERVICE_PROVIDERS = 50;
+    public static final int LINKED_ACCOUNTS = 5;
+
+    private Fixtures() {
+    }
+
+    public static String entityId(int i) {
+        return String.format("https://sp%s.example.org/metadata", i);
+    }
+
+    public static String schacHomeOrganization(int i) {
+        return String.format("university%s.nl", i);
+    }
+
+    public static ServiceProviderResolver serviceProviderResolver() {
+        Map<String, ServiceProvider> serviceProviders = new HashMap<>();
+        for (int i = 0; i < SERVICE_PROVIDERS; i++) {
+            String institutionGuid = i % 2 == 0 ? UUID.nameUUIDFromBytes(entityId(i).getBytes()).toString() : null;
+            serviceProviders.put(entityId(i), new ServiceProvider(
+                    "Service " + i,
+                    "Dienst " + i,
+                    "https://static.surfconext.nl/media/sp/" + i + ".png",
+                    "https://sp" + i + ".example.org",
+                    institutionGuid));
+        }
+        return new ServiceProviderResolver() {
+            @Override
+            public void refresh() {
+            }
+
+            @Override
+            public Optional<ServiceProvider> resolve(String entityId) {
+                return Optional.ofNullable(serviceProviders.get(entityId));
+            }
+        };
+    }
+
+    public static User user(ServiceProviderResolver serviceProviderResolver) {
+        User user = new User(TokenGenerator.uuid(), "jdoe@example.org", "John", "Doe", "eduid.nl", "en",
+                entityId(0), serviceProviderResolver);
+        for (int i = 1; i < SERVICE_PROVIDERS; i++) {
+            user.computeEduIdForServiceProviderIfAbsent(entityId(i), serviceProviderResolver);
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < LINKED_ACCOUNTS; i++) {
+            String schacHomeOrganization = schacHomeOrganization(i);
+            user.getLinkedAccounts().add(new LinkedAccount(
+                    "urn:mace:terena.org:" + schacHomeOrganization,
+                    schacHomeOrganization,
+                    "jdoe@" + schacHomeOrganization,
+                    "John",
+                    "Doe",
+                    new ArrayList<>(Arrays.asList("student", "member@" + schacHomeOrganization, "affiliate")),
+                    new Date(now - TimeUnit.DAYS.toMillis(30L * i)),
+                    new Date(now + TimeUnit.DAYS.toMillis(365L - 30L * i))));
+        }
+        user.getAttributes().put("urn:mace:dir:attribute-def:eduPersonEntitlement",
+                Arrays.asList("urn:mace:surf.nl:entitlement:library", "urn:mace:surf.nl:entitlement:wifi"));
+        return user;
+    }
+
+    /*
+     * Only stubs, the invocations are not recorded
+     */
+    public static UserRepository userRepository() {
+        return mock(UserRepository.class, withSettings().stubOnly());
+    }
+}
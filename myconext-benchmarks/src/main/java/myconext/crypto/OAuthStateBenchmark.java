@@ -0,0 +1,33 @@
+package myconext.crypto;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One account linking round trip - creating and verifying the OAuth state - with the former BCrypt encoded uid and
+ * with the HMAC signed state
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OAuthStateBenchmark {
+
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final OAuthStateSigner stateSigner = new OAuthStateSigner("k1:0123456789abcdef0123456789abcdef", 900, Clock.systemUTC());
+
+    @Benchmark
+    public boolean bcrypt() {
+        return passwordEncoder.matches("1234567890", passwordEncoder.encode("1234567890"));
+    }
+
+    @Benchmark
+    public boolean hmac() {
+        return stateSigner.verify(stateSigner.sign("1234567890", "authn-request-id"), "1234567890");
+    }
+}
@@ -0,0 +1,35 @@
+package myconext.crypto;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares 64 concurrent threads generating hashes with one shared SecureRandom and with the per-thread
+ * TokenGenerator
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class TokenGeneratorBenchmark {
+
+    private final SecureRandom sharedRandom = new SecureRandom();
+
+    @Benchmark
+    public String sharedSecureRandom() {
+        byte[] bytes = new byte[64];
+        sharedRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public String tokenGenerator() {
+        return TokenGenerator.urlSafeToken(64);
+    }
+}
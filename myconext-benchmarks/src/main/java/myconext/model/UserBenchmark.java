@@ -0,0 +1,48 @@
+package myconext.model;
+
+import myconext.benchmarks.Fixtures;
+import myconext.manage.ServiceProviderResolver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The eduID lookup for a user with 50 eduIDs. For an unknown service provider the new eduID is removed again, so
+ * every invocation starts with the same user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserBenchmark {
+
+    private ServiceProviderResolver serviceProviderResolver;
+    private User user;
+
+    @Setup
+    public void setup() {
+        serviceProviderResolver = Fixtures.serviceProviderResolver();
+        user = Fixtures.user(serviceProviderResolver);
+    }
+
+    @Benchmark
+    public String computeEduIdFirstServiceProvider() {
+        return user.computeEduIdForServiceProviderIfAbsent(Fixtures.entityId(0), serviceProviderResolver);
+    }
+
+    @Benchmark
+    public String computeEduIdLastServiceProvider() {
+        return user.computeEduIdForServiceProviderIfAbsent(Fixtures.entityId(Fixtures.SERVICE_PROVIDERS - 1), serviceProviderResolver);
+    }
+
+    @Benchmark
+    public String computeEduIdUnknownServiceProvider() {
+        String eduID = user.computeEduIdForServiceProviderIfAbsent("https://unknown.example.org", serviceProviderResolver);
+        List<EduID> eduIDS = user.getEduIDS();
+        eduIDS.remove(eduIDS.size() - 1);
+        return eduID;
+    }
+}
@@ -0,0 +1,49 @@
+package myconext.security;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ACRBenchmark {
+
+    @Param({"none", "linked_institution", "affiliation_student", "validate_names"})
+    public String acr;
+
+    private List<String> acrValues;
+
+    @Setup
+    public void setup() {
+        switch (acr) {
+            case "none":
+                acrValues = Collections.emptyList();
+                break;
+            case "linked_institution":
+                acrValues = Collections.singletonList(ACR.LINKED_INSTITUTION);
+                break;
+            case "affiliation_student":
+                acrValues = Arrays.asList(ACR.LINKED_INSTITUTION, ACR.AFFILIATION_STUDENT);
+                break;
+            default:
+                acrValues = Arrays.asList(ACR.LINKED_INSTITUTION, ACR.AFFILIATION_STUDENT, ACR.VALIDATE_NAMES);
+        }
+    }
+
+    @Benchmark
+    public String selectACR() {
+        return ACR.selectACR(acrValues, true);
+    }
+
+    @Benchmark
+    public String explanationKeyWord() {
+        return ACR.explanationKeyWord(acrValues, true);
+    }
+}
@@ -0,0 +1,64 @@
+package myconext.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import myconext.session.SessionConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The allow list of email domains, checked for every new account. The list has the size of all the Dutch
+ * institutions and the allowed domain of the email is the last one in the list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailDomainGuardBenchmark {
+
+    private static final int DOMAINS = 250;
+
+    private EmailDomainGuard emailDomainGuard;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new SessionConfig().jsonMapper();
+        List<Map<String, String>> allowedDomains = new ArrayList<>();
+        for (int i = 0; i < DOMAINS; i++) {
+            Map<String, String> allowedDomain = new LinkedHashMap<>();
+            allowedDomain.put("emailDomain", String.format("university%s.nl", i));
+            allowedDomain.put("schacHomeOrganization", String.format("university%s.nl", i));
+            allowedDomains.add(allowedDomain);
+        }
+        ByteArrayResource resource = new ByteArrayResource(objectMapper.writeValueAsBytes(allowedDomains));
+        emailDomainGuard = new EmailDomainGuard(true, resource, objectMapper);
+    }
+
+    @Benchmark
+    public void enforceIsAllowed() {
+        emailDomainGuard.enforceIsAllowed(String.format("jdoe@University%s.NL", DOMAINS - 1));
+    }
+
+    @Benchmark
+    public void enforceIsAllowedSubdomain() {
+        emailDomainGuard.enforceIsAllowed(String.format("jdoe@student.university%s.nl", DOMAINS - 1));
+    }
+
+    @Benchmark
+    public void enforceIsDenied(Blackhole blackhole) {
+        try {
+            emailDomainGuard.enforceIsAllowed("jdoe@example.org");
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+}
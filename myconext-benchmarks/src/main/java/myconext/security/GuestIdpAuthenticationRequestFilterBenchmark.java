@@ -0,0 +1,64 @@
+package myconext.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.benchmarks.Fixtures;
+import myconext.manage.ServiceProviderResolver;
+import myconext.metrics.LoginMetrics;
+import myconext.metrics.LoginStatsRollup;
+import myconext.model.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.saml.saml2.attribute.Attribute;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The attributes of the SAML assertion, computed for every login. The requester is the last service provider of the
+ * user, so the lookup of the eduID scans all 50 eduIDs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GuestIdpAuthenticationRequestFilterBenchmark {
+
+    private GuestIdpAuthenticationRequestFilter filter;
+    private User user;
+    private String requesterEntityId;
+
+    @Setup
+    public void setup() {
+        ServiceProviderResolver serviceProviderResolver = Fixtures.serviceProviderResolver();
+        filter = new GuestIdpAuthenticationRequestFilter(null,
+                null,
+                null,
+                serviceProviderResolver,
+                null,
+                Fixtures.userRepository(),
+                null,
+                90,
+                1,
+                1,
+                false,
+                null,
+                null,
+                180,
+                360,
+                new LoginMetrics(new SimpleMeterRegistry(), new LoginStatsRollup()));
+        user = Fixtures.user(serviceProviderResolver);
+        requesterEntityId = Fixtures.entityId(Fixtures.SERVICE_PROVIDERS - 1);
+    }
+
+    @Benchmark
+    public List<Attribute> attributes() {
+        return filter.attributes(user, requesterEntityId, Collections.emptyList());
+    }
+
+    @Benchmark
+    public List<Attribute> attributesValidateNames() {
+        return filter.attributes(user, requesterEntityId, Collections.singletonList(ACR.VALIDATE_NAMES));
+    }
+}
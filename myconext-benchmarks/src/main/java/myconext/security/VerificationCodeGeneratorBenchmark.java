@@ -0,0 +1,28 @@
+package myconext.security;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerificationCodeGeneratorBenchmark {
+
+    @Benchmark
+    public String generate() {
+        return VerificationCodeGenerator.generate();
+    }
+
+    @Benchmark
+    public String generateBackupCode() {
+        return VerificationCodeGenerator.generateBackupCode();
+    }
+
+    @Benchmark
+    public String generatePhoneVerification() {
+        return VerificationCodeGenerator.generatePhoneVerification();
+    }
+}
@@ -0,0 +1,42 @@
+package myconext.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import myconext.benchmarks.Fixtures;
+import myconext.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The jsonMapper (de)serializing a user with 50 eduIDs and 5 linked accounts
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMapperBenchmark {
+
+    private ObjectMapper jsonMapper;
+    private User user;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonMapper = new SessionConfig().jsonMapper();
+        user = Fixtures.user(Fixtures.serviceProviderResolver());
+        json = jsonMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return jsonMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User deserialize() throws IOException {
+        return jsonMapper.readValue(json, User.class);
+    }
+}
@@ -0,0 +1,78 @@
+package myconext.session;
+
+import myconext.benchmarks.Fixtures;
+import myconext.model.User;
+import myconext.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+/*
+ * The (de)serialization of a session with the full User and with only a principal reference. The rehydration of the
+ * principal reference is served from the cache of the CompactSessionDeserializer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionSerializationBenchmark {
+
+    private final SerializingConverter fullSerializer = new SerializingConverter();
+    private final DeserializingConverter fullDeserializer = new DeserializingConverter();
+    private final CompactSessionSerializer compactSerializer = new CompactSessionSerializer();
+    private CompactSessionDeserializer compactDeserializer;
+    private Map<String, Object> attributes;
+    private byte[] full;
+    private byte[] compact;
+
+    @Setup
+    public void setup() {
+        User user = Fixtures.user(Fixtures.serviceProviderResolver());
+        Field id = ReflectionUtils.findField(User.class, "id");
+        ReflectionUtils.makeAccessible(id);
+        ReflectionUtils.setField(id, user, "5f0c4d2e8e4b2a6d3c1b0a99");
+        UserRepository userRepository = Fixtures.userRepository();
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        compactDeserializer = new CompactSessionDeserializer(userRepository, 60);
+
+        attributes = new HashMap<>();
+        attributes.put(SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+                new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities())));
+        full = fullSerializer.convert(attributes);
+        compact = compactSerializer.convert(attributes);
+    }
+
+    @Benchmark
+    public byte[] serializeFull() {
+        return fullSerializer.convert(attributes);
+    }
+
+    @Benchmark
+    public byte[] serializeCompact() {
+        return compactSerializer.convert(attributes);
+    }
+
+    @Benchmark
+    public Object deserializeFull() {
+        return fullDeserializer.convert(full);
+    }
+
+    @Benchmark
+    public Object deserializeCompact() {
+        return compactDeserializer.convert(compact);
+    }
+}
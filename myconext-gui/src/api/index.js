@@ -149,6 +149,10 @@ export function pollEnrollment(enrollmentKey) {
     return fetchJson(`/tiqr/poll-enrollment?enrollmentKey=${enrollmentKey}`)
 }
 
+export function longPollEnrollment(enrollmentKey, status) {
+    return fetchJson(`/tiqr/long-poll-enrollment?enrollmentKey=${enrollmentKey}&status=${status}`)
+}
+
 export function generateBackupCode() {
     return fetchJson(`/tiqr/sp/generate-backup-code`)
 }
@@ -173,6 +177,10 @@ export function pollAuthentication(sessionKey) {
     return fetchJson(`/tiqr/sp/poll-authentication?sessionKey=${sessionKey}`)
 }
 
+export function longPollAuthentication(sessionKey, status) {
+    return fetchJson(`/tiqr/sp/long-poll-authentication?sessionKey=${sessionKey}&status=${status}`)
+}
+
 export function manualResponse(sessionKey, response) {
     return postPutJson("/tiqr/sp/manual-response",{sessionKey, response}, "POST")
 }
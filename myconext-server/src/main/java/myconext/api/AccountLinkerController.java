@@ -1,12 +1,15 @@
 package myconext.api;
 
 
+import myconext.crypto.OAuthStateSigner;
 import myconext.exceptions.ForbiddenException;
 import myconext.exceptions.UserNotFoundException;
+import myconext.http.HttpClientFactory;
 import myconext.model.LinkedAccount;
 import myconext.model.SamlAuthenticationRequest;
 import myconext.model.StepUpStatus;
 import myconext.model.User;
+import myconext.oidcng.IdTokenVerifier;
 import myconext.repository.AuthenticationRequestRepository;
 import myconext.repository.UserRepository;
 import myconext.security.ACR;
@@ -16,7 +19,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -53,7 +55,7 @@ public class AccountLinkerController {
     private final String clientSecret;
     private final String idpFlowRedirectUri;
     private final String spFlowRedirectUri;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private final AuthenticationRequestRepository authenticationRequestRepository;
     private final UserRepository userRepository;
     private final String magicLinkUrl;
@@ -65,11 +67,16 @@ public class AccountLinkerController {
     private final String myConextSpEntityId;
     private final boolean useExternalValidationFeature;
 
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final OAuthStateSigner stateSigner;
+    private final IdTokenVerifier idTokenVerifier;
+    private final List<String> idTokenRequiredClaims;
 
     public AccountLinkerController(
             AuthenticationRequestRepository authenticationRequestRepository,
             UserRepository userRepository,
+            OAuthStateSigner stateSigner,
+            HttpClientFactory httpClientFactory,
+            IdTokenVerifier idTokenVerifier,
             @Value("${email.magic-link-url}") String magicLinkUrl,
             @Value("${idp_redirect_url}") String idpErrorRedirectUrl,
             @Value("${sp_redirect_url}") String spRedirectUrl,
@@ -78,6 +85,7 @@ public class AccountLinkerController {
             @Value("${oidc.idp-flow-redirect-url}") String idpFlowRedirectUri,
             @Value("${oidc.sp-flow-redirect-url}") String spFlowRedirectUri,
             @Value("${oidc.base-url}") String oidcBaseUrl,
+            @Value("${oidc.id-token-required-claims}") String[] idTokenRequiredClaims,
             @Value("${linked_accounts.removal-duration-days-non-validated}") long removalNonValidatedDurationDays,
             @Value("${linked_accounts.removal-duration-days-validated}") long removalValidatedDurationDays,
             @Value("${account_linking.idp_external_validation_entity_id}") String idpExternalValidationEntityId,
@@ -85,8 +93,12 @@ public class AccountLinkerController {
             @Value("${feature.use_external_validation}") boolean useExternalValidationFeature) {
         this.authenticationRequestRepository = authenticationRequestRepository;
         this.userRepository = userRepository;
+        this.stateSigner = stateSigner;
+        this.idTokenVerifier = idTokenVerifier;
+        this.idTokenRequiredClaims = Arrays.asList(idTokenRequiredClaims);
         this.magicLinkUrl = magicLinkUrl;
         this.idpErrorRedirectUrl = idpErrorRedirectUrl;
+        this.restTemplate = httpClientFactory.restTemplate("oidcng");
         this.spRedirectUrl = spRedirectUrl;
         this.clientId = clientId;
         this.clientSecret = clientSecret;
@@ -120,7 +132,7 @@ public class AccountLinkerController {
         String userId = samlAuthenticationRequest.getUserId();
         User user = userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(userId));
 
-        String state = String.format("id=%s&user_uid=%s", id, passwordEncoder.encode(user.getUid()));
+        String state = stateSigner.sign(user.getUid(), id);
         UriComponents uriComponents = doStartLinkAccountFlow(state, idpFlowRedirectUri, forceAuth,
                 samlAuthenticationRequest.isUseExternalValidation(), samlAuthenticationRequest.getRequesterEntityId());
         return ResponseEntity.status(HttpStatus.FOUND).location(uriComponents.toUri()).build();
@@ -130,7 +142,7 @@ public class AccountLinkerController {
     public ResponseEntity startSPLinkAccountFlow(Authentication authentication) throws UnsupportedEncodingException {
         LOG.debug("Start link account flow");
         User principal = (User) authentication.getPrincipal();
-        String state = passwordEncoder.encode(principal.getUid());
+        String state = stateSigner.sign(principal.getUid(), null);
 
         UriComponents uriComponents = doStartLinkAccountFlow(state, spFlowRedirectUri, true, false, myConextSpEntityId);
         return ResponseEntity.ok(Collections.singletonMap("url", uriComponents.toUriString()));
@@ -164,7 +176,7 @@ public class AccountLinkerController {
         Optional<User> userOptional = userRepository.findUserByUid(uid);
         User user = userOptional.orElseThrow(() -> new UserNotFoundException(uid));
 
-        if (!passwordEncoder.matches(user.getUid(), URLDecoder.decode(state, "UTF-8"))) {
+        if (!stateSigner.verify(URLDecoder.decode(state, "UTF-8"), user.getUid())) {
             throw new ForbiddenException("Non matching user");
         }
 
@@ -178,9 +190,7 @@ public class AccountLinkerController {
     @GetMapping("/idp/oidc/redirect")
     public ResponseEntity idpFlowRedirect(HttpServletRequest request, @RequestParam("code") String code, @RequestParam("state") String state) throws UnsupportedEncodingException {
         String decodedState = URLDecoder.decode(state, "UTF-8");
-        MultiValueMap<String, String> params = UriComponentsBuilder.fromHttpUrl("http://localhost?" + decodedState).build().getQueryParams();
-        String id = params.getFirst("id");
-        String encodedUserUid = params.getFirst("user_uid");
+        String id = stateSigner.authenticationRequestId(decodedState).orElseThrow(() -> new ForbiddenException("Invalid state"));
 
         Optional<SamlAuthenticationRequest> optionalSamlAuthenticationRequest = authenticationRequestRepository.findByIdAndNotExpired(id);
         if (!optionalSamlAuthenticationRequest.isPresent()) {
@@ -190,7 +200,7 @@ public class AccountLinkerController {
         String userId = samlAuthenticationRequest.getUserId();
         User user = userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(userId));
 
-        if (!passwordEncoder.matches(user.getUid(), encodedUserUid)) {
+        if (!stateSigner.verify(decodedState, user.getUid())) {
             throw new ForbiddenException("Non matching user");
         }
 
@@ -252,12 +262,19 @@ public class AccountLinkerController {
         };
         Map<String, Object> body = restTemplate.exchange(oidcBaseUrl + "/oidc/token", HttpMethod.POST, request, parameterizedTypeReference).getBody();
 
-        map = new LinkedMultiValueMap<>();
-        map.add("access_token", (String) body.get("access_token"));
+        //The userinfo endpoint is only called when the id_token is not valid or misses claims
+        Optional<Map<String, Object>> idTokenClaims = idTokenVerifier.claims((String) body.get("id_token"))
+                .filter(claims -> claims.keySet().containsAll(idTokenRequiredClaims));
+        if (idTokenClaims.isPresent()) {
+            body = idTokenClaims.get();
+        } else {
+            map = new LinkedMultiValueMap<>();
+            map.add("access_token", (String) body.get("access_token"));
 
-        request = new HttpEntity<>(map, headers);
+            request = new HttpEntity<>(map, headers);
 
-        body = restTemplate.exchange(oidcBaseUrl + "/oidc/userinfo", HttpMethod.POST, request, parameterizedTypeReference).getBody();
+            body = restTemplate.exchange(oidcBaseUrl + "/oidc/userinfo", HttpMethod.POST, request, parameterizedTypeReference).getBody();
+        }
 
         String eppn = (String) body.get("eduperson_principal_name");
         String surfCrmId = (String) body.get("surf-crm-id");
@@ -0,0 +1,94 @@
+package myconext.api;
+
+import myconext.exceptions.BadRequestException;
+import myconext.model.LoginStat;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/*
+ * Queries the hourly login statistics in the login_stats collection. Only the rollups of the requested period are
+ * aggregated, so the response time does not depend on the number of logins.
+ */
+@RestController
+@RequestMapping("/myconext/api")
+public class SystemController {
+
+    private static final Map<String, String> DIMENSIONS = new LinkedHashMap<>();
+
+    static {
+        DIMENSIONS.put("login_method", "loginMethod");
+        DIMENSIONS.put("requester_entity_id", "requesterEntityId");
+        DIMENSIONS.put("outcome", "outcome");
+    }
+
+    private final MongoTemplate mongoTemplate;
+
+    public SystemController(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @GetMapping(value = "system/stats")
+    @PreAuthorize("hasRole('ROLE_system')")
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<List<Map<String, Object>>> stats(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @RequestParam(value = "login_method", required = false) String loginMethod,
+            @RequestParam(value = "requester_entity_id", required = false) String requesterEntityId,
+            @RequestParam(value = "outcome", required = false) String outcome,
+            @RequestParam(value = "group_by", required = false, defaultValue = "login_method,outcome") List<String> groupBy) {
+        Instant end = to != null ? to.toInstant() : Instant.now();
+        Instant start = from != null ? from.toInstant() : end.minus(1, ChronoUnit.DAYS);
+        if (!start.isBefore(end)) {
+            throw new BadRequestException("The from parameter must be before the to parameter");
+        }
+        String[] groupFields = groupBy.stream()
+                .filter(StringUtils::hasText)
+                .map(dimension -> {
+                    String field = DIMENSIONS.get(dimension.trim());
+                    if (field == null) {
+                        throw new BadRequestException("Unknown group_by " + dimension + ", allowed are " + DIMENSIONS.keySet());
+                    }
+                    return field;
+                })
+                .distinct()
+                .toArray(String[]::new);
+
+        //The bucket is the start of the hour, so the hour which contains the start is included
+        Criteria criteria = Criteria.where("bucket")
+                .gte(Date.from(start.truncatedTo(ChronoUnit.HOURS)))
+                .lt(Date.from(end));
+        Optional.ofNullable(loginMethod).ifPresent(value -> criteria.and("loginMethod").is(value));
+        Optional.ofNullable(requesterEntityId).ifPresent(value -> criteria.and("requesterEntityId").is(value));
+        Optional.ofNullable(outcome).ifPresent(value -> criteria.and("outcome").is(value));
+
+        GroupOperation group = Aggregation.group(groupFields).sum("count").as("count");
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(criteria));
+        operations.add(group);
+        operations.add(Aggregation.project(groupFields).and("count").as("count").andExclude("_id"));
+        operations.add(Aggregation.sort(Sort.Direction.DESC, "count"));
+
+        List<Map<String, Object>> stats = new ArrayList<>();
+        mongoTemplate.aggregate(Aggregation.newAggregation(operations), LoginStat.class, Map.class)
+                .getMappedResults()
+                .forEach(stat -> stats.add((Map<String, Object>) stat));
+        return ResponseEntity.ok(stats);
+    }
+}
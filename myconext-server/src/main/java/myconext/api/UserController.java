@@ -8,18 +8,24 @@ import com.yubico.webauthn.data.*;
 import com.yubico.webauthn.data.exception.Base64UrlException;
 import com.yubico.webauthn.exception.AssertionFailedException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
+import myconext.concurrent.LookupExecutor;
 import myconext.cron.IdPMetaDataResolver;
+import myconext.cron.UserDeletionJob;
+import myconext.crypto.PasswordHasher;
+import myconext.crypto.TokenGenerator;
 import myconext.exceptions.ExpiredAuthenticationException;
 import myconext.exceptions.ForbiddenException;
 import myconext.exceptions.UserNotFoundException;
 import myconext.mail.MailBox;
 import myconext.manage.ServiceProviderHolder;
 import myconext.manage.ServiceProviderResolver;
+import myconext.metrics.LoginMetrics;
 import myconext.model.*;
 import myconext.oidcng.OpenIDConnect;
 import myconext.repository.*;
 import myconext.security.EmailDomainGuard;
 import myconext.security.EmailGuessingPrevention;
+import myconext.webauthn.ChallengeStore;
 import myconext.webauthn.UserCredentialRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,8 +37,6 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
@@ -46,10 +50,11 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
-import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
+import static myconext.concurrent.LookupExecutor.join;
 import static myconext.crypto.HashGenerator.hash;
 import static myconext.log.MDCContext.logLoginWithContext;
 import static myconext.log.MDCContext.logWithContext;
@@ -59,6 +64,8 @@ import static myconext.log.MDCContext.logWithContext;
 public class UserController implements ServiceProviderHolder {
 
     private static final Log LOG = LogFactory.getLog(UserController.class);
+    //Shared by all nodes through the session, so no node returns tokens it cached before they were deleted
+    private static final String TOKENS_DELETED_AT = "tokens_deleted_at";
 
     private final UserRepository userRepository;
     private final AuthenticationRequestRepository authenticationRequestRepository;
@@ -71,22 +78,24 @@ public class UserController implements ServiceProviderHolder {
     private final String idpBaseUrl;
     private final RelyingParty relyingParty;
     private final UserCredentialRepository userCredentialRepository;
-    private final ChallengeRepository challengeRepository;
+    private final ChallengeStore challengeStore;
     private final PasswordForgottenHashRepository passwordForgottenHashRepository;
     private final ChangeEmailHashRepository changeEmailHashRepository;
 
-    private final static SecureRandom random = new SecureRandom();
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(-1, random);
+    private final PasswordHasher passwordEncoder;
     private final EmailGuessingPrevention emailGuessingPreventor;
     private final EmailDomainGuard emailDomainGuard;
     private final IdPMetaDataResolver idPMetaDataResolver;
     private final String spBaseUrl;
     private final ObjectMapper objectMapper;
     private final RegistrationRepository registrationRepository;
+    private final LoginMetrics loginMetrics;
+    private final LookupExecutor lookupExecutor;
+    private final UserDeletionJob userDeletionJob;
 
     public UserController(UserRepository userRepository,
                           UserCredentialRepository userCredentialRepository,
-                          ChallengeRepository challengeRepository,
+                          ChallengeStore challengeStore,
                           PasswordForgottenHashRepository passwordForgottenHashRepository,
                           ChangeEmailHashRepository changeEmailHashRepository,
                           AuthenticationRequestRepository authenticationRequestRepository,
@@ -96,17 +105,21 @@ public class UserController implements ServiceProviderHolder {
                           IdPMetaDataResolver idPMetaDataResolver,
                           EmailDomainGuard emailDomainGuard,
                           RegistrationRepository registrationRepository,
+                          PasswordHasher passwordHasher,
+                          LoginMetrics loginMetrics,
+                          LookupExecutor lookupExecutor,
+                          UserDeletionJob userDeletionJob,
+                          EmailGuessingPrevention emailGuessingPrevention,
                           @Qualifier("jsonMapper") ObjectMapper objectMapper,
                           @Value("${email.magic-link-url}") String magicLinkUrl,
                           @Value("${schac_home_organization}") String schacHomeOrganization,
-                          @Value("${email_guessing_sleep_millis}") int emailGuessingSleepMillis,
                           @Value("${sp_redirect_url}") String spBaseUrl,
                           @Value("${idp_redirect_url}") String idpBaseUrl,
                           @Value("${rp_origin}") String rpOrigin,
                           @Value("${rp_id}") String rpId) {
         this.userRepository = userRepository;
         this.userCredentialRepository = userCredentialRepository;
-        this.challengeRepository = challengeRepository;
+        this.challengeStore = challengeStore;
         this.passwordForgottenHashRepository = passwordForgottenHashRepository;
         this.changeEmailHashRepository = changeEmailHashRepository;
         this.authenticationRequestRepository = authenticationRequestRepository;
@@ -116,6 +129,10 @@ public class UserController implements ServiceProviderHolder {
         this.idPMetaDataResolver = idPMetaDataResolver;
         this.emailDomainGuard = emailDomainGuard;
         this.registrationRepository = registrationRepository;
+        this.passwordEncoder = passwordHasher;
+        this.loginMetrics = loginMetrics;
+        this.lookupExecutor = lookupExecutor;
+        this.userDeletionJob = userDeletionJob;
         this.objectMapper = objectMapper;
         this.magicLinkUrl = magicLinkUrl;
         this.schacHomeOrganization = schacHomeOrganization;
@@ -123,7 +140,7 @@ public class UserController implements ServiceProviderHolder {
         this.spBaseUrl = spBaseUrl;
         this.webAuthnSpRedirectUrl = String.format("%s/security", spBaseUrl);
         this.relyingParty = relyingParty(rpId, rpOrigin);
-        this.emailGuessingPreventor = new EmailGuessingPrevention(emailGuessingSleepMillis);
+        this.emailGuessingPreventor = emailGuessingPrevention;
     }
 
     @GetMapping("/idp/email/domain/institutional")
@@ -146,11 +163,12 @@ public class UserController implements ServiceProviderHolder {
     }
 
     @PostMapping("/idp/service/email")
-    public List<String> knownAccount(@RequestBody Map<String, String> email) {
-        emailGuessingPreventor.potentialUserEmailGuess();
-        User user = userRepository.findUserByEmail(email.get("email"))
-                .orElseThrow(() -> new UserNotFoundException(String.format("User with email %s not found", email.get("email"))));
-        return user.loginOptions();
+    public CompletableFuture<List<String>> knownAccount(@RequestBody Map<String, String> email) {
+        return emailGuessingPreventor.potentialUserEmailGuess(() -> {
+            User user = userRepository.findUserByEmail(email.get("email"))
+                    .orElseThrow(() -> new UserNotFoundException(String.format("User with email %s not found", email.get("email"))));
+            return user.loginOptions();
+        });
     }
 
     @GetMapping("/idp/service/hash/{hash}")
@@ -160,7 +178,7 @@ public class UserController implements ServiceProviderHolder {
     }
 
     @PostMapping("/idp/magic_link_request")
-    public ResponseEntity newMagicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
+    public CompletableFuture<ResponseEntity> newMagicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
         SamlAuthenticationRequest samlAuthenticationRequest = authenticationRequestRepository.findByIdAndNotExpired(magicLinkRequest.getAuthenticationRequestId())
                 .orElseThrow(ExpiredAuthenticationException::new);
 
@@ -168,27 +186,28 @@ public class UserController implements ServiceProviderHolder {
 
         String email = user.getEmail();
         emailDomainGuard.enforceIsAllowed(email);
-        emailGuessingPreventor.potentialUserEmailGuess();
 
-        Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
-        if (optionalUser.isPresent()) {
-            return ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(Collections.singletonMap("status", HttpStatus.CONFLICT.value()));
-        }
-        String preferredLanguage = LocaleContextHolder.getLocale().getLanguage();
-        //prevent not-wanted attributes in the database
-        String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
-        String schacHomeOrganization = this.emailDomainGuard.schacHomeOrganizationByDomain(this.schacHomeOrganization, email);
+        return emailGuessingPreventor.potentialUserEmailGuess(() -> {
+            Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
+            if (optionalUser.isPresent()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Collections.singletonMap("status", HttpStatus.CONFLICT.value()));
+            }
+            String preferredLanguage = LocaleContextHolder.getLocale().getLanguage();
+            //prevent not-wanted attributes in the database
+            String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
+            String schacHomeOrganization = this.emailDomainGuard.schacHomeOrganizationByDomain(this.schacHomeOrganization, email);
 
-        User userToSave = new User(UUID.randomUUID().toString(), email, user.getGivenName(),
-                user.getFamilyName(), schacHomeOrganization, preferredLanguage, requesterEntityId, serviceProviderResolver);
-        userToSave = userRepository.save(userToSave);
+            User userToSave = new User(TokenGenerator.uuid(), email, user.getGivenName(),
+                    user.getFamilyName(), schacHomeOrganization, preferredLanguage, requesterEntityId, serviceProviderResolver);
+            userToSave = userRepository.save(userToSave);
 
-        return this.doMagicLink(userToSave, samlAuthenticationRequest, magicLinkRequest.isRememberMe(), false, request);
+            return this.doMagicLink(userToSave, samlAuthenticationRequest, magicLinkRequest.isRememberMe(), false, request);
+        });
     }
 
     @PutMapping("/idp/magic_link_request")
-    public ResponseEntity magicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
+    public CompletableFuture<ResponseEntity> magicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
         SamlAuthenticationRequest samlAuthenticationRequest = authenticationRequestRepository.findByIdAndNotExpired(magicLinkRequest.getAuthenticationRequestId())
                 .orElseThrow(ExpiredAuthenticationException::new);
 
@@ -196,29 +215,37 @@ public class UserController implements ServiceProviderHolder {
 
         String email = providedUser.getEmail();
         emailDomainGuard.enforceIsAllowed(email);
-        emailGuessingPreventor.potentialUserEmailGuess();
 
-        Optional<User> optionalUser = findUserStoreLanguage(email);
-        if (!optionalUser.isPresent()) {
-            return return404();
-        }
-        User user = optionalUser.get();
-        String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
+        return emailGuessingPreventor.potentialUserEmailGuess(() -> {
+            Optional<User> optionalUser = findUserStoreLanguage(email);
+            if (!optionalUser.isPresent()) {
+                return return404();
+            }
+            User user = optionalUser.get();
+            String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
 
-        logWithContext(user, "update", "user", LOG, "Updating user " + user.getEmail());
-        user.computeEduIdForServiceProviderIfAbsent(requesterEntityId, serviceProviderResolver);
-        userRepository.save(user);
+            logWithContext(user, "update", "user", LOG, "Updating user " + user.getEmail());
+            user.computeEduIdForServiceProviderIfAbsent(requesterEntityId, serviceProviderResolver);
+            userRepository.save(user);
 
-        if (magicLinkRequest.isUsePassword()) {
-            if (!passwordEncoder.matches(providedUser.getPassword(), user.getPassword())) {
-                logLoginWithContext(user, "password", false, LOG, "Bad attempt to login with password");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(Collections.singletonMap("status", HttpStatus.FORBIDDEN.value()));
+            if (magicLinkRequest.isUsePassword()) {
+                if (!passwordEncoder.matches(providedUser.getPassword(), user.getPassword())) {
+                    logLoginWithContext(user, "password", false, LOG, "Bad attempt to login with password");
+                    loginMetrics.login("password", requesterEntityId, false);
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                            .body(Collections.singletonMap("status", HttpStatus.FORBIDDEN.value()));
+                }
+                logLoginWithContext(user, "password", true, LOG, "Successfully logged in with password");
+                loginMetrics.login("password", requesterEntityId, true);
+                LOG.info("Successfully logged in with password");
+                if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+                    user.rehashPassword(providedUser.getPassword(), passwordEncoder);
+                    userRepository.save(user);
+                    passwordEncoder.rehashed();
+                }
             }
-            logLoginWithContext(user, "password", true, LOG, "Successfully logged in with password");
-            LOG.info("Successfully logged in with password");
-        }
-        return doMagicLink(user, samlAuthenticationRequest, magicLinkRequest.isRememberMe(), magicLinkRequest.isUsePassword(), request);
+            return doMagicLink(user, samlAuthenticationRequest, magicLinkRequest.isRememberMe(), magicLinkRequest.isUsePassword(), request);
+        });
     }
 
     @GetMapping("/idp/resend_magic_link_request")
@@ -250,8 +277,15 @@ public class UserController implements ServiceProviderHolder {
     @GetMapping(value = {"/sp/me", "sp/migrate/merge", "sp/migrate/proceed"})
     public ResponseEntity<UserResponse> me(Authentication authentication) {
         String userId = ((User) authentication.getPrincipal()).getId();
-        User user = userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(userId));
-        return userResponseRememberMe(user);
+        //The lookups only need the id of the user and run concurrently
+        CompletableFuture<Optional<Registration>> registration = lookupExecutor.supplyAsync("registration",
+                () -> registrationRepository.findRegistrationByUserId(userId));
+        CompletableFuture<Boolean> rememberMe = lookupExecutor.supplyAsync("remember_me",
+                () -> !authenticationRequestRepository.findByUserIdAndRememberMe(userId, true).isEmpty());
+        User user = lookupExecutor.timed("user",
+                () -> userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(userId)));
+        return ResponseEntity.ok(new UserResponse(user, convertEduIdPerServiceProvider(user),
+                join(registration), join(rememberMe)));
     }
 
     @DeleteMapping("/sp/forget")
@@ -315,6 +349,7 @@ public class UserController implements ServiceProviderHolder {
         ChangeEmailHash changeEmailHash = changeEmailHashRepository.findByHashAndUserId(hash, user.getId())
                 .orElseThrow(() -> new ForbiddenException("wrong_hash"));
 
+        userCredentialRepository.invalidate(user);
         user.setEmail(changeEmailHash.getNewEmail());
         userRepository.save(user);
         authenticationRequestRepository.deleteByUserId(user.getId());
@@ -433,6 +468,7 @@ public class UserController implements ServiceProviderHolder {
                 .collect(Collectors.toList());
         user.setPublicKeyCredentials(publicKeyCredentials);
         userRepository.save(user);
+        userCredentialRepository.synchronize(user);
 
         logWithContext(user, "delete", "webauthn_key", LOG, "Deleted publicKeyCredential " + credential.get("name"));
 
@@ -441,7 +477,8 @@ public class UserController implements ServiceProviderHolder {
 
     @PutMapping("/sp/service")
     public ResponseEntity<UserResponse> removeUserService(Authentication authentication,
-                                                          @RequestBody DeleteServiceTokens serviceAndTokens) {
+                                                          @RequestBody DeleteServiceTokens serviceAndTokens,
+                                                          HttpServletRequest request) {
         User user = userFromAuthentication(authentication);
 
         String eduIdValue = serviceAndTokens.getEduId();
@@ -453,18 +490,19 @@ public class UserController implements ServiceProviderHolder {
 
         logWithContext(user, "delete", "eppn", LOG, "Deleted eduID " + eduIdValue);
 
-        return doRemoveTokens(serviceAndTokens, user);
+        return doRemoveTokens(serviceAndTokens, user, request);
     }
 
     @PutMapping("/sp/tokens")
     public ResponseEntity<UserResponse> removeTokens(Authentication authentication,
-                                                     @RequestBody DeleteServiceTokens serviceAndTokens) {
+                                                     @RequestBody DeleteServiceTokens serviceAndTokens,
+                                                     HttpServletRequest request) {
         User user = userFromAuthentication(authentication);
 
         String eduIdValue = serviceAndTokens.getEduId();
         logWithContext(user, "delete", "tokens", LOG, "Deleted tokens " + eduIdValue);
 
-        return doRemoveTokens(serviceAndTokens, user);
+        return doRemoveTokens(serviceAndTokens, user, request);
     }
 
     @GetMapping("/sp/testWebAuthnUrl")
@@ -479,19 +517,27 @@ public class UserController implements ServiceProviderHolder {
         return ResponseEntity.status(200).body(Collections.singletonMap("url", loginUrl));
     }
 
-    private ResponseEntity<UserResponse> doRemoveTokens(@RequestBody DeleteServiceTokens serviceAndTokens, User user) {
+    private ResponseEntity<UserResponse> doRemoveTokens(@RequestBody DeleteServiceTokens serviceAndTokens, User user,
+                                                        HttpServletRequest request) {
         List<TokenRepresentation> tokens = serviceAndTokens.getTokens();
         if (!CollectionUtils.isEmpty(tokens)) {
+            request.getSession().setAttribute(TOKENS_DELETED_AT, System.currentTimeMillis());
             openIDConnect.deleteTokens(tokens, user);
         }
         return userResponseRememberMe(user);
     }
 
     @GetMapping("/sp/tokens")
-    public ResponseEntity<List<Map<String, Object>>> tokens(Authentication authentication) {
-        User user = userFromAuthentication(authentication);
-        List<Map<String, Object>> tokens = this.openIDConnect.tokens(user);
-        return ResponseEntity.ok(tokens);
+    public ResponseEntity<List<Map<String, Object>>> tokens(Authentication authentication, HttpServletRequest request) {
+        //The uid and schac home organization of the principal identify the tokens, the user is only verified to exist
+        User principal = (User) authentication.getPrincipal();
+        HttpSession session = request.getSession(false);
+        Object tokensDeletedAt = session != null ? session.getAttribute(TOKENS_DELETED_AT) : null;
+        long notBeforeMillis = tokensDeletedAt instanceof Long ? (Long) tokensDeletedAt : 0L;
+        CompletableFuture<List<Map<String, Object>>> tokens = lookupExecutor.supplyAsync("tokens",
+                () -> this.openIDConnect.tokens(principal, notBeforeMillis));
+        lookupExecutor.timed("user", () -> userFromAuthentication(authentication));
+        return ResponseEntity.ok(join(tokens));
     }
 
     private User userFromAuthentication(Authentication authentication) {
@@ -506,9 +552,11 @@ public class UserController implements ServiceProviderHolder {
 
 
     private ResponseEntity<UserResponse> userResponseRememberMe(User user) {
-        List<SamlAuthenticationRequest> samlAuthenticationRequests = authenticationRequestRepository.findByUserIdAndRememberMe(user.getId(), true);
-        Optional<Registration> optionalRegistration = registrationRepository.findRegistrationByUserId(user.getId());
-        return ResponseEntity.ok(new UserResponse(user, convertEduIdPerServiceProvider(user), optionalRegistration, !samlAuthenticationRequests.isEmpty()));
+        CompletableFuture<Optional<Registration>> registration = lookupExecutor.supplyAsync("registration",
+                () -> registrationRepository.findRegistrationByUserId(user.getId()));
+        boolean rememberMe = lookupExecutor.timed("remember_me",
+                () -> !authenticationRequestRepository.findByUserIdAndRememberMe(user.getId(), true).isEmpty());
+        return ResponseEntity.ok(new UserResponse(user, convertEduIdPerServiceProvider(user), join(registration), rememberMe));
     }
 
     @GetMapping("sp/security/webauthn")
@@ -535,11 +583,12 @@ public class UserController implements ServiceProviderHolder {
         if (!StringUtils.hasText(user.getUserHandle())) {
             user.setUserHandle(hash());
             userRepository.save(user);
+            userCredentialRepository.invalidate(user);
         }
         PublicKeyCredentialCreationOptions request = publicKeyCredentialCreationOptions(this.relyingParty, user);
         String challenge = request.getChallenge().getBase64Url();
         //we need to store the challenge to retrieve it later on the way back
-        challengeRepository.save(new Challenge(token, challenge));
+        challengeStore.save(new Challenge(token, challenge));
         return ResponseEntity.status(200).body(request);
     }
 
@@ -574,9 +623,8 @@ public class UserController implements ServiceProviderHolder {
 
         PublicKeyCredentialCreationOptions request = this.publicKeyCredentialCreationOptions(this.relyingParty, user);
         //Needed to succeed the validation
-        Challenge challenge = challengeRepository.findByToken(token).orElseThrow(ForbiddenException::new);
+        Challenge challenge = challengeStore.remove(token).orElseThrow(ForbiddenException::new);
         this.restoreChallenge(request, ByteArray.fromBase64Url(challenge.getChallenge()));
-        challengeRepository.delete(challenge);
 
         RegistrationResult result = this.relyingParty.finishRegistration(FinishRegistrationOptions.builder()
                 .request(request)
@@ -587,6 +635,7 @@ public class UserController implements ServiceProviderHolder {
 
         user.addPublicKeyCredential(keyId, publicKeyCose, name);
         userRepository.save(user);
+        userCredentialRepository.synchronize(user);
 
         logWithContext(user, "add", "webauthn_key", LOG, "Created publicKeyCredential " + name);
 
@@ -595,27 +644,44 @@ public class UserController implements ServiceProviderHolder {
 
 
     @PostMapping("idp/security/webauthn/authentication")
-    public ResponseEntity idpWebAuthnStartAuthentication(@RequestBody Map<String, String> body) {
+    public CompletableFuture<ResponseEntity> idpWebAuthnStartAuthentication(@RequestBody Map<String, String> body) {
         String email = body.get("email");
+        String authenticationRequestId = body.get("authenticationRequestId");
+        if (!StringUtils.hasText(email)) {
+            return CompletableFuture.completedFuture(doIdpWebAuthnStartUsernamelessAuthentication(authenticationRequestId));
+        }
         emailDomainGuard.enforceIsAllowed(email);
-        emailGuessingPreventor.potentialUserEmailGuess();
 
-        Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
-        if (!optionalUser.isPresent()) {
-            return return404();
-        }
-        User user = optionalUser.get();
+        return emailGuessingPreventor.potentialUserEmailGuess(() -> {
+            Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
+            if (!optionalUser.isPresent()) {
+                return return404();
+            }
+            User user = optionalUser.get();
 
-        AssertionRequest request = this.relyingParty.startAssertion(StartAssertionOptions.builder()
-                .username(Optional.of(user.getEmail()))
-                .build());
+            AssertionRequest request = this.relyingParty.startAssertion(StartAssertionOptions.builder()
+                    .username(Optional.of(user.getEmail()))
+                    .build());
+
+            String challenge = request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url();
+            // The user might have started webauthn already (and cancelled it). The store replaces the existing challenge
+            challengeStore.save(new Challenge(authenticationRequestId, challenge, user.getEmail()));
+
+            return ResponseEntity.status(200).body(request);
+        });
+    }
+
+    /*
+     * Without an email the authenticator chooses a discoverable credential and the user is resolved by the
+     * userHandle in the response
+     */
+    private ResponseEntity doIdpWebAuthnStartUsernamelessAuthentication(String authenticationRequestId) {
+        authenticationRequestRepository.findByIdAndNotExpired(authenticationRequestId)
+                .orElseThrow(ExpiredAuthenticationException::new);
+        AssertionRequest request = this.relyingParty.startAssertion(StartAssertionOptions.builder().build());
 
-        String authenticationRequestId = body.get("authenticationRequestId");
         String challenge = request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url();
-        // The user might have started webauthn already (and cancelled it). Need to prevent duplicates
-        challengeRepository.findByToken(authenticationRequestId)
-                .ifPresent(existingChallenge -> challengeRepository.delete(existingChallenge));
-        challengeRepository.save(new Challenge(authenticationRequestId, challenge, user.getEmail()));
+        challengeStore.save(new Challenge(authenticationRequestId, challenge));
 
         return ResponseEntity.status(200).body(request);
     }
@@ -631,9 +697,10 @@ public class UserController implements ServiceProviderHolder {
         PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> pkc =
                 PublicKeyCredential.parseAssertionResponseJson((String) body.get("credentials"));
 
-        Challenge challenge = challengeRepository.findByToken(authenticationRequestId).orElseThrow(ForbiddenException::new);
+        //A challenge can only be used once, also when the assertion fails
+        Challenge challenge = challengeStore.remove(authenticationRequestId).orElseThrow(ForbiddenException::new);
         AssertionRequest assertionRequest = this.relyingParty.startAssertion(StartAssertionOptions.builder()
-                .username(Optional.of(challenge.getEmail()))
+                .username(Optional.ofNullable(challenge.getEmail()))
                 .build());
         this.restoreChallenge(assertionRequest.getPublicKeyCredentialRequestOptions(), ByteArray.fromBase64Url(challenge.getChallenge()));
 
@@ -643,6 +710,7 @@ public class UserController implements ServiceProviderHolder {
                 .build());
 
         if (!result.isSuccess()) {
+            loginMetrics.login("webauthn", samlAuthenticationRequest.getRequesterEntityId(), false);
             if (samlAuthenticationRequest.isTestInstance()) {
                 //back to SP
                 String url = String.format("%s/security?success=false", spBaseUrl);
@@ -650,15 +718,17 @@ public class UserController implements ServiceProviderHolder {
             }
             throw new ForbiddenException();
         }
-        challengeRepository.delete(challenge);
 
-        Optional<User> optionalUser = findUserStoreLanguage(challenge.getEmail());
+        //For usernameless authentication the username is resolved by the userHandle of the discoverable credential
+        String email = StringUtils.hasText(challenge.getEmail()) ? challenge.getEmail() : result.getUsername();
+        Optional<User> optionalUser = findUserStoreLanguage(email);
         if (!optionalUser.isPresent()) {
             return return404();
         }
         User user = optionalUser.get();
 
         logLoginWithContext(user, "webauthn", true, LOG, "Successfully logged in with webauthn");
+        loginMetrics.login("webauthn", samlAuthenticationRequest.getRequesterEntityId(), true);
 
         if (samlAuthenticationRequest.isTestInstance()) {
             //back to SP
@@ -676,6 +746,10 @@ public class UserController implements ServiceProviderHolder {
                         .displayName(String.format("%s %s", user.getGivenName(), user.getFamilyName()))
                         .id(ByteArray.fromBase64Url(user.getUserHandle()))
                         .build())
+                //Discoverable credentials enable usernameless authentication
+                .authenticatorSelection(AuthenticatorSelectionCriteria.builder()
+                        .residentKey(ResidentKeyRequirement.PREFERRED)
+                        .build())
                 .build());
     }
 
@@ -721,6 +795,9 @@ public class UserController implements ServiceProviderHolder {
     public ResponseEntity deleteUser(Authentication authentication, HttpServletRequest request) {
         User user = userFromAuthentication(authentication);
         userRepository.delete(user);
+        userCredentialRepository.delete(user);
+        //The other data of the user is deleted in the background
+        userDeletionJob.enqueue(user, "account");
 
         logWithContext(user, "delete", "account", LOG, "Delete account");
 
@@ -756,7 +833,7 @@ public class UserController implements ServiceProviderHolder {
         samlAuthenticationRequest.setPasswordOrWebAuthnFlow(passwordOrWebAuthnFlow);
         samlAuthenticationRequest.setRememberMe(rememberMe);
         if (rememberMe) {
-            samlAuthenticationRequest.setRememberMeValue(UUID.randomUUID().toString());
+            samlAuthenticationRequest.setRememberMeValue(TokenGenerator.uuid());
         }
         authenticationRequestRepository.save(samlAuthenticationRequest);
         String serviceName = getServiceName(request, samlAuthenticationRequest);
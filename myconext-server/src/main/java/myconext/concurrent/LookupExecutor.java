@@ -0,0 +1,96 @@
+package myconext.concurrent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import myconext.tracing.Span;
+import myconext.tracing.Tracing;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Runs the independent lookups of a request - repository queries and remote calls - concurrently on a small pool, so
+ * the response takes as long as the slowest lookup instead of the sum of all lookups. Every lookup is timed. When the
+ * queue of the pool is full the lookup runs on the request thread.
+ */
+@Component
+public class LookupExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+
+    public LookupExecutor(@Value("${lookups.threads}") int threads,
+                          @Value("${lookups.queue-capacity}") int queueCapacity,
+                          MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "lookup-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(String name, Supplier<T> supplier) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        Span parent = Tracing.current();
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            if (context != null) {
+                MDC.setContextMap(context);
+            }
+            //On the request thread - when the queue is full - the lookup is a child span of the request
+            try (Span ignored = Tracing.current() == parent ? Tracing.start("lookup " + name) : Tracing.continueTrace(parent, "lookup " + name)) {
+                return timed(name, supplier);
+            } finally {
+                if (previous != null) {
+                    MDC.setContextMap(previous);
+                } else {
+                    MDC.clear();
+                }
+            }
+        }, executor);
+    }
+
+    /*
+     * Waits for the result of a lookup and re-throws the exception of the lookup
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    public <T> T timed(String name, Supplier<T> supplier) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = supplier.get();
+            outcome = "ok";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("myconext.lookup")
+                    .description("Duration of the lookups composing a response")
+                    .tag("lookup", name)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
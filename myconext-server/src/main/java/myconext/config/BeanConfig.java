@@ -2,6 +2,7 @@ package myconext.config;
 
 import myconext.mail.MailBox;
 import myconext.manage.ServiceProviderResolver;
+import myconext.metrics.LoginMetrics;
 import myconext.repository.AuthenticationRequestRepository;
 import myconext.repository.UserLoginRepository;
 import myconext.repository.UserRepository;
@@ -32,6 +33,7 @@ public class BeanConfig extends SamlIdentityProviderServerBeanConfiguration {
     private final String magicLinkUrl;
     private final MailBox mailBox;
     private final ServiceProviderResolver serviceProviderResolver;
+    private final LoginMetrics loginMetrics;
 
     public BeanConfig(@Value("${saml_metadata_base_path}") String samlMetadataBasePath,
                       @Value("${idp_redirect_url}") String redirectUrl,
@@ -49,7 +51,8 @@ public class BeanConfig extends SamlIdentityProviderServerBeanConfiguration {
                       UserRepository userRepository,
                       UserLoginRepository userLoginRepository,
                       MailBox mailBox,
-                      ServiceProviderResolver serviceProviderResolver) {
+                      ServiceProviderResolver serviceProviderResolver,
+                      LoginMetrics loginMetrics) {
         this.immutableSamlConfigurationRepository = new ImmutableSamlConfigurationRepository(samlMetadataBasePath);
         this.redirectUrl = redirectUrl;
         this.rememberMeMaxAge = rememberMeMaxAge;
@@ -64,6 +67,7 @@ public class BeanConfig extends SamlIdentityProviderServerBeanConfiguration {
         this.magicLinkUrl = magicLinkUrl;
         this.mailBox = mailBox;
         this.serviceProviderResolver = serviceProviderResolver;
+        this.loginMetrics = loginMetrics;
 
         ACR.initialize(linkedInstitution, validateNames, affiliationStudent);
     }
@@ -92,7 +96,8 @@ public class BeanConfig extends SamlIdentityProviderServerBeanConfiguration {
                 magicLinkUrl,
                 mailBox,
                 expiryNonValidatedDurationDays,
-                removalNonValidatedDurationDays);
+                removalNonValidatedDurationDays,
+                loginMetrics);
     }
 
     public Filter samlConfigurationFilter(SamlServerConfiguration serverConfig) {
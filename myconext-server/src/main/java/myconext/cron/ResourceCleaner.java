@@ -26,6 +26,7 @@ public class ResourceCleaner {
     private final ChangeEmailHashRepository changeEmailHashRepository;
     private final boolean cronJobResponsible;
     private final EmailsSendRepository emailsSendRepository;
+    private final UserDeletionJob userDeletionJob;
 
     @Autowired
     public ResourceCleaner(AuthenticationRequestRepository authenticationRequestRepository,
@@ -33,12 +34,14 @@ public class ResourceCleaner {
                            PasswordForgottenHashRepository passwordForgottenHashRepository,
                            ChangeEmailHashRepository changeEmailHashRepository,
                            EmailsSendRepository emailsSendRepository,
+                           UserDeletionJob userDeletionJob,
                            @Value("${cron.node-cron-job-responsible}") boolean cronJobResponsible) {
         this.authenticationRequestRepository = authenticationRequestRepository;
         this.userRepository = userRepository;
         this.passwordForgottenHashRepository = passwordForgottenHashRepository;
         this.changeEmailHashRepository = changeEmailHashRepository;
         this.emailsSendRepository = emailsSendRepository;
+        this.userDeletionJob = userDeletionJob;
         this.cronJobResponsible = cronJobResponsible;
     }
 
@@ -74,6 +77,7 @@ public class ResourceCleaner {
                     "Removing new users that have not finished registration last 24 hours %s",
                     newUsersExpired.stream().map(User::getEmail).collect(Collectors.joining(", "))));
             userRepository.deleteAll(newUsersExpired);
+            newUsersExpired.forEach(user -> userDeletionJob.enqueue(user, "registration-expired"));
         }
     }
 
@@ -0,0 +1,205 @@
+package myconext.cron;
+
+import com.mongodb.client.result.DeleteResult;
+import myconext.model.*;
+import myconext.repository.UserDeletionRepository;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import tiqr.org.model.Authentication;
+import tiqr.org.model.Enrollment;
+import tiqr.org.model.Registration;
+
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * Deletes the data of deleted users in the background. Deleting a user only removes the user and queues a
+ * UserDeletion, this job removes the documents of the user in the other collections in batches. Every node runs the
+ * job, a queued deletion is claimed atomically and a deletion of a node which died is claimed again once its lock
+ * expires. A failed deletion is retried after an exponential backoff, until the maximum number of attempts. The
+ * completed UserDeletion is kept as audit record until it is removed by a TTL index on completedAt.
+ */
+@Component
+public class UserDeletionJob {
+
+    private static final Log LOG = LogFactory.getLog(UserDeletionJob.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final UserDeletionRepository userDeletionRepository;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final int maxAttempts;
+    private final long lockMinutes;
+    private final long retryBackoffMinutes;
+    private final int maxDeletionsPerRun;
+
+    //The collection, the property referencing the user and the value of the user for that property
+    private final List<Dependent> dependents = Arrays.asList(
+            new Dependent(SamlAuthenticationRequest.class, "userId", UserDeletion::getUserId),
+            new Dependent(UserLogin.class, "userId", UserDeletion::getUserId, true),
+            new Dependent(PasswordForgottenHash.class, "userId", UserDeletion::getUserId),
+            new Dependent(ChangeEmailHash.class, "userId", UserDeletion::getUserId),
+            new Dependent(WebAuthnCredential.class, "userId", UserDeletion::getUserId),
+            new Dependent(Registration.class, "userId", UserDeletion::getUserId),
+            new Dependent(Enrollment.class, "userID", UserDeletion::getUserId),
+            new Dependent(Authentication.class, "userID", UserDeletion::getUserId),
+            new Dependent(Challenge.class, "email", UserDeletion::getEmail)
+    );
+
+    @Autowired
+    public UserDeletionJob(MongoTemplate mongoTemplate,
+                           UserDeletionRepository userDeletionRepository,
+                           @Value("${user_deletion.batch-size}") int batchSize,
+                           @Value("${user_deletion.batch-pause-millis}") long batchPauseMillis,
+                           @Value("${user_deletion.max-attempts}") int maxAttempts,
+                           @Value("${user_deletion.lock-minutes}") long lockMinutes,
+                           @Value("${user_deletion.retry-backoff-minutes}") long retryBackoffMinutes,
+                           @Value("${user_deletion.max-deletions-per-run}") int maxDeletionsPerRun) {
+        this.mongoTemplate = mongoTemplate;
+        this.userDeletionRepository = userDeletionRepository;
+        this.batchSize = batchSize;
+        this.batchPauseMillis = batchPauseMillis;
+        this.maxAttempts = maxAttempts;
+        this.lockMinutes = lockMinutes;
+        this.retryBackoffMinutes = retryBackoffMinutes;
+        this.maxDeletionsPerRun = maxDeletionsPerRun;
+    }
+
+    public UserDeletion enqueue(User user, String reason) {
+        UserDeletion userDeletion = userDeletionRepository.save(new UserDeletion(user, reason));
+        LOG.info(String.format("Queued deletion %s of the data of user %s", userDeletion.getId(), user.getId()));
+        return userDeletion;
+    }
+
+    @Scheduled(initialDelayString = "${cron.user-deletion-initial-delay-milliseconds}",
+            fixedDelayString = "${cron.user-deletion-fixed-delay-milliseconds}")
+    public void process() {
+        for (int i = 0; i < maxDeletionsPerRun; i++) {
+            Optional<UserDeletion> optionalUserDeletion = claim();
+            if (!optionalUserDeletion.isPresent()) {
+                return;
+            }
+            delete(optionalUserDeletion.get());
+        }
+    }
+
+    private Optional<UserDeletion> claim() {
+        Date now = new Date();
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(UserDeletionStatus.PENDING).orOperator(
+                        Criteria.where("nextAttemptAt").is(null),
+                        Criteria.where("nextAttemptAt").lte(now)),
+                Criteria.where("status").is(UserDeletionStatus.IN_PROGRESS).and("lockedUntil").lt(now)))
+                .with(Sort.by(Sort.Direction.ASC, "requestedAt"));
+        Update update = new Update()
+                .set("status", UserDeletionStatus.IN_PROGRESS)
+                .set("lockedUntil", Date.from(now.toInstant().plus(lockMinutes, ChronoUnit.MINUTES)))
+                .inc("attempts", 1);
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), UserDeletion.class));
+    }
+
+    private void delete(UserDeletion userDeletion) {
+        Map<String, Long> deleted = new LinkedHashMap<>(userDeletion.getDeleted());
+        try {
+            for (Dependent dependent : dependents) {
+                String value = dependent.value.apply(userDeletion);
+                if (!StringUtils.hasText(value)) {
+                    continue;
+                }
+                String collectionName = mongoTemplate.getCollectionName(dependent.entityClass);
+                long count = dependent.timeSeries ?
+                        deleteByMetaField(collectionName, dependent.property, value) :
+                        deleteInBatches(collectionName, dependent.property, value);
+                deleted.merge(collectionName, count, Long::sum);
+            }
+            userDeletion.completed(deleted);
+            LOG.info(String.format("Completed deletion %s of the data of user %s: %s",
+                    userDeletion.getId(), userDeletion.getUserId(), deleted));
+        } catch (RuntimeException e) {
+            int attempts = userDeletion.getAttempts();
+            Date nextAttemptAt = attempts < maxAttempts ? Date.from(new Date().toInstant()
+                    .plus(retryBackoffMinutes * (1L << (attempts - 1)), ChronoUnit.MINUTES)) : null;
+            userDeletion.failed(deleted, e.getMessage(), nextAttemptAt);
+            LOG.error(String.format("Deletion %s of the data of user %s failed in attempt %s%s",
+                    userDeletion.getId(), userDeletion.getUserId(), attempts,
+                    nextAttemptAt != null ? ", will retry at " + nextAttemptAt : ""), e);
+        }
+        userDeletionRepository.save(userDeletion);
+    }
+
+    /*
+     * Deletes by _id in batches, so a user with many documents does not result in one long running delete
+     */
+    private long deleteInBatches(String collectionName, String property, String value) {
+        long count = 0;
+        while (true) {
+            Query query = new Query(Criteria.where(property).is(value)).limit(batchSize);
+            query.fields().include("_id");
+            List<Object> ids = mongoTemplate.find(query, Document.class, collectionName).stream()
+                    .map(document -> document.get("_id"))
+                    .collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                return count;
+            }
+            DeleteResult deleteResult = mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), collectionName);
+            count += deleteResult.getDeletedCount();
+            if (ids.size() < batchSize) {
+                return count;
+            }
+            pause();
+        }
+    }
+
+    /*
+     * A time-series collection only supports deletes on the meta field, which remove whole buckets
+     */
+    private long deleteByMetaField(String collectionName, String property, String value) {
+        return mongoTemplate.remove(new Query(Criteria.where(property).is(value)), collectionName).getDeletedCount();
+    }
+
+    private void pause() {
+        if (batchPauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Dependent {
+
+        private final Class<?> entityClass;
+        private final String property;
+        private final Function<UserDeletion, String> value;
+        private final boolean timeSeries;
+
+        private Dependent(Class<?> entityClass, String property, Function<UserDeletion, String> value) {
+            this(entityClass, property, value, false);
+        }
+
+        private Dependent(Class<?> entityClass, String property, Function<UserDeletion, String> value, boolean timeSeries) {
+            this.entityClass = entityClass;
+            this.property = property;
+            this.value = value;
+            this.timeSeries = timeSeries;
+        }
+    }
+}
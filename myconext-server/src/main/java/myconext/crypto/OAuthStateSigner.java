@@ -0,0 +1,125 @@
+package myconext.crypto;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Signs the OAuth state of the account linking flows with HMAC-SHA256. The state is
+ * keyId.expiresAt.authenticationRequestId.signature and the signature also covers the uid of the user, which is not
+ * part of the state. The first configured key signs, all configured keys verify, so a key can be rotated by
+ * prepending a new key and removing the old one after the state TTL.
+ */
+@Component
+public class OAuthStateSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+    private final String signingKeyId;
+    private final long ttlSeconds;
+    private final Clock clock;
+
+    @Autowired
+    public OAuthStateSigner(@Value("${account_linking.state.signing-keys}") String signingKeys,
+                            @Value("${account_linking.state.ttl-seconds}") long ttlSeconds) {
+        this(signingKeys, ttlSeconds, Clock.systemUTC());
+    }
+
+    public OAuthStateSigner(String signingKeys, long ttlSeconds, Clock clock) {
+        for (String signingKey : StringUtils.commaDelimitedListToStringArray(signingKeys)) {
+            String[] parts = signingKey.trim().split(":", 2);
+            if (parts.length != 2 || !StringUtils.hasText(parts[0]) || parts[1].length() < 32) {
+                throw new IllegalArgumentException("Signing keys must be formatted as keyId:secret with a secret of at least 32 characters");
+            }
+            keys.put(parts[0], new SecretKeySpec(parts[1].getBytes(StandardCharsets.UTF_8), ALGORITHM));
+        }
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one signing key is required");
+        }
+        this.signingKeyId = keys.keySet().iterator().next();
+        this.ttlSeconds = ttlSeconds;
+        this.clock = clock;
+    }
+
+    public String sign(String uid, String authenticationRequestId) {
+        long expiresAt = clock.instant().getEpochSecond() + ttlSeconds;
+        String id = authenticationRequestId == null ? "" : authenticationRequestId;
+        String payload = String.join(".", signingKeyId, Long.toString(expiresAt), encode(id.getBytes(StandardCharsets.UTF_8)));
+        return payload + "." + encode(mac(keys.get(signingKeyId), payload, uid));
+    }
+
+    /*
+     * Returns the unverified authentication request id, needed to find the user to verify the state for
+     */
+    public Optional<String> authenticationRequestId(String state) {
+        String[] parts = parts(state);
+        if (parts == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new String(Base64.getUrlDecoder().decode(parts[2]), StandardCharsets.UTF_8))
+                    .filter(StringUtils::hasText);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public boolean verify(String state, String uid) {
+        String[] parts = parts(state);
+        if (parts == null || uid == null) {
+            return false;
+        }
+        SecretKeySpec key = keys.get(parts[0]);
+        if (key == null) {
+            return false;
+        }
+        long expiresAt;
+        byte[] signature;
+        try {
+            expiresAt = Long.parseLong(parts[1]);
+            signature = Base64.getUrlDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String payload = String.join(".", parts[0], parts[1], parts[2]);
+        boolean valid = MessageDigest.isEqual(mac(key, payload, uid), signature);
+        return valid && clock.instant().getEpochSecond() <= expiresAt;
+    }
+
+    private String[] parts(String state) {
+        if (!StringUtils.hasText(state)) {
+            return null;
+        }
+        String[] parts = state.split("\\.", -1);
+        return parts.length == 4 ? parts : null;
+    }
+
+    private byte[] mac(SecretKeySpec key, String payload, String uid) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(payload.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) '.');
+            return mac.doFinal(uid.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
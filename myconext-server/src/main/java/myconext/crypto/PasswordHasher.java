@@ -0,0 +1,154 @@
+package myconext.crypto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import myconext.exceptions.TooManyRequestsException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.security.SecureRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Runs BCrypt on a small dedicated pool instead of on the request threads, so a burst of password logins can not
+ * occupy every CPU core. If the queue of the pool is full the request is rejected with a 429.
+ *
+ * The BCrypt cost is configured and the same on every node. Passwords hashed with a lower cost are re-hashed after a
+ * successful login, a password is never re-hashed with a lower cost, so nodes with a different cost during a rolling
+ * deployment do not re-hash the same password back and forth.
+ *
+ * The duration of every hash - including the wait in the queue - is timed, and the pool is exposed as gauges.
+ */
+@Component
+public class PasswordHasher implements PasswordEncoder, DisposableBean {
+
+    private static final Log LOG = LogFactory.getLog(PasswordHasher.class);
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final ThreadPoolExecutor executor;
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final int strength;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejected;
+    private final Counter rehashed;
+
+    public PasswordHasher(@Value("${password_hashing.threads}") int threads,
+                          @Value("${password_hashing.queue-capacity}") int queueCapacity,
+                          @Value("${password_hashing.strength}") int strength,
+                          MeterRegistry meterRegistry) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.strength = strength;
+        LOG.info(String.format("Configured BCrypt strength %s", strength));
+        this.passwordEncoder = new BCryptPasswordEncoder(this.strength, new SecureRandom());
+
+        this.encodeTimer = timer(meterRegistry, "encode");
+        this.matchesTimer = timer(meterRegistry, "matches");
+        this.rejected = Counter.builder("myconext.password.hashing.rejected")
+                .description("Password hashes rejected because the queue is full")
+                .register(meterRegistry);
+        this.rehashed = Counter.builder("myconext.password.hashing.rehashed")
+                .description("Passwords re-hashed with a higher cost after a login")
+                .register(meterRegistry);
+        Gauge.builder("myconext.password.hashing.strength", () -> this.strength)
+                .description("The BCrypt cost")
+                .register(meterRegistry);
+        Gauge.builder("myconext.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes in progress")
+                .register(meterRegistry);
+        Gauge.builder("myconext.password.hashing.queue", executor, e -> e.getQueue().size())
+                .description("Password hashes waiting in the queue")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || !StringUtils.hasText(encodedPassword)) {
+            return false;
+        }
+        return submit(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /*
+     * Returns true if the password is hashed with a lower cost than the strength
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (!StringUtils.hasText(encodedPassword)) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) < strength;
+    }
+
+    public void rehashed() {
+        rehashed.increment();
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("myconext.password.hashing")
+                .description("Duration of a password hash including the wait in the queue")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private <T> T submit(Timer timer, Callable<T> task) {
+        long start = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOG.warn("Password hashing queue is full, rejecting request");
+            throw new TooManyRequestsException();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package myconext.crypto;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+
+/*
+ * Generates random tokens, codes and UUIDs. Every thread has its own DRBG and a small buffer of random bytes, so
+ * concurrent requests do not contend on one shared SecureRandom and most tokens need no call to the DRBG at all.
+ *
+ * Characters are drawn from an alphabet with rejection sampling: random bytes which would make the first characters
+ * of the alphabet more likely than the others are discarded.
+ */
+public class TokenGenerator {
+
+    private static final int BUFFER_SIZE = 512;
+
+    private static final ThreadLocal<EntropyBuffer> entropy = ThreadLocal.withInitial(EntropyBuffer::new);
+
+    private TokenGenerator() {
+    }
+
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        entropy.get().nextBytes(bytes);
+        return bytes;
+    }
+
+    public static String urlSafeToken(int nbrBytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes(nbrBytes));
+    }
+
+    public static char[] randomChars(int length, char[] alphabet) {
+        if (alphabet.length == 0 || alphabet.length > 256) {
+            throw new IllegalArgumentException("Alphabet must contain between 1 and 256 characters");
+        }
+        //the largest multiple of the alphabet length which fits in a byte
+        int limit = 256 - (256 % alphabet.length);
+        EntropyBuffer buffer = entropy.get();
+        char[] chars = new char[length];
+        int i = 0;
+        while (i < length) {
+            int value = buffer.nextByte() & 0xFF;
+            if (value < limit) {
+                chars[i++] = alphabet[value % alphabet.length];
+            }
+        }
+        return chars;
+    }
+
+    /*
+     * Same format as UUID#randomUUID, which uses one shared SecureRandom
+     */
+    public static String uuid() {
+        byte[] bytes = randomBytes(16);
+        bytes[6] = (byte) ((bytes[6] & 0x0f) | 0x40);
+        bytes[8] = (byte) ((bytes[8] & 0x3f) | 0x80);
+        long mostSignificantBits = 0;
+        long leastSignificantBits = 0;
+        for (int i = 0; i < 8; i++) {
+            mostSignificantBits = (mostSignificantBits << 8) | (bytes[i] & 0xff);
+            leastSignificantBits = (leastSignificantBits << 8) | (bytes[i + 8] & 0xff);
+        }
+        return new UUID(mostSignificantBits, leastSignificantBits).toString();
+    }
+
+    private static class EntropyBuffer {
+
+        private final SecureRandom random = secureRandom();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+
+        private byte nextByte() {
+            if (position == BUFFER_SIZE) {
+                refill();
+            }
+            return buffer[position++];
+        }
+
+        private void nextBytes(byte[] bytes) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (position == BUFFER_SIZE) {
+                    refill();
+                }
+                int length = Math.min(bytes.length - offset, BUFFER_SIZE - position);
+                System.arraycopy(buffer, position, bytes, offset, length);
+                position += length;
+                offset += length;
+            }
+        }
+
+        private void refill() {
+            random.nextBytes(buffer);
+            position = 0;
+        }
+
+        private static SecureRandom secureRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package myconext.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+public class HttpClientConfiguration {
+
+    @Bean
+    public HttpClientFactory httpClientFactory(Environment environment, MeterRegistry meterRegistry) {
+        return new HttpClientFactory(environment, meterRegistry);
+    }
+
+}
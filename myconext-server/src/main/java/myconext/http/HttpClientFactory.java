@@ -0,0 +1,226 @@
+package myconext.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import myconext.exceptions.ServiceUnavailableException;
+import myconext.tracing.TracingClientHttpRequestInterceptor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Creates the RestTemplates for the outbound HTTP dependencies. Every dependency gets its own pool of keep-alive
+ * connections, connect and read timeouts and a bulkhead which limits the number of concurrent requests, so one slow
+ * dependency can not tie up all request threads. The settings of a dependency are read from
+ * http_clients.{dependency} and default to http_clients.defaults.
+ *
+ * The requests are timed per dependency and the connection pool and bulkhead are exposed as gauges.
+ */
+public class HttpClientFactory implements DisposableBean {
+
+    private static final Log LOG = LogFactory.getLog(HttpClientFactory.class);
+
+    private static final String PREFIX = "http_clients.";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final List<CloseableHttpClient> httpClients = new CopyOnWriteArrayList<>();
+
+    public HttpClientFactory(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public RestTemplate restTemplate(String dependency) {
+        int connectTimeoutMillis = setting(dependency, "connect-timeout-millis");
+        int readTimeoutMillis = setting(dependency, "read-timeout-millis");
+        int maxConnections = setting(dependency, "max-connections");
+        int maxConcurrentRequests = setting(dependency, "max-concurrent-requests");
+        int bulkheadWaitMillis = setting(dependency, "bulkhead-wait-millis");
+        int idleTimeoutSeconds = setting(dependency, "idle-timeout-seconds");
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        //Stale keep-alive connections are validated before they are re-used
+        connectionManager.setValidateAfterInactivity(2_000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+        CloseableHttpClient httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+        httpClients.add(httpClient);
+
+        Semaphore bulkhead = new Semaphore(maxConcurrentRequests);
+        Gauge.builder("myconext.http.client.connections", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .description("Leased connections of the pool")
+                .tag("dependency", dependency)
+                .tag("state", "leased")
+                .register(meterRegistry);
+        Gauge.builder("myconext.http.client.connections", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .description("Idle connections of the pool")
+                .tag("dependency", dependency)
+                .tag("state", "available")
+                .register(meterRegistry);
+        Gauge.builder("myconext.http.client.connections", connectionManager, cm -> cm.getTotalStats().getPending())
+                .description("Requests waiting for a connection of the pool")
+                .tag("dependency", dependency)
+                .tag("state", "pending")
+                .register(meterRegistry);
+        Gauge.builder("myconext.http.client.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Remaining concurrent requests before the bulkhead rejects requests")
+                .tag("dependency", dependency)
+                .register(meterRegistry);
+
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.getInterceptors().add(new TracingClientHttpRequestInterceptor());
+        restTemplate.getInterceptors().add(new BulkheadInterceptor(dependency, bulkhead, bulkheadWaitMillis));
+        LOG.info(String.format("Created HTTP client for %s with %s connections, %s concurrent requests and timeouts %s / %s ms",
+                dependency, maxConnections, maxConcurrentRequests, connectTimeoutMillis, readTimeoutMillis));
+        return restTemplate;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        for (CloseableHttpClient httpClient : httpClients) {
+            httpClient.close();
+        }
+    }
+
+    private int setting(String dependency, String name) {
+        Integer value = environment.getProperty(PREFIX + dependency + "." + name, Integer.class);
+        return value != null ? value : environment.getRequiredProperty(PREFIX + "defaults." + name, Integer.class);
+    }
+
+    private class BulkheadInterceptor implements ClientHttpRequestInterceptor {
+
+        private final String dependency;
+        private final Semaphore bulkhead;
+        private final long waitMillis;
+        private final Counter rejected;
+
+        private BulkheadInterceptor(String dependency, Semaphore bulkhead, long waitMillis) {
+            this.dependency = dependency;
+            this.bulkhead = bulkhead;
+            this.waitMillis = waitMillis;
+            this.rejected = Counter.builder("myconext.http.client.bulkhead.rejected")
+                    .description("Requests rejected because the maximum of concurrent requests was reached")
+                    .tag("dependency", dependency)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+            boolean acquired;
+            try {
+                acquired = bulkhead.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                rejected.increment();
+                throw new ServiceUnavailableException(String.format("Too many concurrent requests to %s", dependency));
+            }
+            Timer.Sample sample = Timer.start(meterRegistry);
+            ClientHttpResponse response;
+            String outcome;
+            try {
+                response = execution.execute(request, body);
+                outcome = String.valueOf(response.getRawStatusCode());
+            } catch (IOException | RuntimeException e) {
+                release(sample, request, "IO_ERROR");
+                throw e;
+            }
+            //The body is read after the interceptor returns, so the permit is held and the request timed until it is closed
+            return new BulkheadResponse(response, () -> release(sample, request, outcome));
+        }
+
+        private void release(Timer.Sample sample, HttpRequest request, String outcome) {
+            bulkhead.release();
+            sample.stop(Timer.builder("myconext.http.client.requests")
+                    .description("Outbound HTTP requests per dependency")
+                    .tag("dependency", dependency)
+                    .tag("method", request.getMethodValue())
+                    .tag("status", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private static class BulkheadResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final Runnable onClose;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private BulkheadResponse(ClientHttpResponse response, Runnable onClose) {
+            this.response = response;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    onClose.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package myconext.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import static myconext.log.MDCContext.TRACE_ID;
+
+/*
+ * Only logs the debug and trace statements of a sample of the requests. The decision is made on the trace id, so
+ * either all or none of the debug statements of a request are logged and isDebugEnabled returns false for the
+ * requests which are not sampled. Threads without a trace id, e.g. the cron jobs, are not sampled.
+ */
+public class DebugSamplingTurboFilter extends TurboFilter {
+
+    private static final int PRECISION = 10_000;
+
+    private int threshold = PRECISION;
+
+    public void setSampleRate(double sampleRate) {
+        this.threshold = (int) Math.round(Math.max(0D, Math.min(1D, sampleRate)) * PRECISION);
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level == null || level.toInt() > Level.DEBUG_INT || threshold >= PRECISION) {
+            return FilterReply.NEUTRAL;
+        }
+        String traceId = MDC.get(TRACE_ID);
+        if (traceId == null) {
+            return FilterReply.NEUTRAL;
+        }
+        return Math.floorMod(traceId.hashCode(), PRECISION) < threshold ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
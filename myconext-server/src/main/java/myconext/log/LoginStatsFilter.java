@@ -0,0 +1,22 @@
+package myconext.log;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.AbstractMatcherFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+import static myconext.log.MDCContext.LOGIN_STATS_TAG;
+import static myconext.log.MDCContext.TAG;
+
+/*
+ * Matches the login statistics events logged by MDCContext, used in logback.xml to route them to the JSON appender
+ */
+public class LoginStatsFilter extends AbstractMatcherFilter<ILoggingEvent> {
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (!isStarted()) {
+            return FilterReply.NEUTRAL;
+        }
+        return LOGIN_STATS_TAG.equals(event.getMDCPropertyMap().get(TAG)) ? onMatch : onMismatch;
+    }
+}
@@ -6,33 +6,50 @@ import org.slf4j.MDC;
 import org.slf4j.spi.MDCAdapter;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MDCContext {
 
     public static final String USER_ID = "userid";
-
-    private static void mdcContext(User user, String... args) {
+    public static final String TRACE_ID = "trace_id";
+    public static final String TAG = "tag";
+    public static final String LOGIN_STATS_TAG = "myconext_loginstats";
+
+    /*
+     * Logs the message with the login statistics in the MDC and removes them afterwards, so they never leak into the
+     * next log statements of this - pooled - thread
+     */
+    private static void logWithMDC(User user, Log log, String message, String... args) {
         Assert.isTrue(args.length % 2 == 0, "contextMap requires an even number of arguments");
         MDCAdapter mdcAdapter = MDC.getMDCAdapter();
+        List<String> keys = new ArrayList<>();
         for (int i = 0; i < args.length - 1; i += 2) {
             mdcAdapter.put(args[i], args[i + 1]);
+            keys.add(args[i]);
         }
 
-        mdcAdapter.put("tag", "myconext_loginstats");
+        mdcAdapter.put(TAG, LOGIN_STATS_TAG);
+        keys.add(TAG);
 
         if (MDC.get(USER_ID) == null && user != null) {
             mdcAdapter.put(USER_ID, user.getEmail());
+            keys.add(USER_ID);
+        }
+        try {
+            log.info(message);
+        } finally {
+            keys.forEach(mdcAdapter::remove);
         }
     }
 
     public static void logWithContext(User user, String action, String target, Log log, String message) {
-        mdcContext(user, "action", action, "target", target, "result", "ok");
-        log.info(message);
+        logWithMDC(user, log, message, "action", action, "target", target, "result", "ok");
     }
 
 
     public static void logLoginWithContext(User user, String loginMethod, boolean success, Log log, String message) {
-        mdcContext(user, "login_method", loginMethod, "action", "login", "result", success ? "ok" : "error");
-        log.info(message);
+        logWithMDC(user, log, message, "login_method", loginMethod, "action", "login", "result", success ? "ok" : "error");
     }
 
 }
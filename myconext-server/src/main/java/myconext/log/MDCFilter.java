@@ -19,14 +19,17 @@ import static myconext.log.MDCContext.USER_ID;
 
 public class MDCFilter extends OncePerRequestFilter {
 
+    private static final String SESSION_ID = "session_id";
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        //The trace_id is put and removed by the TracingFilter, which wraps this filter
         MDCAdapter mdcAdapter = MDC.getMDCAdapter();
-        mdcAdapter.clear();
+        removeRequestContext(mdcAdapter);
 
         HttpSession session = request.getSession(false);
         if (session != null) {
-            mdcAdapter.put("session_id", session.getId());
+            mdcAdapter.put(SESSION_ID, session.getId());
         }
 
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -38,7 +41,16 @@ public class MDCFilter extends OncePerRequestFilter {
                 mdcAdapter.put(USER_ID, user.getEmail());
             }
         }
-        chain.doFilter(request, response);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            removeRequestContext(mdcAdapter);
+        }
+
+    }
 
+    private void removeRequestContext(MDCAdapter mdcAdapter) {
+        mdcAdapter.remove(SESSION_ID);
+        mdcAdapter.remove(USER_ID);
     }
 }
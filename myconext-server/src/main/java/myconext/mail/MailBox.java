@@ -8,6 +8,8 @@ import lombok.SneakyThrows;
 import myconext.model.EmailsSend;
 import myconext.model.User;
 import myconext.repository.EmailsSendRepository;
+import myconext.tracing.Span;
+import myconext.tracing.Tracing;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.i18n.LocaleContextHolder;
@@ -134,8 +136,14 @@ public class MailBox {
         return variables;
     }
 
-    @SneakyThrows
     private void sendMail(String templateName, String subject, Map<String, Object> variables, String language, String to, boolean checkSpam) {
+        try (Span span = Tracing.start("mail " + templateName)) {
+            prepareMail(templateName, subject, variables, language, to, checkSpam);
+        }
+    }
+
+    @SneakyThrows
+    private void prepareMail(String templateName, String subject, Map<String, Object> variables, String language, String to, boolean checkSpam) {
         if (checkSpam) {
             Optional<EmailsSend> byEmail = emailsSendRepository.findByEmail(to);
             if (byEmail.isPresent() && byEmail.get().getSendAt().toInstant().isAfter(Instant.now().minus(emailSpamThresholdSeconds, ChronoUnit.SECONDS))) {
@@ -164,7 +172,12 @@ public class MailBox {
     }
 
     protected void doSendMail(MimeMessage message) {
-        new Thread(() -> mailSender.send(message)).start();
+        Span parent = Tracing.current();
+        new Thread(() -> {
+            try (Span span = Tracing.continueTrace(parent, "smtp send")) {
+                mailSender.send(message);
+            }
+        }).start();
     }
 
     @SneakyThrows
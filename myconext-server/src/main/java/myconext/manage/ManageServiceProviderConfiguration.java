@@ -1,5 +1,6 @@
 package myconext.manage;
 
+import myconext.http.HttpClientFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,10 +15,11 @@ public class ManageServiceProviderConfiguration {
     public ServiceProviderResolver serviceProviderResolver(@Value("${manage.username}") String userName,
                                                            @Value("${manage.password}") String password,
                                                            @Value("${manage.base_url}") String baseUrl,
-                                                           Environment environment) {
+                                                           Environment environment,
+                                                           HttpClientFactory httpClientFactory) {
         String[] activeProfiles = environment.getActiveProfiles();
         return activeProfiles.length > 0 ? new MockServiceProviderResolver() :
-                new ManageServiceProviderResolver(userName, password, baseUrl);
+                new ManageServiceProviderResolver(httpClientFactory.restTemplate("manage"), userName, password, baseUrl);
     }
 
 }
@@ -19,7 +19,7 @@ public class ManageServiceProviderResolver implements ServiceProviderResolver {
 
     private static final Log LOG = LogFactory.getLog(ManageServiceProviderResolver.class);
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private final String manageBaseUrl;
     private Map<String, ServiceProvider> serviceProviders = new HashMap<>();
     private final HttpHeaders headers = new HttpHeaders();
@@ -27,9 +27,11 @@ public class ManageServiceProviderResolver implements ServiceProviderResolver {
     private final ParameterizedTypeReference<List<Map<String, Object>>> typeReference = new ParameterizedTypeReference<List<Map<String, Object>>>() {
     };
 
-    public ManageServiceProviderResolver(String userName,
+    public ManageServiceProviderResolver(RestTemplate restTemplate,
+                                         String userName,
                                          String password,
                                          String baseUrl) {
+        this.restTemplate = restTemplate;
         restTemplate.getInterceptors().add(new BasicAuthenticationInterceptor(userName, password));
         this.manageBaseUrl = baseUrl;
         this.headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
@@ -0,0 +1,69 @@
+package myconext.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/*
+ * Timers and counters for the SAML login flows of the IdP and for every login method, tagged by outcome. These are the
+ * metrics counterpart of the myconext_loginstats log lines. Mongo command latency is recorded by the command listener
+ * which Spring Boot registers on the Mongo client.
+ *
+ * The logins are also counted per requester in the LoginStatsRollup. The requester is not a tag of the counter, because
+ * the number of service providers would make the number of time series unbounded.
+ */
+@Component
+public class LoginMetrics {
+
+    public static final String OK = "ok";
+    public static final String ERROR = "error";
+
+    private final MeterRegistry meterRegistry;
+    private final LoginStatsRollup loginStatsRollup;
+
+    public LoginMetrics(MeterRegistry meterRegistry, LoginStatsRollup loginStatsRollup) {
+        this.meterRegistry = meterRegistry;
+        this.loginStatsRollup = loginStatsRollup;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /*
+     * Records the duration of a branch of the IdP filter: sso, magic, continue or assertion
+     */
+    public void flow(Timer.Sample sample, String flow, String outcome) {
+        sample.stop(Timer.builder("myconext.idp.flow")
+                .description("Duration of the SAML login flows of the IdP")
+                .tag("flow", flow)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    /*
+     * Counts the users who are redirected to link an external account (started) and who return after linking (finished)
+     */
+    public void stepUp(String outcome) {
+        Counter.builder("myconext.idp.stepup")
+                .description("Step-up redirects for account linking")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /*
+     * Counts the login attempts per login method: magiclink, password, webauthn or tiqr
+     */
+    public void login(String loginMethod, String requesterEntityId, boolean success) {
+        Counter.builder("myconext.login")
+                .description("Login attempts per login method")
+                .tag("method", loginMethod)
+                .tag("outcome", success ? OK : ERROR)
+                .register(meterRegistry)
+                .increment();
+        loginStatsRollup.record(loginMethod, requesterEntityId, success);
+    }
+}
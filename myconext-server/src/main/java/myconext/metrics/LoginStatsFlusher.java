@@ -0,0 +1,61 @@
+package myconext.metrics;
+
+import myconext.model.LoginStat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/*
+ * Adds the login counts of the LoginStatsRollup to the login_stats collection with an upsert and $inc, so every node
+ * adds its own counts to the same hourly documents. Counts which could not be stored are kept for the next flush.
+ */
+@Component
+public class LoginStatsFlusher implements DisposableBean {
+
+    private static final Log LOG = LogFactory.getLog(LoginStatsFlusher.class);
+
+    private final LoginStatsRollup loginStatsRollup;
+    private final MongoTemplate mongoTemplate;
+
+    public LoginStatsFlusher(LoginStatsRollup loginStatsRollup, MongoTemplate mongoTemplate) {
+        this.loginStatsRollup = loginStatsRollup;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Scheduled(initialDelayString = "${login_stats.flush-fixed-delay-milliseconds}",
+            fixedDelayString = "${login_stats.flush-fixed-delay-milliseconds}")
+    public void flush() {
+        Map<LoginStatsRollup.Key, Long> counts = loginStatsRollup.drain();
+        int failed = 0;
+        for (Map.Entry<LoginStatsRollup.Key, Long> entry : counts.entrySet()) {
+            LoginStatsRollup.Key key = entry.getKey();
+            Query query = new Query(Criteria.where("bucket").is(key.getBucket())
+                    .and("loginMethod").is(key.getLoginMethod())
+                    .and("requesterEntityId").is(key.getRequesterEntityId())
+                    .and("outcome").is(key.getOutcome()));
+            try {
+                mongoTemplate.upsert(query, new Update().inc("count", entry.getValue()), LoginStat.class);
+            } catch (DataAccessException e) {
+                loginStatsRollup.restore(key, entry.getValue());
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            LOG.warn(String.format("Failed to store %s of %s login statistics, retrying with the next flush", failed, counts.size()));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+}
@@ -0,0 +1,72 @@
+package myconext.metrics;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Counts the logins per hour, login method, requester and outcome in memory. The LoginStatsFlusher periodically drains
+ * the counts and adds them to the login_stats collection, so the statistics can be queried without scanning the
+ * myconext_loginstats log lines.
+ */
+@Component
+public class LoginStatsRollup {
+
+    public static final String UNKNOWN_REQUESTER = "unknown";
+
+    private final Map<Key, Long> counts = new ConcurrentHashMap<>();
+
+    public void record(String loginMethod, String requesterEntityId, boolean success) {
+        Key key = new Key(Date.from(Instant.now().truncatedTo(ChronoUnit.HOURS)),
+                loginMethod,
+                StringUtils.hasText(requesterEntityId) ? requesterEntityId : UNKNOWN_REQUESTER,
+                success ? LoginMetrics.OK : LoginMetrics.ERROR);
+        counts.merge(key, 1L, Long::sum);
+    }
+
+    /*
+     * Removes and returns the counts, a count is removed atomically so no concurrent increment is lost
+     */
+    public Map<Key, Long> drain() {
+        Map<Key, Long> drained = new HashMap<>();
+        counts.keySet().forEach(key -> {
+            Long count = counts.remove(key);
+            if (count != null) {
+                drained.put(key, count);
+            }
+        });
+        return drained;
+    }
+
+    /*
+     * Adds counts which could not be stored back, so they are stored with the next flush
+     */
+    public void restore(Key key, long count) {
+        counts.merge(key, count, Long::sum);
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    public static class Key {
+
+        private final Date bucket;
+        private final String loginMethod;
+        private final String requesterEntityId;
+        private final String outcome;
+
+        public Key(Date bucket, String loginMethod, String requesterEntityId, String outcome) {
+            this.bucket = bucket;
+            this.loginMethod = loginMethod;
+            this.requesterEntityId = requesterEntityId;
+            this.outcome = outcome;
+        }
+    }
+}
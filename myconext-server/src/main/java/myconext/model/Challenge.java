@@ -6,6 +6,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
+import java.util.Date;
 
 @Document(collection = "challenges")
 @Getter
@@ -21,14 +22,16 @@ public class Challenge implements Serializable {
 
     private String email;
 
+    private Date created;
+
     public Challenge(String token, String challenge) {
-        this.token = token;
-        this.challenge = challenge;
+        this(token, challenge, null);
     }
 
     public Challenge(String token, String challenge, String email) {
         this.token = token;
         this.challenge = challenge;
         this.email = email;
+        this.created = new Date();
     }
 }
@@ -3,6 +3,7 @@ package myconext.model;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
@@ -22,6 +23,7 @@ public class ChangeEmailHash implements Serializable {
 
     private Date expiresIn;
 
+    @Indexed
     private String userId;
 
     private String newEmail;
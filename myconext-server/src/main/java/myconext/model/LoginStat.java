@@ -0,0 +1,36 @@
+package myconext.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+ * The number of logins in an hour for a login method, requester and outcome. The counts are incremented with $inc by
+ * every node, see myconext.metrics.LoginStatsFlusher.
+ */
+@NoArgsConstructor
+@Getter
+@Document(collection = "login_stats")
+@CompoundIndex(name = "bucket_dimensions", unique = true,
+        def = "{'bucket': 1, 'loginMethod': 1, 'requesterEntityId': 1, 'outcome': 1}")
+public class LoginStat implements Serializable {
+
+    @Id
+    private String id;
+
+    private Date bucket;
+
+    private String loginMethod;
+
+    private String requesterEntityId;
+
+    private String outcome;
+
+    private long count;
+
+}
@@ -2,6 +2,7 @@ package myconext.model;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import myconext.crypto.TokenGenerator;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
@@ -14,7 +15,6 @@ import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 
 @Document(collection = "authentication_requests")
 @Getter
@@ -37,6 +37,7 @@ public class SamlAuthenticationRequest implements Serializable {
 
     private Date expiresIn;
 
+    @Indexed
     private String userId;
 
     private String requesterEntityId;
@@ -70,7 +71,7 @@ public class SamlAuthenticationRequest implements Serializable {
     private boolean rememberMeQuestionAsked = false;
 
     public SamlAuthenticationRequest(boolean testInstance) {
-        this.id = UUID.randomUUID().toString();
+        this.id = TokenGenerator.uuid();
         this.testInstance = testInstance;
         this.requesterEntityId = "test";
         this.authenticationContextClassReferences = new ArrayList<>();
@@ -82,7 +83,7 @@ public class SamlAuthenticationRequest implements Serializable {
                                      String relayState, String requesterEntityId,
                                      boolean accountLinkingRequired,
                                      List<String> authenticationContextClassReferences) {
-        this.id = UUID.randomUUID().toString();
+        this.id = TokenGenerator.uuid();
         this.requestId = requestId;
         this.issuer = issuer;
         this.consumerAssertionServiceURL = consumerAssertionServiceURL;
@@ -5,6 +5,7 @@ import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import myconext.crypto.TokenGenerator;
 import myconext.exceptions.WeakPasswordException;
 import myconext.manage.ServiceProviderResolver;
 import myconext.tiqr.SURFSecureID;
@@ -72,7 +73,7 @@ public class User implements Serializable, UserDetails {
         this.newUser = true;
         this.created = System.currentTimeMillis() / 1000L;
         this.updatedAt = created;
-        this.trackingUuid = UUID.randomUUID().toString();
+        this.trackingUuid = TokenGenerator.uuid();
     }
 
     public void validate() {
@@ -88,6 +89,10 @@ public class User implements Serializable, UserDetails {
         this.password = encoder.encode(password);
     }
 
+    public void rehashPassword(String password, PasswordEncoder encoder) {
+        this.password = encoder.encode(password);
+    }
+
     @Transient
     public void addPublicKeyCredential(PublicKeyCredentialDescriptor publicKeyCredentialDescriptor,
                                        ByteArray publicKeyCredential,
@@ -122,7 +127,7 @@ public class User implements Serializable, UserDetails {
             optionalServiceProvider.ifPresent(eduID::updateServiceProvider);
             return eduID.getValue();
         } else {
-            EduID eduID = new EduID(UUID.randomUUID().toString(), serviceProviderEntityId, optionalServiceProvider);
+            EduID eduID = new EduID(TokenGenerator.uuid(), serviceProviderEntityId, optionalServiceProvider);
             this.eduIDS.add(eduID);
             return eduID.getValue();
         }
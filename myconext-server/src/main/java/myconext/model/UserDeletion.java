@@ -0,0 +1,76 @@
+package myconext.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * A queued deletion of the data of a deleted user and - once completed - the audit record of the deletion. The email
+ * is only kept until the deletion is completed. A failed attempt is retried - with a backoff - from nextAttemptAt.
+ */
+@NoArgsConstructor
+@Getter
+@Document(collection = "user_deletions")
+@CompoundIndex(name = "status_requested", def = "{'status': 1, 'requestedAt': 1}")
+public class UserDeletion implements Serializable {
+
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String email;
+
+    private String reason;
+
+    private UserDeletionStatus status;
+
+    private int attempts;
+
+    private Date requestedAt;
+
+    private Date lockedUntil;
+
+    private Date nextAttemptAt;
+
+    private Date completedAt;
+
+    private Map<String, Long> deleted = new LinkedHashMap<>();
+
+    private String error;
+
+    public UserDeletion(User user, String reason) {
+        this.userId = user.getId();
+        this.email = user.getEmail();
+        this.reason = reason;
+        this.status = UserDeletionStatus.PENDING;
+        this.requestedAt = new Date();
+    }
+
+    public void completed(Map<String, Long> deleted) {
+        this.status = UserDeletionStatus.COMPLETED;
+        this.deleted = deleted;
+        this.completedAt = new Date();
+        this.lockedUntil = null;
+        this.email = null;
+        this.error = null;
+    }
+
+    /*
+     * Without a nextAttemptAt the deletion is not retried
+     */
+    public void failed(Map<String, Long> deleted, String error, Date nextAttemptAt) {
+        this.status = nextAttemptAt != null ? UserDeletionStatus.PENDING : UserDeletionStatus.FAILED;
+        this.deleted = deleted;
+        this.lockedUntil = null;
+        this.nextAttemptAt = nextAttemptAt;
+        this.error = error;
+    }
+}
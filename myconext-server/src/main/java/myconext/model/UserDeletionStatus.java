@@ -0,0 +1,7 @@
+package myconext.model;
+
+public enum UserDeletionStatus {
+
+    PENDING, IN_PROGRESS, COMPLETED, FAILED
+
+}
@@ -3,15 +3,20 @@ package myconext.model;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.util.StringUtils;
 
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Date;
 import java.util.Map;
-import java.util.UUID;
 
+/*
+ * A login from a new device. The user_logins collection is a time-series collection with the userId as meta field and
+ * the created date as time field, see myconext.mongo.UserLoginsCollection.
+ */
 @Document(collection = "user_logins")
 @Getter
 @NoArgsConstructor
@@ -19,10 +24,11 @@ public class UserLogin implements Serializable {
     @Id
     private String id;
 
-    private String uuid;
-
+    @Indexed
     private String userId;
 
+    private Date created;
+
     private String userAgent;
 
     private String forwardedFor;
@@ -31,7 +37,7 @@ public class UserLogin implements Serializable {
 
     public UserLogin(User user, Map<String, String> headers) {
         this.userId = user.getId();
-        this.uuid = UUID.randomUUID().toString();
+        this.created = new Date();
         this.userAgent = headers.get("user-agent");
         String forwardedForHeader = headers.get("x-forwarded-for");
         if (StringUtils.hasText(forwardedForHeader)) {
@@ -0,0 +1,39 @@
+package myconext.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+
+/*
+ * Copy of a User#publicKeyCredentials entry to look up credentials by id without loading the user
+ */
+@Document(collection = "webauthn_credentials")
+@Getter
+@NoArgsConstructor
+public class WebAuthnCredential implements Serializable {
+
+    @Id
+    private String id;
+
+    @Indexed(unique = true)
+    private String credentialId;
+
+    @Indexed
+    private String userHandle;
+
+    @Indexed
+    private String userId;
+
+    private String publicKeyCose;
+
+    public WebAuthnCredential(User user, PublicKeyCredentials publicKeyCredentials) {
+        this.credentialId = publicKeyCredentials.getIdentifier();
+        this.userHandle = user.getUserHandle();
+        this.userId = user.getId();
+        this.publicKeyCose = publicKeyCredentials.getCredential();
+    }
+}
@@ -8,8 +8,12 @@ import myconext.model.EduID;
 import myconext.model.PublicKeyCredentials;
 import myconext.model.ServiceProvider;
 import myconext.model.User;
+import myconext.model.WebAuthnCredential;
+import myconext.webauthn.UserCredentialRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
@@ -104,6 +108,31 @@ public class Migrations {
         });
     }
 
+    @ChangeSet(order = "006", id = "fillWebAuthnCredentials", author = "okke.harsta@surf.nl")
+    public void fillWebAuthnCredentials(MongockTemplate mongoTemplate) {
+        Query query = new Query(Criteria.where("publicKeyCredentials.0").exists(true));
+        List<User> users = mongoTemplate.find(query, User.class, "users");
+        //The credentialId has a unique index
+        Set<String> credentialIdentifiers = new HashSet<>();
+        users.forEach(user -> {
+            List<WebAuthnCredential> webAuthnCredentials = UserCredentialRepository.webAuthnCredentials(user).stream()
+                    .filter(webAuthnCredential -> credentialIdentifiers.add(webAuthnCredential.getCredentialId()))
+                    .collect(Collectors.toList());
+            if (!webAuthnCredentials.isEmpty()) {
+                mongoTemplate.insertAll(webAuthnCredentials);
+            }
+        });
+    }
+
+    //Runs on every startup to migrate after an upgrade to MongoDB 5.1 and to resume an interrupted migration
+    @ChangeSet(order = "007", id = "userLoginsTimeSeries", author = "okke.harsta@surf.nl", runAlways = true)
+    public void userLoginsTimeSeries(MongockTemplate mongoTemplate) {
+        mongoTemplate.execute(database -> {
+            UserLoginsCollection.create(database);
+            return null;
+        });
+    }
+
     protected User mergeEduIDs(User user) {
         List<EduID> eduIDS = user.getEduIDS();
         //Make a copy to search in
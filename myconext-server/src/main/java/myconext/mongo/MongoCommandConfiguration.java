@@ -0,0 +1,30 @@
+package myconext.mongo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+@Configuration
+public class MongoCommandConfiguration {
+
+    @Bean
+    public SlowCommandListener slowCommandListener(@Value("${mongo_slow_commands.threshold-millis}") long thresholdMillis,
+                                                   @Value("${mongo_slow_commands.explain-sample-rate}") double explainSampleRate,
+                                                   @Value("${mongo_slow_commands.explain-queue-capacity}") int explainQueueCapacity,
+                                                   @Value("${mongo_slow_commands.explain-interval-minutes}") long explainIntervalMinutes,
+                                                   ObjectProvider<MongoDatabaseFactory> mongoDatabaseFactoryProvider,
+                                                   MeterRegistry meterRegistry) {
+        return new SlowCommandListener(thresholdMillis, explainSampleRate, explainQueueCapacity, explainIntervalMinutes,
+                mongoDatabaseFactoryProvider, meterRegistry);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer slowCommandListenerCustomizer(SlowCommandListener slowCommandListener) {
+        return builder -> builder.addCommandListener(slowCommandListener);
+    }
+
+}
@@ -3,9 +3,13 @@ package myconext.mongo;
 import com.github.cloudyrock.mongock.driver.mongodb.springdata.v3.SpringDataMongo3Driver;
 import com.github.cloudyrock.spring.v5.MongockSpring5;
 import lombok.SneakyThrows;
+import myconext.model.Challenge;
 import myconext.model.EmailsSend;
+import myconext.model.LoginStat;
 import myconext.model.User;
+import myconext.model.UserDeletion;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -23,23 +27,38 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Query;
 import tiqr.org.model.Authentication;
 import tiqr.org.model.Enrollment;
 import tiqr.org.model.Registration;
 
 import java.util.Collection;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class MongoMapping {
 
     private final MongoTemplate mongoTemplate;
     private final MongoConverter mongoConverter;
+    private final long userLoginsRetentionDays;
+    private final long userDeletionsRetentionDays;
+    private final long loginStatsRetentionDays;
+    private final long challengeTtlSeconds;
 
     @Autowired
-    public MongoMapping(MongoTemplate mongoTemplate, MongoConverter mongoConverter) {
+    public MongoMapping(MongoTemplate mongoTemplate,
+                        MongoConverter mongoConverter,
+                        @Value("${user_logins.retention-days}") long userLoginsRetentionDays,
+                        @Value("${user_deletion.completed-retention-days}") long userDeletionsRetentionDays,
+                        @Value("${login_stats.retention-days}") long loginStatsRetentionDays,
+                        @Value("${webauthn_challenge_ttl_seconds}") long challengeTtlSeconds) {
         this.mongoTemplate = mongoTemplate;
         this.mongoConverter = mongoConverter;
+        this.userLoginsRetentionDays = userLoginsRetentionDays;
+        this.userDeletionsRetentionDays = userDeletionsRetentionDays;
+        this.loginStatsRetentionDays = loginStatsRetentionDays;
+        this.challengeTtlSeconds = challengeTtlSeconds;
     }
 
     @Bean
@@ -86,6 +105,11 @@ public class MongoMapping {
                 new Index("enrollmentSecret", Sort.Direction.ASC));
         mongoTemplate.indexOps(Authentication.class).ensureIndex(
                 new Index("sessionKey", Sort.Direction.ASC));
+        //the data of a deleted user is removed by userID
+        mongoTemplate.indexOps(Enrollment.class).ensureIndex(
+                new Index("userID", Sort.Direction.ASC));
+        mongoTemplate.indexOps(Authentication.class).ensureIndex(
+                new Index("userID", Sort.Direction.ASC));
         IndexOperations registrationsIndex = mongoTemplate.indexOps(Registration.class);
         if (registrationsIndex.getIndexInfo().stream().anyMatch(indexInfo -> indexInfo.getName().equals("userid"))) {
             registrationsIndex.dropIndex("userid");
@@ -94,6 +118,32 @@ public class MongoMapping {
                 new Index("userId", Sort.Direction.ASC));
         mongoTemplate.indexOps(EmailsSend.class).ensureIndex(
                 new Index("email", Sort.Direction.ASC).collation(Collation.of(Locale.ENGLISH).strength(2)));
+        //challenges - the unique token prevents concurrent upserts of a challenge from inserting duplicates
+        IndexOperations challengesIndex = mongoTemplate.indexOps(Challenge.class);
+        if (challengesIndex.getIndexInfo().stream().anyMatch(indexInfo -> indexInfo.getName().equals("token_1") && !indexInfo.isUnique())) {
+            //challenges live for minutes, so possible duplicates are removed instead of migrated
+            challengesIndex.dropIndex("token_1");
+            mongoTemplate.remove(new Query(), Challenge.class);
+        }
+        challengesIndex.ensureIndex(
+                new Index("token", Sort.Direction.ASC).unique());
+        if (challengesIndex.getIndexInfo().stream().anyMatch(indexInfo -> indexInfo.getName().equals("created_1"))) {
+            challengesIndex.dropIndex("created_1");
+        }
+        //user_logins - the time-series collection is created by the Migrations
+        mongoTemplate.execute(database -> {
+            UserLoginsCollection.applyRetention(database, userLoginsRetentionDays);
+            //user_deletions - only a completed deletion has a completedAt
+            TtlIndexes.ensure(database, mongoTemplate.getCollectionName(UserDeletion.class), "completedAt", "completed_ttl",
+                    TimeUnit.DAYS.toSeconds(userDeletionsRetentionDays));
+            //login_stats - the hourly buckets
+            TtlIndexes.ensure(database, mongoTemplate.getCollectionName(LoginStat.class), "bucket", "bucket_ttl",
+                    TimeUnit.DAYS.toSeconds(loginStatsRetentionDays));
+            //challenges - the store also checks the expiry, as the TTL monitor only runs every minute
+            TtlIndexes.ensure(database, mongoTemplate.getCollectionName(Challenge.class), "created", "created_ttl",
+                    challengeTtlSeconds);
+            return null;
+        });
     }
 
 }
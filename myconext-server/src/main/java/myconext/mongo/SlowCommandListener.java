@@ -0,0 +1,304 @@
+package myconext.mongo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.*;
+import org.bson.codecs.BsonDocumentCodec;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/*
+ * Logs and counts the Mongo commands which take longer than the threshold. The latency per collection and command is
+ * recorded by the Micrometer command listener of Spring Boot.
+ *
+ * The command document is only valid during commandStarted and the filter is not part of the completed event, so
+ * copying it is the only way to know the filter of a slow command. To keep commandStarted cheap only a sample of the
+ * commands copy their filter as raw bytes. A sampled slow command is logged with the shape of its filter - the field
+ * names and operators, but every value is replaced by '?' - and explained on a background thread, and a collection
+ * scan is logged as a warning, so missing indexes show up in production without tracing every query.
+ *
+ * Only a sampled read keeps a copy of the whole command for the explain. A write - which might contain a complete
+ * replacement document - is explained as a find with the filter of its first statement.
+ */
+public class SlowCommandListener implements CommandListener, DisposableBean {
+
+    private static final Log LOG = LogFactory.getLog(SlowCommandListener.class);
+
+    private static final String REDACTED = "?";
+    private static final String FILTER = "filter";
+    private static final BsonDocumentCodec BSON_DOCUMENT_CODEC = new BsonDocumentCodec();
+    private static final Set<String> EXPLAINABLE = new HashSet<>(
+            Arrays.asList("find", "aggregate", "count", "distinct", "findAndModify", "update", "delete"));
+    private static final Set<String> READS = new HashSet<>(
+            Arrays.asList("find", "aggregate", "count", "distinct"));
+    //Generic command arguments which are not allowed in the command nested in an explain
+    private static final Set<String> NOT_EXPLAINABLE_ARGUMENTS = new HashSet<>(
+            Arrays.asList("lsid", "txnNumber", "autocommit", "startTransaction"));
+
+    private final long thresholdMillis;
+    private final double explainSampleRate;
+    private final ObjectProvider<MongoDatabaseFactory> mongoDatabaseFactoryProvider;
+    private final ThreadPoolExecutor executor;
+    private final Map<Integer, StartedCommand> startedCommands = new ConcurrentHashMap<>();
+    //Every distinct slow query is explained at most once per interval
+    private final Cache<String, Boolean> explainedShapes;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter explained;
+    private final Counter collectionScans;
+    private final Counter explainsDropped;
+    private final Counter explainsFailed;
+
+    public SlowCommandListener(long thresholdMillis,
+                               double explainSampleRate,
+                               int explainQueueCapacity,
+                               long explainIntervalMinutes,
+                               ObjectProvider<MongoDatabaseFactory> mongoDatabaseFactoryProvider,
+                               MeterRegistry meterRegistry) {
+        this.thresholdMillis = thresholdMillis;
+        this.explainSampleRate = explainSampleRate;
+        this.mongoDatabaseFactoryProvider = mongoDatabaseFactoryProvider;
+        this.meterRegistry = meterRegistry;
+        this.explained = explains(meterRegistry, "index");
+        this.collectionScans = explains(meterRegistry, "collection_scan");
+        this.explainsDropped = explains(meterRegistry, "dropped");
+        this.explainsFailed = explains(meterRegistry, "failed");
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(explainQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "mongo-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, threadPoolExecutor) -> explainsDropped.increment());
+        this.explainedShapes = CacheBuilder.newBuilder()
+                .expireAfterWrite(explainIntervalMinutes, TimeUnit.MINUTES)
+                .maximumSize(1000)
+                .build();
+    }
+
+    private static Counter explains(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("myconext.mongo.slow.explains")
+                .description("Explains of slow mongo commands by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String commandName = event.getCommandName();
+        if (!EXPLAINABLE.contains(commandName)) {
+            return;
+        }
+        BsonDocument command = event.getCommand();
+        BsonValue collection = command.get(commandName);
+        String collectionName = collection != null && collection.isString() ? collection.asString().getValue() : "";
+        boolean sampled = explainSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < explainSampleRate;
+        if (!sampled) {
+            startedCommands.put(event.getRequestId(), new StartedCommand(event.getDatabaseName(), collectionName, null, null));
+            return;
+        }
+        //The command document is only valid during this callback, so the filter and the explainable read are copied now
+        BsonValue filter = filter(commandName, command);
+        startedCommands.put(event.getRequestId(), new StartedCommand(
+                event.getDatabaseName(),
+                collectionName,
+                new RawBsonDocument(filter == null ? new BsonDocument() : new BsonDocument(FILTER, filter), BSON_DOCUMENT_CODEC),
+                READS.contains(commandName) ? explainable(command) : null));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        StartedCommand startedCommand = startedCommands.remove(event.getRequestId());
+        if (startedCommand == null) {
+            return;
+        }
+        long elapsedMillis = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        if (elapsedMillis < thresholdMillis) {
+            return;
+        }
+        String commandName = event.getCommandName();
+        meterRegistry.counter("myconext.mongo.slow.commands",
+                "collection", startedCommand.collection, "command", commandName).increment();
+        if (startedCommand.filter == null) {
+            LOG.warn(String.format("Slow mongo command %s on %s took %s ms",
+                    commandName, startedCommand.collection, elapsedMillis));
+            return;
+        }
+        BsonValue filter = startedCommand.filter.get(FILTER);
+        String shape = filter == null ? "{}" : shape(filter);
+        LOG.warn(String.format("Slow mongo command %s on %s took %s ms, shape %s",
+                commandName, startedCommand.collection, elapsedMillis, shape));
+
+        String key = String.join(":", startedCommand.databaseName, startedCommand.collection, commandName, shape);
+        if (explainedShapes.asMap().putIfAbsent(key, Boolean.TRUE) == null) {
+            executor.execute(() -> explain(commandName, shape, startedCommand));
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        startedCommands.remove(event.getRequestId());
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void explain(String commandName, String shape, StartedCommand startedCommand) {
+        try {
+            //The explain command itself is not in EXPLAINABLE and therefore never explained again
+            org.bson.Document result = mongoDatabaseFactoryProvider.getObject()
+                    .getMongoDatabase(startedCommand.databaseName)
+                    .runCommand(new BsonDocument("explain", explainCommand(startedCommand))
+                            .append("verbosity", new BsonString("queryPlanner")));
+            List<String> stages = new ArrayList<>();
+            Object queryPlanner = result.get("queryPlanner");
+            if (queryPlanner instanceof org.bson.Document) {
+                stages(((org.bson.Document) queryPlanner).get("winningPlan"), stages);
+            } else {
+                //Explain of an aggregation returns the stages of the pipeline
+                stages(result.get("stages"), stages);
+            }
+            if (stages.contains("COLLSCAN")) {
+                collectionScans.increment();
+                LOG.warn(String.format("Slow mongo command %s on %s uses a collection scan, shape %s, plan %s",
+                        commandName, startedCommand.collection, shape, stages));
+            } else {
+                explained.increment();
+                LOG.info(String.format("Slow mongo command %s on %s, shape %s, plan %s",
+                        commandName, startedCommand.collection, shape, stages));
+            }
+        } catch (RuntimeException e) {
+            explainsFailed.increment();
+            LOG.warn(String.format("Explain of mongo command %s on %s failed: %s",
+                    commandName, startedCommand.collection, e.getMessage()));
+        }
+    }
+
+    /*
+     * Collects the stage names of the winning plan, from the root stage to the leaf stages
+     */
+    @SuppressWarnings("unchecked")
+    static void stages(Object plan, List<String> stages) {
+        if (plan instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) plan;
+            Object stage = map.get("stage");
+            if (stage instanceof String) {
+                Object indexName = map.get("indexName");
+                stages.add(indexName == null ? (String) stage : stage + " " + indexName);
+            }
+            map.values().forEach(value -> stages(value, stages));
+        } else if (plan instanceof List) {
+            ((List<Object>) plan).forEach(value -> stages(value, stages));
+        }
+    }
+
+    /*
+     * The filter of the command with every value replaced by '?'
+     */
+    static String shape(String commandName, BsonDocument command) {
+        BsonValue filter = filter(commandName, command);
+        return filter == null ? "{}" : shape(filter);
+    }
+
+    private static String shape(BsonValue filter) {
+        BsonValue redacted = redact(filter);
+        //Only a BsonDocument renders itself as JSON
+        return redacted.isArray() ? redacted.asArray().stream()
+                .map(BsonValue::toString)
+                .collect(Collectors.joining(", ", "[", "]")) : redacted.toString();
+    }
+
+    private static BsonValue filter(String commandName, BsonDocument command) {
+        BsonValue filter;
+        switch (commandName) {
+            case "find":
+                filter = command.get("filter");
+                break;
+            case "aggregate":
+                filter = command.get("pipeline");
+                break;
+            case "update":
+                filter = firstStatement(command, "updates");
+                break;
+            case "delete":
+                filter = firstStatement(command, "deletes");
+                break;
+            default:
+                filter = command.get("query");
+        }
+        return filter;
+    }
+
+    private static BsonValue firstStatement(BsonDocument command, String key) {
+        BsonValue statements = command.get(key);
+        if (statements == null || !statements.isArray() || statements.asArray().isEmpty()) {
+            return null;
+        }
+        BsonValue statement = statements.asArray().get(0);
+        return statement.isDocument() ? statement.asDocument().get("q") : null;
+    }
+
+    private static BsonValue redact(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, nested) -> redacted.append(key, redact(nested)));
+            return redacted;
+        }
+        //Only arrays of documents - like $or and the pipeline - have a shape, a $in of values is just a value
+        if (value.isArray() && !value.asArray().isEmpty() && value.asArray().get(0).isDocument()) {
+            BsonArray redacted = new BsonArray();
+            value.asArray().forEach(nested -> redacted.add(redact(nested)));
+            return redacted;
+        }
+        return new BsonString(REDACTED);
+    }
+
+    private static BsonDocument explainCommand(StartedCommand startedCommand) {
+        if (startedCommand.command != null) {
+            return startedCommand.command;
+        }
+        BsonValue filter = startedCommand.filter.get(FILTER);
+        return new BsonDocument("find", new BsonString(startedCommand.collection))
+                .append(FILTER, filter == null ? new BsonDocument() : filter);
+    }
+
+    private static BsonDocument explainable(BsonDocument command) {
+        BsonDocument copy = command.clone();
+        copy.keySet().removeIf(key -> key.startsWith("$") || NOT_EXPLAINABLE_ARGUMENTS.contains(key));
+        return copy;
+    }
+
+    /*
+     * The filter - and for a read the command - are only copied when the command is sampled
+     */
+    private static class StartedCommand {
+
+        private final String databaseName;
+        private final String collection;
+        private final RawBsonDocument filter;
+        private final BsonDocument command;
+
+        private StartedCommand(String databaseName, String collection, RawBsonDocument filter, BsonDocument command) {
+            this.databaseName = databaseName;
+            this.collection = collection;
+            this.filter = filter;
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package myconext.mongo;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+/*
+ * Creating an index with the name of an existing index, but with another expireAfterSeconds fails with an
+ * IndexOptionsConflict. A changed retention is therefore applied to the existing TTL index with collMod.
+ */
+public final class TtlIndexes {
+
+    private static final Log LOG = LogFactory.getLog(TtlIndexes.class);
+
+    private TtlIndexes() {
+    }
+
+    public static void ensure(MongoDatabase database, String collectionName, String field, String name, long expireAfterSeconds) {
+        Optional<Document> existing = StreamSupport.stream(database.getCollection(collectionName).listIndexes().spliterator(), false)
+                .filter(index -> name.equals(index.getString("name")))
+                .findFirst();
+        if (!existing.isPresent()) {
+            database.getCollection(collectionName).createIndex(new Document(field, 1),
+                    new IndexOptions().name(name).expireAfter(expireAfterSeconds, TimeUnit.SECONDS));
+            LOG.info(String.format("Created TTL index %s on %s with expireAfterSeconds %s", name, collectionName, expireAfterSeconds));
+            return;
+        }
+        Number current = existing.get().get("expireAfterSeconds", Number.class);
+        if (current == null || current.longValue() != expireAfterSeconds) {
+            database.runCommand(new Document("collMod", collectionName)
+                    .append("index", new Document("name", name).append("expireAfterSeconds", expireAfterSeconds)));
+            LOG.info(String.format("Changed expireAfterSeconds of TTL index %s on %s from %s to %s",
+                    name, collectionName, current, expireAfterSeconds));
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package myconext.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.*;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/*
+ * The user_logins are stored in a time-series collection with the userId as meta field, so the logins of a user are
+ * stored together in buckets and the retention is enforced per bucket with expireAfterSeconds.
+ *
+ * Deleting the logins of a deleted user requires a delete on the meta field, which MongoDB supports from version 5.1.
+ * Older servers get a regular collection with a TTL index on the created date.
+ */
+public final class UserLoginsCollection {
+
+    private static final Log LOG = LogFactory.getLog(UserLoginsCollection.class);
+
+    public static final String COLLECTION_NAME = "user_logins";
+
+    static final String TIME_FIELD = "created";
+    static final String META_FIELD = "userId";
+
+    private static final String LEGACY_COLLECTION_NAME = "user_logins_legacy";
+    private static final int BATCH_SIZE = 1000;
+
+    private UserLoginsCollection() {
+    }
+
+    /*
+     * Creates the time-series collection and moves the logins of an existing regular collection into it. Runs on every
+     * startup, so a server upgraded to 5.1 is migrated as well. Every step can be resumed: a user_logins_legacy which is
+     * left behind by an interrupted migration is copied again from the last copied login.
+     */
+    public static void create(MongoDatabase database) {
+        if (!timeSeriesSupported(database)) {
+            LOG.info(String.format("MongoDB %s does not support deletes in time-series collections, %s remains a regular collection",
+                    version(database), COLLECTION_NAME));
+            backfillCreated(database);
+            return;
+        }
+        Set<String> collectionNames = collectionNames(database);
+        boolean legacyExists = collectionNames.contains(LEGACY_COLLECTION_NAME);
+        boolean timeSeries = isTimeSeries(database);
+        if (timeSeries && !legacyExists) {
+            return;
+        }
+        if (!timeSeries) {
+            if (collectionNames.contains(COLLECTION_NAME)) {
+                LOG.info(String.format("Before the migration to a time-series collection: %s", statistics(database)));
+                if (legacyExists) {
+                    //An interrupted migration renamed the collection, after which new logins created it again
+                    upsertInto(database.getCollection(COLLECTION_NAME), database.getCollection(LEGACY_COLLECTION_NAME));
+                    database.getCollection(COLLECTION_NAME).drop();
+                } else {
+                    database.getCollection(COLLECTION_NAME).renameCollection(
+                            new com.mongodb.MongoNamespace(database.getName(), LEGACY_COLLECTION_NAME));
+                    legacyExists = true;
+                }
+            }
+            database.createCollection(COLLECTION_NAME, new CreateCollectionOptions()
+                    .timeSeriesOptions(new TimeSeriesOptions(TIME_FIELD)
+                            .metaField(META_FIELD)
+                            .granularity(TimeSeriesGranularity.HOURS)));
+        }
+        if (legacyExists) {
+            long count = copyLegacy(database);
+            database.getCollection(LEGACY_COLLECTION_NAME).drop();
+            LOG.info(String.format("Moved %s user logins to the time-series collection: %s", count, statistics(database)));
+        }
+    }
+
+    /*
+     * The legacy logins are copied ordered by _id. A time-series collection has no unique index on _id, so copying
+     * again after an interruption continues after the last copied login instead of inserting duplicates. Logins
+     * stored after the migration started have a higher _id than every legacy login and are therefore ignored.
+     */
+    private static long copyLegacy(MongoDatabase database) {
+        MongoCollection<Document> legacy = database.getCollection(LEGACY_COLLECTION_NAME);
+        MongoCollection<Document> userLogins = database.getCollection(COLLECTION_NAME);
+        Document lastLegacy = legacy.find().sort(Sorts.descending("_id")).limit(1).first();
+        if (lastLegacy == null) {
+            return 0;
+        }
+        Document lastCopied = userLogins.find(Filters.lte("_id", lastLegacy.get("_id")))
+                .sort(Sorts.descending("_id")).limit(1).first();
+        Bson notCopied = lastCopied == null ? new Document() : Filters.gt("_id", lastCopied.get("_id"));
+        long count = 0;
+        List<Document> batch = new ArrayList<>(BATCH_SIZE);
+        try (MongoCursor<Document> cursor = legacy.find(notCopied).sort(Sorts.ascending("_id")).batchSize(BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                batch.add(fromLegacy(cursor.next()));
+                if (batch.size() == BATCH_SIZE || !cursor.hasNext()) {
+                    //Ordered, so an interrupted insert leaves a prefix of the batch
+                    userLogins.insertMany(batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void upsertInto(MongoCollection<Document> source, MongoCollection<Document> target) {
+        List<ReplaceOneModel<Document>> batch = new ArrayList<>(BATCH_SIZE);
+        try (MongoCursor<Document> cursor = source.find().batchSize(BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                batch.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document,
+                        new ReplaceOptions().upsert(true)));
+                if (batch.size() == BATCH_SIZE || !cursor.hasNext()) {
+                    target.bulkWrite(batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /*
+     * The TTL index of a regular collection only removes documents with a created date. The logins stored before the
+     * created date was added get the creation time of their ObjectId, the others the current time.
+     */
+    static void backfillCreated(MongoDatabase database) {
+        MongoCollection<Document> userLogins = database.getCollection(COLLECTION_NAME);
+        Bson withoutCreated = Filters.exists(TIME_FIELD, false);
+        long fromObjectId = userLogins.updateMany(Filters.and(withoutCreated, Filters.type("_id", BsonType.OBJECT_ID)),
+                Collections.singletonList(new Document("$set", new Document(TIME_FIELD, new Document("$toDate", "$_id")))))
+                .getModifiedCount();
+        long fromNow = userLogins.updateMany(withoutCreated, Updates.set(TIME_FIELD, new Date())).getModifiedCount();
+        if (fromObjectId + fromNow > 0) {
+            LOG.info(String.format("Added the created date to %s user logins from their ObjectId and to %s others",
+                    fromObjectId, fromNow));
+        }
+    }
+
+    /*
+     * The regular collection has no created date, but the creation time of the ObjectId is the time of the login
+     */
+    static Document fromLegacy(Document legacy) {
+        Document userLogin = new Document();
+        Object id = legacy.get("_id");
+        userLogin.put("_id", id);
+        userLogin.put(TIME_FIELD, legacy.containsKey(TIME_FIELD) ? legacy.get(TIME_FIELD) :
+                id instanceof ObjectId ? ((ObjectId) id).getDate() : new Date());
+        Arrays.asList(META_FIELD, "userAgent", "forwardedFor", "ipAddress").forEach(key -> {
+            Object value = legacy.get(key);
+            if (value != null) {
+                userLogin.put(key, value);
+            }
+        });
+        return userLogin;
+    }
+
+    /*
+     * Sets the retention of the user logins. A time-series collection expires whole buckets with expireAfterSeconds,
+     * a regular collection has a TTL index on the created date
+     */
+    public static void applyRetention(MongoDatabase database, long retentionDays) {
+        long expireAfterSeconds = TimeUnit.DAYS.toSeconds(retentionDays);
+        if (isTimeSeries(database)) {
+            database.runCommand(new Document("collMod", COLLECTION_NAME).append("expireAfterSeconds", expireAfterSeconds));
+        } else {
+            TtlIndexes.ensure(database, COLLECTION_NAME, TIME_FIELD, "created_ttl", expireAfterSeconds);
+        }
+        LOG.info(String.format("Retention of %s is %s days: %s", COLLECTION_NAME, retentionDays, statistics(database)));
+    }
+
+    /*
+     * The number of logins and the storage and index sizes, which are the disk and working set footprint
+     */
+    public static Map<String, Object> statistics(MongoDatabase database) {
+        Document collStats = database.runCommand(new Document("collStats", COLLECTION_NAME));
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("timeSeries", collStats.containsKey("timeseries"));
+        Arrays.asList("count", "size", "storageSize", "totalIndexSize").forEach(key -> statistics.put(key, collStats.get(key)));
+        Object timeseries = collStats.get("timeseries");
+        if (timeseries instanceof Document) {
+            statistics.put("bucketCount", ((Document) timeseries).get("bucketCount"));
+        }
+        return statistics;
+    }
+
+    static boolean isTimeSeries(MongoDatabase database) {
+        return StreamSupport.stream(database.listCollections().filter(new Document("name", COLLECTION_NAME)).spliterator(), false)
+                .anyMatch(collection -> "timeseries".equals(collection.getString("type")));
+    }
+
+    static boolean timeSeriesSupported(MongoDatabase database) {
+        return supportsMetaFieldDeletes(version(database));
+    }
+
+    static boolean supportsMetaFieldDeletes(String version) {
+        if (!StringUtils.hasText(version)) {
+            return false;
+        }
+        String[] parts = version.split("\\.");
+        int major = Integer.parseInt(parts[0]);
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1].replaceAll("\\D.*", "")) : 0;
+        return major > 5 || (major == 5 && minor >= 1);
+    }
+
+    private static String version(MongoDatabase database) {
+        return database.runCommand(new Document("buildInfo", 1)).getString("version");
+    }
+
+    private static Set<String> collectionNames(MongoDatabase database) {
+        return StreamSupport.stream(database.listCollectionNames().spliterator(), false).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,81 @@
+package myconext.oidcng;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import myconext.model.TokenRepresentation;
+import myconext.model.User;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Caches the oidcng tokens per user for a short time, as the account GUI fetches them on every page view. Failures are
+ * not cached.
+ *
+ * The cache is local to the node. Deleting tokens evicts the cached tokens on this node only, so the caller passes the
+ * time of the last delete - kept in the session shared by all nodes - and tokens cached on another node before that
+ * time are fetched again.
+ */
+public class CachingOpenIDConnect implements OpenIDConnect {
+
+    private final OpenIDConnect delegate;
+    private final Cache<String, CachedTokens> tokens;
+
+    public CachingOpenIDConnect(OpenIDConnect delegate, long cacheTtlSeconds) {
+        this.delegate = delegate;
+        this.tokens = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10_000)
+                .build();
+    }
+
+    @Override
+    public List<Map<String, Object>> tokens(User user) {
+        return tokens(user, 0L);
+    }
+
+    @Override
+    public List<Map<String, Object>> tokens(User user, long notBeforeMillis) {
+        try {
+            CachedTokens cachedTokens = tokens.get(user.getId(), () -> fetch(user));
+            if (cachedTokens.fetchedAtMillis < notBeforeMillis) {
+                tokens.invalidate(user.getId());
+                cachedTokens = tokens.get(user.getId(), () -> fetch(user));
+            }
+            return cachedTokens.tokens;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public HttpStatus deleteTokens(List<TokenRepresentation> tokenIdentifiers, User user) {
+        try {
+            return delegate.deleteTokens(tokenIdentifiers, user);
+        } finally {
+            tokens.invalidate(user.getId());
+        }
+    }
+
+    private CachedTokens fetch(User user) {
+        //Taken before the call, so tokens which might have been fetched before a concurrent delete count as stale
+        long fetchedAtMillis = System.currentTimeMillis();
+        return new CachedTokens(delegate.tokens(user), fetchedAtMillis);
+    }
+
+    private static class CachedTokens {
+
+        private final List<Map<String, Object>> tokens;
+        private final long fetchedAtMillis;
+
+        private CachedTokens(List<Map<String, Object>> tokens, long fetchedAtMillis) {
+            this.tokens = tokens;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+    }
+}
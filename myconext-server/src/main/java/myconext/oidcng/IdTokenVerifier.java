@@ -0,0 +1,137 @@
+package myconext.oidcng;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.openid.connect.sdk.op.OIDCProviderMetadata;
+import com.nimbusds.openid.connect.sdk.validators.IDTokenValidator;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Verifies the id_token of the oidcng token response locally, so the claims of the id_token can be used instead of
+ * calling the userinfo endpoint. The discovery document and the JWKS are fetched at startup and the keys are refreshed
+ * in the background. When the keys are missing - e.g. oidcng was down at startup - or an id_token is signed with an
+ * unknown key, a request refreshes the keys, rate limited. A request never waits for a refresh in progress, but falls
+ * back to the userinfo endpoint instead. The keys and the validator built from them are published together, so a
+ * concurrent refresh never exposes one without the other.
+ */
+public class IdTokenVerifier {
+
+    private static final Log LOG = LogFactory.getLog(IdTokenVerifier.class);
+
+    private final RestTemplate restTemplate;
+    private final String discoveryUrl;
+    private final ClientID clientId;
+    private final long minRefreshIntervalMillis;
+
+    private final Lock refreshLock = new ReentrantLock();
+
+    private volatile OIDCProviderMetadata providerMetadata;
+    private volatile Keys keys;
+    private volatile long lastRefreshMillis;
+
+    public IdTokenVerifier(RestTemplate restTemplate, String discoveryUrl, String clientId, long minRefreshIntervalMillis) {
+        this.restTemplate = restTemplate;
+        this.discoveryUrl = discoveryUrl;
+        this.clientId = new ClientID(clientId);
+        this.minRefreshIntervalMillis = minRefreshIntervalMillis;
+    }
+
+    /*
+     * Returns the claims of the id_token, or empty if there is no id_token or if it is not valid
+     */
+    public Optional<Map<String, Object>> claims(String idToken) {
+        if (!StringUtils.hasText(idToken)) {
+            return Optional.empty();
+        }
+        try {
+            JWT jwt = JWTParser.parse(idToken);
+            if (!(jwt instanceof SignedJWT)) {
+                LOG.warn("Not using an unsigned id_token");
+                return Optional.empty();
+            }
+            JWSHeader header = ((SignedJWT) jwt).getHeader();
+            Keys currentKeys = keys;
+            if (currentKeys == null || (header.getKeyID() != null && currentKeys.jwkSet.getKeyByKeyId(header.getKeyID()) == null)) {
+                if (refreshLock.tryLock()) {
+                    try {
+                        refreshKeys(true);
+                    } finally {
+                        refreshLock.unlock();
+                    }
+                }
+                currentKeys = keys;
+            }
+            if (currentKeys == null) {
+                return Optional.empty();
+            }
+            return Optional.of(currentKeys.validator.validate(jwt, null).toJWTClaimsSet().getClaims());
+        } catch (Exception e) {
+            LOG.warn(String.format("Invalid id_token: %s", e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadKeys() {
+        refresh();
+    }
+
+    @Scheduled(initialDelayString = "${oidc.jwks-refresh-initial-delay-milliseconds}",
+            fixedRateString = "${oidc.jwks-refresh-fixed-rate-milliseconds}")
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            refreshKeys(false);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    //Only called when holding the refreshLock
+    private void refreshKeys(boolean rateLimited) {
+        long now = System.currentTimeMillis();
+        if (rateLimited && now - lastRefreshMillis < minRefreshIntervalMillis) {
+            return;
+        }
+        lastRefreshMillis = now;
+        try {
+            if (providerMetadata == null) {
+                providerMetadata = OIDCProviderMetadata.parse(restTemplate.getForObject(discoveryUrl, String.class));
+            }
+            JWKSet newJwkSet = JWKSet.parse(restTemplate.getForObject(providerMetadata.getJWKSetURI(), String.class));
+            JWSAlgorithm algorithm = providerMetadata.getIDTokenJWSAlgs() == null || providerMetadata.getIDTokenJWSAlgs().isEmpty() ?
+                    JWSAlgorithm.RS256 : providerMetadata.getIDTokenJWSAlgs().get(0);
+            this.keys = new Keys(newJwkSet, new IDTokenValidator(providerMetadata.getIssuer(), clientId, algorithm, newJwkSet));
+            LOG.debug(String.format("Refreshed %s keys from %s", newJwkSet.getKeys().size(), providerMetadata.getJWKSetURI()));
+        } catch (Exception e) {
+            LOG.warn(String.format("Unable to refresh the keys from %s: %s", discoveryUrl, e.getMessage()));
+        }
+    }
+
+    private static class Keys {
+
+        private final JWKSet jwkSet;
+        private final IDTokenValidator validator;
+
+        private Keys(JWKSet jwkSet, IDTokenValidator validator) {
+            this.jwkSet = jwkSet;
+            this.validator = validator;
+        }
+    }
+}
@@ -11,5 +11,12 @@ public interface OpenIDConnect {
 
     List<Map<String, Object>> tokens(User user);
 
+    /*
+     * The tokens of the user fetched after the given time, e.g. the time the user last deleted tokens on any node
+     */
+    default List<Map<String, Object>> tokens(User user, long notBeforeMillis) {
+        return tokens(user);
+    }
+
     HttpStatus deleteTokens(List<TokenRepresentation> tokenIdentifiers, User user);
 }
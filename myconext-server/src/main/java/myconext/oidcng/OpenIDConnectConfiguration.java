@@ -2,6 +2,7 @@ package myconext.oidcng;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import myconext.http.HttpClientFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,7 +32,19 @@ public class OpenIDConnectConfiguration {
     public OpenIDConnect openIDConnectRemote(@Value("${oidc-token-api.token-url}") URI oidcngUri,
                                              @Value("${oidc-token-api.user}") String user,
                                              @Value("${oidc-token-api.password}") String password,
-                                             @Value("${oidc-token-api.enabled}") boolean featureOidcTokenAPI) {
-        return new OpenIDConnectRemote(oidcngUri, user, password, featureOidcTokenAPI);
+                                             @Value("${oidc-token-api.enabled}") boolean featureOidcTokenAPI,
+                                             @Value("${oidc-token-api.cache-ttl-seconds}") long cacheTtlSeconds,
+                                             HttpClientFactory httpClientFactory) {
+        return new CachingOpenIDConnect(new OpenIDConnectRemote(httpClientFactory.restTemplate("oidcng-token-api"),
+                oidcngUri, user, password, featureOidcTokenAPI), cacheTtlSeconds);
+    }
+
+    @Bean
+    public IdTokenVerifier idTokenVerifier(@Value("${oidc.base-url}") String oidcBaseUrl,
+                                           @Value("${oidc.client-id}") String clientId,
+                                           @Value("${oidc.jwks-min-refresh-interval-milliseconds}") long minRefreshIntervalMillis,
+                                           HttpClientFactory httpClientFactory) {
+        return new IdTokenVerifier(httpClientFactory.restTemplate("oidcng-jwks"),
+                oidcBaseUrl + "/oidc/.well-known/openid-configuration", clientId, minRefreshIntervalMillis);
     }
 }
@@ -26,11 +26,12 @@ public class OpenIDConnectRemote implements OpenIDConnect {
     private final URI oidcngUri;
     private final boolean featureOidcTokenAPI;
 
-    public OpenIDConnectRemote(URI oidcngUri,
+    public OpenIDConnectRemote(RestTemplate restTemplate,
+                               URI oidcngUri,
                                String user,
                                String password,
                                boolean featureOidcTokenAPI) {
-        this.restTemplate = new RestTemplate();
+        this.restTemplate = restTemplate;
         this.oidcngUri = oidcngUri;
         this.featureOidcTokenAPI = featureOidcTokenAPI;
 
@@ -0,0 +1,14 @@
+package myconext.repository;
+
+import myconext.model.UserDeletion;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UserDeletionRepository extends MongoRepository<UserDeletion, String> {
+
+    List<UserDeletion> findByUserId(String userId);
+
+}
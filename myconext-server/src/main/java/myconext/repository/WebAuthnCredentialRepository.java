@@ -0,0 +1,16 @@
+package myconext.repository;
+
+
+import myconext.model.WebAuthnCredential;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface WebAuthnCredentialRepository extends MongoRepository<WebAuthnCredential, String> {
+
+    Optional<WebAuthnCredential> findByCredentialId(String credentialId);
+
+    long deleteByUserId(String userId);
+}
@@ -1,22 +1,60 @@
 package myconext.security;
 
-public class EmailGuessingPrevention {
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
-    private int millis;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
-    public EmailGuessingPrevention(int millis) {
+/*
+ * Delays the responses of endpoints which reveal whether an email is known. The work is done on the request thread,
+ * but the result - or the exception - is only completed after the delay plus a random jitter by a scheduler thread.
+ * The request thread is therefore released during the delay, instead of sleeping.
+ *
+ * The scheduler thread is not shared with the @Scheduled jobs, as a long-running job would delay every response.
+ */
+@Component
+public class EmailGuessingPrevention implements DisposableBean {
+
+    private final int millis;
+    private final int jitterMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "email-guessing-delay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EmailGuessingPrevention(@Value("${email_guessing_sleep_millis}") int millis,
+                                   @Value("${email_guessing_jitter_millis}") int jitterMillis) {
         this.millis = millis;
+        this.jitterMillis = jitterMillis;
     }
 
-    public void potentialUserEmailGuess() {
+    public <T> CompletableFuture<T> potentialUserEmailGuess(Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable completion;
         try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            //don't care
+            T result = work.get();
+            completion = () -> future.complete(result);
+        } catch (RuntimeException e) {
+            completion = () -> future.completeExceptionally(e);
         }
+        long delay = millis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextInt(jitterMillis + 1) : 0);
+        scheduler.schedule(completion, delay, TimeUnit.MILLISECONDS);
+        return future;
     }
 
     public String sanitizeEmail(String email) {
         return email != null ? email.trim() : email;
     }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
 }
@@ -1,13 +1,18 @@
 package myconext.security;
 
+import io.micrometer.core.instrument.Timer;
+import myconext.crypto.TokenGenerator;
 import myconext.exceptions.UserNotFoundException;
 import myconext.mail.MailBox;
 import myconext.manage.ServiceProviderHolder;
 import myconext.manage.ServiceProviderResolver;
+import myconext.metrics.LoginMetrics;
 import myconext.model.*;
 import myconext.repository.AuthenticationRequestRepository;
 import myconext.repository.UserLoginRepository;
 import myconext.repository.UserRepository;
+import myconext.tracing.Span;
+import myconext.tracing.Tracing;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.http.HttpMethod;
@@ -65,6 +70,8 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
     public static final String TIQR_COOKIE_NAME = "TIQR_COOKIE";
     public static final String REMEMBER_ME_QUESTION_ASKED_COOKIE_NAME = "REMEMBER_ME_QUESTION_ASKED_COOKIE";
 
+    private static final String NO_AUTH_CONTEXT = "no_auth_context";
+
     private static final Log LOG = LogFactory.getLog(GuestIdpAuthenticationRequestFilter.class);
 
     private final SamlRequestMatcher ssoSamlRequestMatcher;
@@ -82,6 +89,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
     private final MailBox mailBox;
     private final ServiceProviderResolver serviceProviderResolver;
     private final ExecutorService executor;
+    private final LoginMetrics loginMetrics;
     private final int nudgeAppDays;
     private final int rememberMeQuestionAskedDays;
     private final long removalNonValidatedDurationDays;
@@ -101,7 +109,8 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
                                                String magicLinkUrl,
                                                MailBox mailBox,
                                                long expiryNonValidatedDurationDays,
-                                               long removalNonValidatedDurationDays) {
+                                               long removalNonValidatedDurationDays,
+                                               LoginMetrics loginMetrics) {
         super(provisioning, assertionStore);
         this.ssoSamlRequestMatcher = new SamlRequestMatcher(provisioning, "SSO");
         this.magicSamlRequestMatcher = new SamlRequestMatcher(provisioning, "magic");
@@ -120,6 +129,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         this.mailBox = mailBox;
         this.expiryNonValidatedDurationDays = expiryNonValidatedDurationDays;
         this.removalNonValidatedDurationDays = removalNonValidatedDurationDays;
+        this.loginMetrics = loginMetrics;
         this.executor = Executors.newSingleThreadExecutor();
     }
 
@@ -127,20 +137,31 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         if (this.ssoSamlRequestMatcher.matches(request)) {
             LOG.debug("Starting SSO filter");
-            this.sso(request, response);
+            this.timed("sso", () -> this.sso(request, response));
             return;
         } else if (this.magicSamlRequestMatcher.matches(request)) {
             LOG.debug("Starting magic filter");
-            this.magic(request, response);
+            this.timed("magic", () -> this.magic(request, response));
             return;
         } else if (this.continueAfterloginSamlRequestMatcher.matches(request)) {
             LOG.debug("Starting continue after login filter");
-            this.continueAfterLogin(request, response);
+            this.timed("continue", () -> this.continueAfterLogin(request, response));
             return;
         }
         super.doFilterInternal(request, response, filterChain);
     }
 
+    private void timed(String flow, FlowStep step) throws IOException {
+        Timer.Sample sample = loginMetrics.start();
+        String outcome = LoginMetrics.ERROR;
+        try (Span span = Tracing.start("idp " + flow)) {
+            step.run();
+            outcome = LoginMetrics.OK;
+        } finally {
+            loginMetrics.flow(sample, flow, outcome);
+        }
+    }
+
     private void sso(HttpServletRequest request, HttpServletResponse response) throws IOException {
         IdentityProviderService provider = getProvisioning().getHostedProvider();
         String samlRequest = request.getParameter("SAMLRequest");
@@ -150,9 +171,11 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
             //prevent null-pointer and drop dead
             return;
         }
-        AuthenticationRequest authenticationRequest =
-                provider.fromXml(samlRequest, true, isDeflated(request), AuthenticationRequest.class);
-        provider.validate(authenticationRequest);
+        AuthenticationRequest authenticationRequest;
+        try (Span span = Tracing.start("saml parse")) {
+            authenticationRequest = provider.fromXml(samlRequest, true, isDeflated(request), AuthenticationRequest.class);
+            provider.validate(authenticationRequest);
+        }
 
         String requesterEntityId = requesterId(authenticationRequest);
         String issuer = authenticationRequest.getIssuer().getValue();
@@ -193,6 +216,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
                 samlAuthenticationRequest.setHash(hash());
                 authenticationRequestRepository.save(samlAuthenticationRequest);
                 addBrowserIdentificationCookie(response);
+                loginMetrics.stepUp("started");
                 response.sendRedirect(this.redirectUrl + "/stepup/" + samlAuthenticationRequest.getId() + "?explanation=" + explanation);
             } else {
                 ServiceProviderMetadata serviceProviderMetadata = provider.getRemoteProvider(samlAuthenticationRequest.getIssuer());
@@ -307,6 +331,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         }
         Optional<SamlAuthenticationRequest> optionalSamlAuthenticationRequest = authenticationRequestRepository.findByHash(hash);
         if (!optionalSamlAuthenticationRequest.isPresent()) {
+            loginMetrics.login("magiclink", null, false);
             response.sendRedirect(this.redirectUrl + "/expired");
             return;
         }
@@ -325,6 +350,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         String explanation = ACR.explanationKeyWord(authenticationContextClassReferences, hasStudentAffiliation);
 
         if (accountLinkingRequired && StepUpStatus.NONE.equals(samlAuthenticationRequest.getSteppedUp())) {
+            loginMetrics.stepUp("started");
             response.sendRedirect(this.redirectUrl + "/stepup/" + samlAuthenticationRequest.getId()
                     + "?explanation=" + explanation);
             return;
@@ -496,6 +522,10 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         }
         String loginMethod = samlAuthenticationRequest.isTiqrFlow() ? "tiqr" : "magiclink";
         logLoginWithContext(user, loginMethod, true, LOG, "Successfully logged in with " + loginMethod);
+        //Password and webauthn logins are counted when the credentials are verified
+        if (!samlAuthenticationRequest.isPasswordOrWebAuthnFlow()) {
+            loginMetrics.login(loginMethod, samlAuthenticationRequest.getRequesterEntityId(), true);
+        }
         sendAssertion(request, response, samlAuthenticationRequest, user, provider,
                 serviceProviderMetadata, authenticationRequest);
     }
@@ -503,6 +533,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
     private void finishStepUp(SamlAuthenticationRequest samlAuthenticationRequest) {
         samlAuthenticationRequest.setSteppedUp(StepUpStatus.FINISHED_STEP_UP);
         authenticationRequestRepository.save(samlAuthenticationRequest);
+        loginMetrics.stepUp("finished");
     }
 
     private void addRememberMeCookie(HttpServletResponse response, SamlAuthenticationRequest samlAuthenticationRequest) {
@@ -535,7 +566,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         Optional<Cookie> optionalCookie = cookieByName(request, TRACKING_DEVICE_COOKIE_NAME);
         String trackingUuid = user.getTrackingUuid();
         if (trackingUuid == null) {
-            user.setTrackingUuid(UUID.randomUUID().toString());
+            user.setTrackingUuid(TokenGenerator.uuid());
             userRepository.save(user);
         }
         if (!optionalCookie.isPresent() || !user.getTrackingUuid().equalsIgnoreCase(optionalCookie.get().getValue())) {
@@ -555,6 +586,20 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
     private void sendAssertion(HttpServletRequest request, HttpServletResponse response, SamlAuthenticationRequest samlAuthenticationRequest,
                                User user, IdentityProviderService provider, ServiceProviderMetadata serviceProviderMetadata,
                                AuthenticationRequest authenticationRequest) {
+        Timer.Sample sample = loginMetrics.start();
+        String outcome = LoginMetrics.ERROR;
+        try (Span span = Tracing.start("idp assertion")) {
+            outcome = postAssertion(request, response, samlAuthenticationRequest, user, provider,
+                    serviceProviderMetadata, authenticationRequest);
+        } finally {
+            loginMetrics.flow(sample, "assertion", outcome);
+        }
+    }
+
+    private String postAssertion(HttpServletRequest request, HttpServletResponse response, SamlAuthenticationRequest samlAuthenticationRequest,
+                                 User user, IdentityProviderService provider, ServiceProviderMetadata serviceProviderMetadata,
+                                 AuthenticationRequest authenticationRequest) {
+        String outcome = LoginMetrics.OK;
         String relayState = samlAuthenticationRequest.getRelayState();
         String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
         Assertion assertion = provider.assertion(
@@ -586,6 +631,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
                         .setCode(StatusCode.NO_AUTH_CONTEXT)
                         .setMessage(msg)
                         .setDetail(msg));
+                outcome = NO_AUTH_CONTEXT;
             } else {
                 samlResponse.getAssertions().get(0).getAuthenticationStatements().get(0)
                         .getAuthenticationContext()
@@ -599,13 +645,17 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
                     .setCode(StatusCode.NO_AUTH_CONTEXT)
                     .setMessage(msg)
                     .setDetail(msg));
+            outcome = NO_AUTH_CONTEXT;
         }
         Endpoint acsUrl = provider.getPreferredEndpoint(
                 serviceProviderMetadata.getServiceProvider().getAssertionConsumerService(),
                 Binding.POST,
                 -1
         );
-        String encoded = provider.toEncodedXml(samlResponse, false);
+        String encoded;
+        try (Span span = Tracing.start("saml sign")) {
+            encoded = provider.toEncodedXml(samlResponse, false);
+        }
         Map<String, Object> model = new HashMap<>();
         model.put("action", acsUrl.getLocation());
         model.put("SAMLResponse", encoded);
@@ -620,6 +670,7 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         //Tracking cookie for user new device discovery
         this.addTrackingCookie(request, response, user);
         processHtml(request, response, getPostBindingTemplate(), model);
+        return outcome;
     }
 
     public ServiceProviderResolver getServiceProviderResolver() {
@@ -695,4 +746,10 @@ public class GuestIdpAuthenticationRequestFilter extends IdpAuthenticationReques
         return new Attribute().setName(name).setNameFormat(AttributeNameFormat.URI).addValues((Object[]) value);
     }
 
+    @FunctionalInterface
+    private interface FlowStep {
+
+        void run() throws IOException;
+    }
+
 }
@@ -7,6 +7,7 @@ import myconext.manage.ServiceProviderResolver;
 import myconext.model.ServiceProvider;
 import myconext.repository.UserRepository;
 import myconext.shibboleth.ShibbolethPreAuthenticatedProcessingFilter;
+import myconext.shibboleth.ShibbolethPrincipalCache;
 import myconext.shibboleth.ShibbolethUserDetailService;
 import myconext.shibboleth.mock.MockShibbolethFilter;
 import org.apache.commons.io.IOUtil;
@@ -153,15 +154,18 @@ public class SecurityConfiguration {
         private final Environment environment;
         private final UserRepository userRepository;
         private final ServiceProviderResolver serviceProviderResolver;
+        private final ShibbolethPrincipalCache principalCache;
         private final String mijnEduIDEntityId;
 
         public InternalSecurityConfigurationAdapter(Environment environment,
                                                     UserRepository userRepository,
                                                     ServiceProviderResolver serviceProviderResolver,
+                                                    ShibbolethPrincipalCache principalCache,
                                                     @Value("${mijn_eduid_entity_id}") String mijnEduIDEntityId) {
             this.environment = environment;
             this.userRepository = userRepository;
             this.serviceProviderResolver = serviceProviderResolver;
+            this.principalCache = principalCache;
             this.mijnEduIDEntityId = mijnEduIDEntityId;
         }
 
@@ -187,6 +191,7 @@ public class SecurityConfiguration {
                                     authenticationManagerBean(),
                                     userRepository,
                                     serviceProviderResolver,
+                                    principalCache,
                                     mijnEduIDEntityId),
                             AbstractPreAuthenticatedProcessingFilter.class
                     )
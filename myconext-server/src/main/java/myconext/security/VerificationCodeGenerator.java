@@ -1,7 +1,6 @@
 package myconext.security;
 
-import java.security.SecureRandom;
-import java.util.Random;
+import myconext.crypto.TokenGenerator;
 
 public class VerificationCodeGenerator {
 
@@ -11,8 +10,6 @@ public class VerificationCodeGenerator {
     private static final char[] NUMBERS = "1234567890"
             .toCharArray();
 
-    private static final Random random = new SecureRandom();
-
     private VerificationCodeGenerator() {
     }
 
@@ -32,14 +29,8 @@ public class VerificationCodeGenerator {
 
     }
 
-    private static char[] getChars(int nbrBytes, char[] charArray) {
-        byte[] verifierBytes = new byte[nbrBytes];
-        random.nextBytes(verifierBytes);
-        char[] chars = new char[verifierBytes.length];
-        for (int i = 0; i < verifierBytes.length; i++) {
-            chars[i] = charArray[random.nextInt(charArray.length)];
-        }
-        return chars;
+    private static char[] getChars(int nbrChars, char[] charArray) {
+        return TokenGenerator.randomChars(nbrChars, charArray);
     }
 
 
@@ -0,0 +1,90 @@
+package myconext.session;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import myconext.model.User;
+import myconext.repository.UserRepository;
+import org.bson.types.ObjectId;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+/*
+ * Deserializes the session attributes and rehydrates the User principal of a PrincipalReference. Users are cached for
+ * a short time, as the session is read on every request. A deleted user results in an unauthenticated session. Every
+ * save or delete of a User through the repositories evicts the cached User, like the ShibbolethPrincipalCache.
+ */
+public class CompactSessionDeserializer extends AbstractMongoEventListener<User> implements Converter<byte[], Object> {
+
+    private final Converter<byte[], Object> deserializer = new DeserializingConverter();
+    private final UserRepository userRepository;
+    private final Cache<String, User> users;
+
+    public CompactSessionDeserializer(UserRepository userRepository, long cacheTtlSeconds) {
+        this.userRepository = userRepository;
+        this.users = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10_000)
+                .build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object convert(byte[] source) {
+        Object result = deserializer.convert(source);
+        if (result instanceof Map) {
+            Map<String, Object> attributes = (Map<String, Object>) result;
+            Object attribute = attributes.get(SPRING_SECURITY_CONTEXT_KEY);
+            if (attribute instanceof PrincipalReference) {
+                PrincipalReference principalReference = (PrincipalReference) attribute;
+                Optional<User> optionalUser = user(principalReference.getUserId());
+                if (optionalUser.isPresent()) {
+                    attributes.put(SPRING_SECURITY_CONTEXT_KEY,
+                            new SecurityContextImpl(principalReference.toAuthentication(optionalUser.get())));
+                } else {
+                    attributes.remove(SPRING_SECURITY_CONTEXT_KEY);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(String userId) {
+        users.invalidate(userId);
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        invalidate(event.getSource().getId());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        Object id = event.getSource().get("_id");
+        if (id instanceof String || id instanceof ObjectId) {
+            invalidate(String.valueOf(id));
+        } else {
+            //A delete by another criteria
+            users.invalidateAll();
+        }
+    }
+
+    private Optional<User> user(String userId) {
+        User user = users.getIfPresent(userId);
+        if (user != null) {
+            return Optional.of(user);
+        }
+        Optional<User> optionalUser = userRepository.findById(userId);
+        optionalUser.ifPresent(u -> users.put(userId, u));
+        return optionalUser;
+    }
+}
@@ -0,0 +1,37 @@
+package myconext.session;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+/*
+ * Serializes the session attributes, but replaces the security context with a PrincipalReference. The full User with
+ * all eduIDs, linked accounts and credentials is therefore not written to the session document on every request.
+ */
+public class CompactSessionSerializer implements Converter<Object, byte[]> {
+
+    private final Converter<Object, byte[]> serializer = new SerializingConverter();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] convert(Object source) {
+        if (source instanceof Map) {
+            Map<String, Object> attributes = (Map<String, Object>) source;
+            Object securityContext = attributes.get(SPRING_SECURITY_CONTEXT_KEY);
+            if (securityContext instanceof SecurityContextImpl &&
+                    PrincipalReference.isReferable(((SecurityContext) securityContext).getAuthentication())) {
+                Map<String, Object> compactAttributes = new HashMap<>(attributes);
+                compactAttributes.put(SPRING_SECURITY_CONTEXT_KEY,
+                        new PrincipalReference(((SecurityContext) securityContext).getAuthentication()));
+                return serializer.convert(compactAttributes);
+            }
+        }
+        return serializer.convert(source);
+    }
+}
@@ -0,0 +1,51 @@
+package myconext.session;
+
+import lombok.Getter;
+import myconext.model.User;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+ * Replaces the authentication in the persisted security context, so only the id of the User principal is stored
+ */
+@Getter
+public class PrincipalReference implements Serializable {
+
+    private final boolean preAuthenticated;
+    private final String userId;
+    private final Object credentials;
+    private final List<String> authorities;
+
+    public PrincipalReference(Authentication authentication) {
+        this.preAuthenticated = authentication instanceof PreAuthenticatedAuthenticationToken;
+        this.userId = ((User) authentication.getPrincipal()).getId();
+        this.credentials = authentication.getCredentials();
+        this.authorities = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+    }
+
+    public static boolean isReferable(Authentication authentication) {
+        return authentication != null &&
+                authentication.isAuthenticated() &&
+                authentication.getPrincipal() instanceof User &&
+                (authentication.getClass().equals(PreAuthenticatedAuthenticationToken.class) ||
+                        authentication.getClass().equals(UsernamePasswordAuthenticationToken.class));
+    }
+
+    public Authentication toAuthentication(User user) {
+        List<SimpleGrantedAuthority> grantedAuthorities = authorities.stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        return preAuthenticated ?
+                new PreAuthenticatedAuthenticationToken(user, credentials, grantedAuthorities) :
+                new UsernamePasswordAuthenticationToken(user, credentials, grantedAuthorities);
+    }
+}
@@ -6,20 +6,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
 import myconext.model.EduID;
 import myconext.model.LinkedAccount;
 import myconext.model.PublicKeyCredentials;
 import myconext.model.User;
+import myconext.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.saml.saml2.authentication.Assertion;
+import org.springframework.session.MapSession;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.session.data.mongo.JdkMongoSessionConverter;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
 import org.springframework.session.data.mongo.config.annotation.web.http.EnableMongoHttpSession;
 import org.springframework.session.web.context.AbstractHttpSessionApplicationInitializer;
 import org.springframework.session.web.http.CookieSerializer;
 import org.springframework.session.web.http.DefaultCookieSerializer;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -57,6 +64,42 @@ public class SessionConfig extends AbstractHttpSessionApplicationInitializer {
         return defaultCookieSerializer;
     }
 
+    /*
+     * A bean to receive the Mongo events which evict the cached users
+     */
+    @Bean
+    CompactSessionDeserializer compactSessionDeserializer(UserRepository userRepository,
+                                                          @Value("${session_principal_cache_ttl_seconds}") long principalCacheTtlSeconds) {
+        return new CompactSessionDeserializer(userRepository, principalCacheTtlSeconds);
+    }
+
+    /*
+     * The sessions only contain a reference to the authenticated User, see CompactSessionSerializer
+     */
+    @Bean
+    JdkMongoSessionConverter mongoSessionConverter(CompactSessionDeserializer compactSessionDeserializer) {
+        return new JdkMongoSessionConverter(
+                new CompactSessionSerializer(),
+                compactSessionDeserializer,
+                Duration.ofSeconds(MapSession.DEFAULT_MAX_INACTIVE_INTERVAL_SECONDS));
+    }
+
+    /*
+     * Used by the SessionRepositoryFilter instead of the MongoIndexedSessionRepository to prevent a write of the
+     * complete session on every request
+     */
+    @Bean
+    @Primary
+    WriteAvoidingSessionRepository writeAvoidingSessionRepository(
+            MongoIndexedSessionRepository mongoSessionRepository,
+            MongoTemplate mongoTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${session_last_accessed_write_interval_seconds}") long lastAccessedWriteIntervalSeconds) {
+        return new WriteAvoidingSessionRepository(mongoSessionRepository, mongoTemplate,
+                MongoIndexedSessionRepository.DEFAULT_COLLECTION_NAME, Duration.ofSeconds(lastAccessedWriteIntervalSeconds),
+                meterRegistry);
+    }
+
     private static class AssertionMixin {
     }
 
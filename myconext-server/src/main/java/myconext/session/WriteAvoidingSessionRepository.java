@@ -0,0 +1,189 @@
+package myconext.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
+import org.springframework.session.data.mongo.MongoSession;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+ * The SessionRepositoryFilter saves the session after every request, even if only the lastAccessedTime changed. This
+ * repository only writes the complete session - including the serialized attributes - if the attributes, the id or
+ * the max inactive interval changed. Otherwise the lastAccessedTime and the expireAt field, which is covered by the TTL
+ * index of the expiry sweep, are updated at most once per configured interval.
+ *
+ * Attribute changes are detected through setAttribute and removeAttribute, so attribute values must not be mutated
+ * in place. Every save is counted by the kind of write: full, last_accessed or skipped.
+ */
+public class WriteAvoidingSessionRepository implements
+        FindByIndexNameSessionRepository<WriteAvoidingSessionRepository.TrackedSession> {
+
+    private final MongoIndexedSessionRepository delegate;
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final Duration lastAccessedWriteInterval;
+
+    private final Counter fullWrites;
+    private final Counter lastAccessedWrites;
+    private final Counter skippedWrites;
+
+    public WriteAvoidingSessionRepository(MongoIndexedSessionRepository delegate, MongoTemplate mongoTemplate,
+                                          String collectionName, Duration lastAccessedWriteInterval,
+                                          MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.lastAccessedWriteInterval = lastAccessedWriteInterval;
+        this.fullWrites = saves(meterRegistry, "full");
+        this.lastAccessedWrites = saves(meterRegistry, "last_accessed");
+        this.skippedWrites = saves(meterRegistry, "skipped");
+    }
+
+    private static Counter saves(MeterRegistry meterRegistry, String write) {
+        return Counter.builder("myconext.session.saves")
+                .description("Saves of the session by the kind of write")
+                .tag("write", write)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public TrackedSession createSession() {
+        return new TrackedSession(delegate.createSession(), true);
+    }
+
+    @Override
+    public void save(TrackedSession session) {
+        MongoSession mongoSession = session.delegate;
+        if (session.isNew || session.changed) {
+            delegate.save(mongoSession);
+            fullWrites.increment();
+            session.persisted();
+            return;
+        }
+        Instant lastAccessedTime = mongoSession.getLastAccessedTime();
+        if (Duration.between(session.persistedLastAccessedTime, lastAccessedTime).compareTo(lastAccessedWriteInterval) < 0) {
+            skippedWrites.increment();
+            return;
+        }
+        Query query = new Query(Criteria.where("_id").is(mongoSession.getId()));
+        Update update = new Update()
+                .set("accessed", Date.from(lastAccessedTime))
+                .set("expireAt", mongoSession.getExpireAt());
+        mongoTemplate.updateFirst(query, update, collectionName);
+        lastAccessedWrites.increment();
+        session.persisted();
+    }
+
+    @Override
+    public TrackedSession findById(String id) {
+        MongoSession mongoSession = delegate.findById(id);
+        return mongoSession == null ? null : new TrackedSession(mongoSession, false);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        delegate.deleteById(id);
+    }
+
+    @Override
+    public Map<String, TrackedSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        return delegate.findByIndexNameAndIndexValue(indexName, indexValue).entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> new TrackedSession(entry.getValue(), false)));
+    }
+
+    public static class TrackedSession implements Session {
+
+        private final MongoSession delegate;
+        private boolean isNew;
+        private boolean changed;
+        private Instant persistedLastAccessedTime;
+
+        private TrackedSession(MongoSession delegate, boolean isNew) {
+            this.delegate = delegate;
+            this.isNew = isNew;
+            this.persistedLastAccessedTime = delegate.getLastAccessedTime();
+        }
+
+        private void persisted() {
+            this.isNew = false;
+            this.changed = false;
+            this.persistedLastAccessedTime = delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            changed = true;
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            changed = true;
+            delegate.setAttribute(attributeName, attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            changed = changed || delegate.getAttribute(attributeName) != null;
+            delegate.removeAttribute(attributeName);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            changed = changed || !interval.equals(delegate.getMaxInactiveInterval());
+            delegate.setMaxInactiveInterval(interval);
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+    }
+}
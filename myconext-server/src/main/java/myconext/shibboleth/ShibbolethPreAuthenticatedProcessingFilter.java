@@ -31,16 +31,19 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
 
     private final UserRepository userRepository;
     private final ServiceProviderResolver serviceProviderResolver;
+    private final ShibbolethPrincipalCache principalCache;
     private final String mijnEduIDEntityId;
 
     public ShibbolethPreAuthenticatedProcessingFilter(AuthenticationManager authenticationManager,
                                                       UserRepository userRepository,
                                                       ServiceProviderResolver serviceProviderResolver,
+                                                      ShibbolethPrincipalCache principalCache,
                                                       String mijnEduIDEntityId) {
         super();
         super.setAuthenticationManager(authenticationManager);
         this.userRepository = userRepository;
         this.serviceProviderResolver = serviceProviderResolver;
+        this.principalCache = principalCache;
         this.mijnEduIDEntityId = mijnEduIDEntityId;
     }
 
@@ -59,10 +62,12 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
                     uid, schacHomeOrganization, givenName, familyName, email));
             return null;
         }
-        Optional<User> optionalUser = userRepository.findUserByUid(uid);
-        String preferredLanguage = cookieByName(request, "lang").map(Cookie::getValue).orElse("en");
-        return optionalUser.orElseGet(() ->
-                provisionUser(uid, schacHomeOrganization, givenName, familyName, email, preferredLanguage));
+        return principalCache.get(uid, () -> {
+            Optional<User> optionalUser = userRepository.findUserByUid(uid);
+            String preferredLanguage = cookieByName(request, "lang").map(Cookie::getValue).orElse("en");
+            return optionalUser.orElseGet(() ->
+                    provisionUser(uid, schacHomeOrganization, givenName, familyName, email, preferredLanguage));
+        });
     }
 
     private User provisionUser(String uid, String schacHomeOrganization, String givenName, String familyName,
@@ -83,8 +88,12 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
 
     private String getHeader(String name, HttpServletRequest request) {
         String header = request.getHeader(name);
-        return StringUtils.hasText(header) ?
-                new String(header.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) : "";
+        if (!StringUtils.hasText(header)) {
+            return "";
+        }
+        //Only headers with non-ASCII characters were UTF-8 encoded by Shibboleth and decoded as ISO-8859-1
+        return header.chars().allMatch(c -> c < 0x80) ? header :
+                new String(header.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
     }
 
 
@@ -0,0 +1,63 @@
+package myconext.shibboleth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import myconext.model.User;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+ * Caches the pre-authenticated User by uid for a short time. Concurrent lookups of the same uid wait for the one
+ * loading - and possibly provisioning - the User, so a burst of first logins does not create duplicate users. Every
+ * save or delete of a User through the repositories evicts the cached User.
+ */
+@Component
+public class ShibbolethPrincipalCache extends AbstractMongoEventListener<User> {
+
+    private final Cache<String, User> users;
+
+    public ShibbolethPrincipalCache(@Value("${shibboleth_principal_cache_ttl_seconds}") long cacheTtlSeconds) {
+        this.users = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10_000)
+                .build();
+    }
+
+    public User get(String uid, Supplier<User> loader) {
+        try {
+            return users.get(uid, loader::get);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        users.invalidate(event.getSource().getUid());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        Object id = event.getSource().get("_id");
+        if (id instanceof String || id instanceof ObjectId) {
+            users.asMap().values().removeIf(user -> user.getId().equals(String.valueOf(id)));
+        } else {
+            //A delete by another criteria
+            users.invalidateAll();
+        }
+    }
+}
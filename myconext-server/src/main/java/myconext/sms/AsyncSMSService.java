@@ -0,0 +1,185 @@
+package myconext.sms;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import myconext.exceptions.ServiceUnavailableException;
+import myconext.exceptions.TooManyRequestsException;
+import myconext.tracing.Span;
+import myconext.tracing.Tracing;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Queues SMS messages in a bounded queue and sends them on a small pool of dispatcher threads, so a slow SMS gateway
+ * does not tie up the request threads. Failed sends are retried with a linear backoff and a circuit breaker stops
+ * calling the gateway after consecutive failures. When the circuit is half open only a single trial message is sent,
+ * the other messages wait for the outcome of the trial. Every message is counted by its outcome and the latency from
+ * queueing to delivery is timed.
+ */
+public class AsyncSMSService implements SMSService, DisposableBean {
+
+    private static final Log LOG = LogFactory.getLog(AsyncSMSService.class);
+    private static final long TRIAL_POLL_MILLIS = 50L;
+
+    private final SMSServiceImpl delegate;
+    private final ThreadPoolExecutor executor;
+    private final CircuitBreaker circuitBreaker;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long trialWaitMillis;
+
+    private final Counter queued;
+    private final Counter rejected;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter failedCircuitOpen;
+    private final Counter retries;
+    private final Timer latency;
+
+    public AsyncSMSService(SMSServiceImpl delegate, int threads, int queueCapacity, int maxAttempts,
+                           long retryBackoffMillis, long trialWaitMillis, CircuitBreaker circuitBreaker,
+                           MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.trialWaitMillis = trialWaitMillis;
+        this.circuitBreaker = circuitBreaker;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sms-dispatcher-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.queued = messages(meterRegistry, "queued");
+        this.rejected = messages(meterRegistry, "rejected");
+        this.sent = messages(meterRegistry, "sent");
+        this.failed = messages(meterRegistry, "failed");
+        this.failedCircuitOpen = messages(meterRegistry, "circuit_open");
+        this.retries = Counter.builder("myconext.sms.retries")
+                .description("Retried attempts to send an SMS")
+                .register(meterRegistry);
+        this.latency = Timer.builder("myconext.sms.latency")
+                .description("Duration from queueing an SMS until it is accepted by the gateway")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("myconext.sms.queue", executor, e -> e.getQueue().size())
+                .description("SMS messages waiting in the queue")
+                .register(meterRegistry);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("myconext.sms.circuit.breaker", circuitBreaker, breaker -> breaker.getState().equals(state) ? 1 : 0)
+                    .description("1 for the current state of the circuit breaker of the SMS gateway")
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+    }
+
+    private static Counter messages(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("myconext.sms.messages")
+                .description("SMS messages by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /*
+     * Returns the formatted message as soon as it is queued for dispatch
+     */
+    @Override
+    public String send(String mobile, String code, Locale locale) {
+        if (circuitBreaker.getState().equals(CircuitBreaker.State.OPEN)) {
+            rejected.increment();
+            throw new ServiceUnavailableException("SMS gateway is not available");
+        }
+        long queuedAt = System.currentTimeMillis();
+        Span parent = Tracing.current();
+        try {
+            executor.execute(() -> {
+                try (Span span = Tracing.continueTrace(parent, "sms dispatch")) {
+                    dispatch(mobile, code, locale, queuedAt);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOG.warn(String.format("SMS queue is full, rejecting message. Queue size: %s", executor.getQueue().size()));
+            throw new TooManyRequestsException();
+        }
+        queued.increment();
+        return delegate.formatMessage(code, locale);
+    }
+
+    private void dispatch(String mobile, String code, Locale locale, long queuedAt) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (!allowRequest()) {
+                failedCircuitOpen.increment();
+                LOG.error(String.format("Not sending SMS in attempt %s as the circuit breaker for the SMS gateway is %s",
+                        attempt, circuitBreaker.getState()));
+                return;
+            }
+            try {
+                delegate.send(mobile, code, locale);
+                circuitBreaker.recordSuccess();
+                sent.increment();
+                latency.record(System.currentTimeMillis() - queuedAt, TimeUnit.MILLISECONDS);
+                return;
+            } catch (HttpClientErrorException e) {
+                //The gateway is up, but refuses the message, retrying will not help
+                circuitBreaker.recordSuccess();
+                failed.increment();
+                LOG.error(String.format("SMS gateway refused message with status %s", e.getStatusCode()));
+                return;
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure();
+                if (attempt == maxAttempts) {
+                    failed.increment();
+                    LOG.error(String.format("Failed to send SMS after %s attempts", attempt), e);
+                    return;
+                }
+                retries.increment();
+                LOG.warn(String.format("Failed to send SMS in attempt %s, retrying: %s", attempt, e.getMessage()));
+                try {
+                    Thread.sleep(retryBackoffMillis * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    failed.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     * When the circuit is half open and another message is the trial, waits for the outcome of the trial: a success
+     * closes the circuit and a failure opens it again
+     */
+    private boolean allowRequest() {
+        long deadline = System.currentTimeMillis() + trialWaitMillis;
+        while (!circuitBreaker.allowRequest()) {
+            if (!circuitBreaker.getState().equals(CircuitBreaker.State.HALF_OPEN) || System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(TRIAL_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,67 @@
+package myconext.sms;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Opens after a number of consecutive failures and fails fast until the open period has passed. Then a single trial
+ * call is allowed (half-open) which either closes the circuit again or re-opens it for another period.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final long NOT_OPENED = -1L;
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInProgress = new AtomicBoolean();
+    private volatile long openedAt = NOT_OPENED;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, Clock.systemUTC());
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    public boolean allowRequest() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                return trialInProgress.compareAndSet(false, true);
+            default:
+                return false;
+        }
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+        openedAt = NOT_OPENED;
+        trialInProgress.set(false);
+    }
+
+    public void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold || openedAt != NOT_OPENED) {
+            openedAt = clock.millis();
+            trialInProgress.set(false);
+        }
+    }
+
+    public State getState() {
+        long opened = openedAt;
+        if (opened == NOT_OPENED) {
+            return State.CLOSED;
+        }
+        return clock.millis() - opened < openMillis ? State.OPEN : State.HALF_OPEN;
+    }
+}
@@ -1,18 +1,36 @@
 package myconext.sms;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import myconext.http.HttpClientFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class SMSConfiguration {
 
     @Bean
-    public SMSService smsService(Environment environment, @Value("${sms.url}") String url, @Value("${sms.bearer}") String bearer) throws IOException {
-        return environment.getActiveProfiles().length == 0 ? new SMSServiceImpl(url, bearer) : new SMSServiceMock(environment);
+    public AsyncSMSService smsService(Environment environment,
+                                      HttpClientFactory httpClientFactory,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${sms.url}") String url,
+                                      @Value("${sms.bearer}") String bearer,
+                                      @Value("${sms.dispatcher-threads}") int dispatcherThreads,
+                                      @Value("${sms.queue-capacity}") int queueCapacity,
+                                      @Value("${sms.max-attempts}") int maxAttempts,
+                                      @Value("${sms.retry-backoff-millis}") long retryBackoffMillis,
+                                      @Value("${sms.circuit-breaker.failure-threshold}") int failureThreshold,
+                                      @Value("${sms.circuit-breaker.open-seconds}") long openSeconds,
+                                      @Value("${sms.circuit-breaker.trial-wait-millis}") long trialWaitMillis) throws IOException {
+        SMSServiceImpl smsService = environment.getActiveProfiles().length == 0 ?
+                new SMSServiceImpl(url, bearer, httpClientFactory.restTemplate("sms")) : new SMSServiceMock(environment);
+        return new AsyncSMSService(smsService, dispatcherThreads, queueCapacity, maxAttempts, retryBackoffMillis, trialWaitMillis,
+                new CircuitBreaker(failureThreshold, TimeUnit.SECONDS.toMillis(openSeconds)),
+                meterRegistry);
     }
 
 }
@@ -18,12 +18,13 @@ public class SMSServiceImpl implements SMSService {
     private final String url;
     private final String templateNl;
     private final String templateEn;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private final MultiValueMap<String, String> headers = new HttpHeaders();
 
     @SneakyThrows
-    public SMSServiceImpl(String url, String bearer){
+    public SMSServiceImpl(String url, String bearer, RestTemplate restTemplate) {
         this.url = url;
+        this.restTemplate = restTemplate;
         this.templateNl = IOUtil.toString(new ClassPathResource("sms/template_nl.txt").getInputStream());
         this.templateEn = IOUtil.toString(new ClassPathResource("sms/template_en.txt").getInputStream());
         headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
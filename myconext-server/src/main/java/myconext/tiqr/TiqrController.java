@@ -1,6 +1,7 @@
 package myconext.tiqr;
 
 import com.google.zxing.WriterException;
+import myconext.crypto.TokenGenerator;
 import myconext.exceptions.ExpiredAuthenticationException;
 import myconext.exceptions.ForbiddenException;
 import myconext.exceptions.UserNotFoundException;
@@ -20,6 +21,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.yaml.snakeyaml.Yaml;
 import tiqr.org.DefaultTiqrService;
 import tiqr.org.TiqrException;
@@ -37,6 +39,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static myconext.crypto.HashGenerator.hash;
 import static myconext.log.MDCContext.logWithContext;
@@ -61,6 +64,7 @@ public class TiqrController {
     private final String magicLinkUrl;
     private final RegistrationRepository registrationRepository;
     private final RateLimitEnforcer rateLimitEnforcer;
+    private final TiqrStatusWatcher tiqrStatusWatcher;
 
     @Autowired
     public TiqrController(@Value("${tiqr_configuration}") Resource resource,
@@ -71,6 +75,7 @@ public class TiqrController {
                           UserRepository userRepository,
                           ServiceProviderResolver serviceProviderResolver,
                           SMSService smsService,
+                          TiqrStatusWatcher tiqrStatusWatcher,
                           Environment environment,
                           @Value("${email.magic-link-url}") String magicLinkUrl) throws IOException {
         this.tiqrConfiguration = new Yaml().loadAs(resource.getInputStream(), TiqrConfiguration.class);
@@ -86,7 +91,7 @@ public class TiqrController {
                 String.format("%s/tiqr/enrollment", baseUrl));
         if (environment.getActiveProfiles().length > 0) {
             //Prevent FirebaseApp name tiqr already exists!
-            tiqrConfiguration.getGcm().setAppName(UUID.randomUUID().toString());
+            tiqrConfiguration.getGcm().setAppName(TokenGenerator.uuid());
         }
         this.tiqrService = new DefaultTiqrService(enrollmentRepository,
                 registrationRepository,
@@ -100,6 +105,7 @@ public class TiqrController {
         this.userRepository = userRepository;
         this.serviceProviderResolver = serviceProviderResolver;
         this.smsService = smsService;
+        this.tiqrStatusWatcher = tiqrStatusWatcher;
         this.magicLinkUrl = magicLinkUrl;
         this.rateLimitEnforcer = new RateLimitEnforcer(userRepository, tiqrConfiguration);
     }
@@ -121,7 +127,7 @@ public class TiqrController {
     @GetMapping("/sp/finish-enrollment")
     public ResponseEntity<Map<String, Object>> finishEnrollment(org.springframework.security.core.Authentication authentication) {
         User user = userFromAuthentication(authentication);
-        String enrollmentVerificationKey = UUID.randomUUID().toString();
+        String enrollmentVerificationKey = TokenGenerator.uuid();
         user.setEnrollmentVerificationKey(enrollmentVerificationKey);
         userRepository.save(user);
         return ResponseEntity.ok(Map.of("enrollmentVerificationKey", enrollmentVerificationKey));
@@ -164,6 +170,8 @@ public class TiqrController {
 
         LOG.info(String.format("Returning metaData for %s", metaData.getIdentity().getDisplayName()));
 
+        tiqrStatusWatcher.signal(enrollmentKey);
+
         return ResponseEntity.ok(metaData);
     }
 
@@ -177,6 +185,23 @@ public class TiqrController {
         return ResponseEntity.ok(enrollment.getStatus());
     }
 
+    /*
+     * Long-poll variant of /poll-enrollment which only returns when the status differs from the status the client
+     * already has or the long-poll timeout expires
+     */
+    @GetMapping("/long-poll-enrollment")
+    public DeferredResult<ResponseEntity<EnrollmentStatus>> longPollEnrollmentStatus(@RequestParam("enrollmentKey") String enrollmentKey,
+                                                                                    @RequestParam(value = "status", required = false) EnrollmentStatus knownStatus) throws Exception {
+        Enrollment enrollment = tiqrService.enrollmentStatus(enrollmentKey);
+        //The timeout returns the last evaluated status, which is the known status unless the client omitted it
+        AtomicReference<EnrollmentStatus> lastStatus = new AtomicReference<>(enrollment.getStatus());
+        return tiqrStatusWatcher.await(() -> {
+            EnrollmentStatus status = tiqrService.enrollmentStatus(enrollmentKey).getStatus();
+            lastStatus.set(status);
+            return status.equals(knownStatus) ? Optional.empty() : Optional.of(ResponseEntity.ok(status));
+        }, () -> ResponseEntity.ok(lastStatus.get()), enrollmentKey, enrollment.getUserID());
+    }
+
     @GetMapping("/sp/generate-backup-code")
     public ResponseEntity<Map<String, String>> generateBackupCodeForSp(org.springframework.security.core.Authentication authentication) throws TiqrException {
         User user = userFromAuthentication(authentication);
@@ -396,6 +421,35 @@ public class TiqrController {
         return doPollAuthentication(sessionKey, Optional.of(authenticationRequestId));
     }
 
+    @GetMapping("/sp/long-poll-authentication")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> spLongPollAuthenticationStatus(org.springframework.security.core.Authentication authentication,
+                                                                                               @RequestParam(SESSION_KEY) String sessionKey,
+                                                                                               @RequestParam(value = "status", required = false) String knownStatus) throws Exception {
+        // Strictly speaking not necessary
+        userFromAuthentication(authentication);
+        return doLongPollAuthentication(sessionKey, Optional.empty(), knownStatus);
+    }
+
+    @GetMapping("/long-poll-authentication")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> longPollAuthenticationStatus(@RequestParam(SESSION_KEY) String sessionKey,
+                                                                                             @RequestParam("id") String authenticationRequestId,
+                                                                                             @RequestParam(value = "status", required = false) String knownStatus) throws Exception {
+        return doLongPollAuthentication(sessionKey, Optional.of(authenticationRequestId), knownStatus);
+    }
+
+    private DeferredResult<ResponseEntity<Map<String, Object>>> doLongPollAuthentication(String sessionKey,
+                                                                                         Optional<String> authenticationRequestIdOptional,
+                                                                                         String knownStatus) throws Exception {
+        //The timeout returns the last evaluated status, which is the known status unless the client omitted it
+        AtomicReference<String> lastStatus = new AtomicReference<>(knownStatus);
+        return tiqrStatusWatcher.await(() -> {
+            //Only compute the full response - which might update the SAML authentication request - once the status changed
+            String status = tiqrService.authenticationStatus(sessionKey).getStatus().name();
+            lastStatus.set(status);
+            return status.equals(knownStatus) ? Optional.empty() : Optional.of(doPollAuthentication(sessionKey, authenticationRequestIdOptional));
+        }, () -> ResponseEntity.ok(Collections.singletonMap("status", lastStatus.get())), sessionKey);
+    }
+
     private ResponseEntity<Map<String, Object>> doPollAuthentication(String sessionKey, Optional<String> authenticationRequestIdOptional) throws TiqrException {
         Authentication authentication = tiqrService.authenticationStatus(sessionKey);
         AuthenticationStatus status = authentication.getStatus();
@@ -459,6 +513,7 @@ public class TiqrController {
         String response = requestBody.get("response");
         //fingers crossed, in case of mismatch an exception is thrown
         tiqrService.postAuthentication(new AuthenticationData(sessionKey, response));
+        tiqrStatusWatcher.signal(sessionKey);
         return ResponseEntity.ok(Map.of("status", "ok"));
     }
 
@@ -472,6 +527,7 @@ public class TiqrController {
         try {
             Registration savedRegistration = tiqrService.enrollData(registration);
             LOG.debug("Successful enrollment for user " + savedRegistration.getUserId());
+            tiqrStatusWatcher.signal(savedRegistration.getUserId());
             return ResponseEntity.ok("OK");
         } catch (TiqrException | RuntimeException e) {
             LOG.error("Exception during enrollment for user: " + registration.getUserId(), e);
@@ -495,6 +551,7 @@ public class TiqrController {
             LOG.debug("Successful authentication for user " + userId);
 
             rateLimitEnforcer.unsuspendUserAfterTiqrSuccess(user);
+            tiqrStatusWatcher.signal(authenticationData.getSessionKey());
             return ResponseEntity.ok("OK");
         } catch (TiqrException | RuntimeException e) {
             //Do not show stacktrace
@@ -507,6 +564,7 @@ public class TiqrController {
             } catch (TiqrException ex) {
                 //Normally bad practice, but nothing can be done about it
             }
+            tiqrStatusWatcher.signal(authenticationData.getSessionKey());
             return ResponseEntity.ok("ERROR");
         }
     }
@@ -516,7 +574,7 @@ public class TiqrController {
         String hash = body.get("hash");
         SamlAuthenticationRequest samlAuthenticationRequest = authenticationRequestRepository.findByHash(hash).orElseThrow(ExpiredAuthenticationException::new);
         samlAuthenticationRequest.setRememberMe(true);
-        samlAuthenticationRequest.setRememberMeValue(UUID.randomUUID().toString());
+        samlAuthenticationRequest.setRememberMeValue(TokenGenerator.uuid());
         authenticationRequestRepository.save(samlAuthenticationRequest);
         return ResponseEntity.ok(Collections.singletonMap("status", "ok"));
     }
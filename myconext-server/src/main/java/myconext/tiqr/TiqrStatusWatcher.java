@@ -0,0 +1,205 @@
+package myconext.tiqr;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import tiqr.org.model.Authentication;
+import tiqr.org.model.Enrollment;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static com.mongodb.client.model.changestream.FullDocument.UPDATE_LOOKUP;
+
+/*
+ * Holds long-poll requests for Tiqr enrollment and authentication status changes without occupying a servlet thread.
+ * Waiters are woken up by in-process signals from the TiqrController and - when enabled - by a Mongo change stream
+ * on the Tiqr collections, which requires a replica set but also propagates status changes made on other nodes.
+ *
+ * Without the change stream - or when MongoDB does not run as a replica set - a status change made on another node,
+ * e.g. the Tiqr callback of the app landing on a different node, is not signalled, so all parked waiters are
+ * periodically re-evaluated.
+ *
+ * A waiter is evaluated by at most one thread at a time. A signal arriving during an evaluation is not lost, but
+ * makes the evaluating thread evaluate once more. This prevents concurrent evaluations from both computing - and
+ * saving - the changed result.
+ */
+@Component
+public class TiqrStatusWatcher implements DisposableBean {
+
+    private static final Log LOG = LogFactory.getLog(TiqrStatusWatcher.class);
+
+    private final Map<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final MongoTemplate mongoTemplate;
+    private final long longPollTimeoutMillis;
+    private volatile boolean changeStreamEnabled;
+    private MessageListenerContainer messageListenerContainer;
+
+    @Autowired
+    public TiqrStatusWatcher(MongoTemplate mongoTemplate,
+                             @Value("${tiqr_status.long-poll-timeout-seconds}") long longPollTimeoutSeconds,
+                             @Value("${tiqr_status.change-stream-enabled}") boolean changeStreamEnabled,
+                             @Value("${tiqr_status.threads}") int threads,
+                             @Value("${tiqr_status.queue-capacity}") int queueCapacity) {
+        this.mongoTemplate = mongoTemplate;
+        this.longPollTimeoutMillis = TimeUnit.SECONDS.toMillis(longPollTimeoutSeconds);
+        this.changeStreamEnabled = changeStreamEnabled;
+        AtomicInteger threadNumber = new AtomicInteger();
+        //A rejected evaluation is picked up by the next signal, re-evaluation or the long-poll timeout
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "tiqr-status-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, threadPoolExecutor) -> LOG.warn("Tiqr status evaluation rejected, the queue is full"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startChangeStream() {
+        if (!changeStreamEnabled) {
+            return;
+        }
+        Document isMaster = mongoTemplate.getDb().runCommand(new Document("isMaster", 1));
+        if (!StringUtils.hasText(isMaster.getString("setName"))) {
+            LOG.warn("MongoDB does not run as a replica set, falling back to re-evaluating the parked Tiqr status requests");
+            changeStreamEnabled = false;
+            return;
+        }
+        messageListenerContainer = new DefaultMessageListenerContainer(mongoTemplate);
+        Stream.of(Enrollment.class, Authentication.class)
+                .map(mongoTemplate::getCollectionName)
+                .forEach(collectionName -> messageListenerContainer.register(ChangeStreamRequest.builder()
+                        .collection(collectionName)
+                        .fullDocumentLookup(UPDATE_LOOKUP)
+                        .publishTo(message -> {
+                            Document document = (Document) message.getBody();
+                            if (document != null) {
+                                Stream.of("key", "userID", "sessionKey")
+                                        .map(document::getString)
+                                        .filter(StringUtils::hasText)
+                                        .forEach(this::signal);
+                            }
+                        })
+                        .build(), Document.class, throwable -> LOG.warn("Error in Tiqr change stream", throwable)));
+        messageListenerContainer.start();
+        LOG.info("Started change stream for Tiqr status updates");
+    }
+
+    /*
+     * Parks the request until a signal for one of the keys re-evaluates to a changed status or the timeout returns the
+     * unchanged result. The waiter is registered before the first evaluation to prevent missing a signal in between.
+     */
+    public <T> DeferredResult<T> await(Callable<Optional<T>> changedResult, Supplier<T> unchangedResult, String... keys) throws Exception {
+        DeferredResult<T> deferredResult = new DeferredResult<>(longPollTimeoutMillis, unchangedResult);
+        Waiter<T> waiter = new Waiter<>(deferredResult, changedResult);
+        Runnable unregister = () -> Stream.of(keys).forEach(key -> waiters.computeIfPresent(key, (k, set) -> {
+            set.remove(waiter);
+            return set.isEmpty() ? null : set;
+        }));
+        Stream.of(keys).forEach(key -> waiters.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(waiter));
+        deferredResult.onCompletion(unregister);
+        try {
+            waiter.evaluate();
+        } catch (Exception e) {
+            unregister.run();
+            throw e;
+        }
+        return deferredResult;
+    }
+
+    public void signal(String key) {
+        Set<Runnable> keyWaiters = waiters.get(key);
+        if (keyWaiters != null) {
+            keyWaiters.forEach(executor::execute);
+        }
+    }
+
+    /*
+     * Re-evaluates every parked waiter once - a waiter can be registered for more than one key - to pick up the status
+     * changes made on other nodes. Not needed when the change stream signals these changes.
+     */
+    @Scheduled(initialDelayString = "${tiqr_status.re-evaluate-fixed-delay-milliseconds}",
+            fixedDelayString = "${tiqr_status.re-evaluate-fixed-delay-milliseconds}")
+    public void reEvaluate() {
+        if (changeStreamEnabled || waiters.isEmpty() || executor.isShutdown()) {
+            return;
+        }
+        Set<Runnable> parked = Collections.newSetFromMap(new IdentityHashMap<>());
+        waiters.values().forEach(parked::addAll);
+        parked.forEach(executor::execute);
+    }
+
+    @Override
+    public void destroy() {
+        if (messageListenerContainer != null) {
+            messageListenerContainer.stop();
+        }
+        executor.shutdownNow();
+    }
+
+    private static class Waiter<T> implements Runnable {
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final DeferredResult<T> deferredResult;
+        private final Callable<Optional<T>> changedResult;
+
+        private Waiter(DeferredResult<T> deferredResult, Callable<Optional<T>> changedResult) {
+            this.deferredResult = deferredResult;
+            this.changedResult = changedResult;
+        }
+
+        @Override
+        public void run() {
+            try {
+                evaluate();
+            } catch (Exception e) {
+                deferredResult.setErrorResult(e);
+            }
+        }
+
+        /*
+         * The thread that increments pending from zero claims the waiter and evaluates until no signal arrived during
+         * the last evaluation. Once a result is set pending is never released, so later signals are no-ops.
+         */
+        private void evaluate() throws Exception {
+            if (pending.getAndIncrement() > 0) {
+                return;
+            }
+            int claimed = 1;
+            do {
+                if (deferredResult.isSetOrExpired()) {
+                    return;
+                }
+                Optional<T> result = changedResult.call();
+                if (result.isPresent()) {
+                    deferredResult.setResult(result.get());
+                    return;
+                }
+                claimed = pending.addAndGet(-claimed);
+            } while (claimed > 0);
+        }
+    }
+}
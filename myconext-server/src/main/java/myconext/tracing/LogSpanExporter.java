@@ -0,0 +1,49 @@
+package myconext.tracing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Logs every trace which takes at least the threshold as a single line with the tree of its spans, e.g.
+ * trace 4bf9...: GET /saml/guest-idp/SSO 2013 ms {status=302} [idp sso 2010 ms [http POST manage.surfconext.nl/... 1802 ms]]
+ */
+public class LogSpanExporter implements SpanExporter {
+
+    private static final Log LOG = LogFactory.getLog(LogSpanExporter.class);
+
+    private final long thresholdNanos;
+
+    public LogSpanExporter(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    @Override
+    public void export(Span root) {
+        if (root.getDurationNanos() < thresholdNanos || !LOG.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("trace ").append(root.getTraceId()).append(": ");
+        append(line, root);
+        LOG.info(line);
+    }
+
+    private void append(StringBuilder line, Span span) {
+        line.append(span.getName())
+                .append(" ")
+                .append(TimeUnit.NANOSECONDS.toMillis(span.getDurationNanos()))
+                .append(" ms");
+        if (!span.getTags().isEmpty()) {
+            line.append(" ").append(span.getTags());
+        }
+        if (span.getError() != null) {
+            line.append(" error=").append(span.getError());
+        }
+        for (Span child : span.getChildren()) {
+            line.append(" [");
+            append(line, child);
+            line.append("]");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package myconext.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+/*
+ * Adds a span for every call of a Spring Data repository method, e.g. 'mongo UserRepository.findUserByEmail'
+ */
+public class RepositoryTracingPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        //The customizer must be added before the repository is created in afterPropertiesSet
+        if (bean instanceof RepositoryFactoryBeanSupport) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                            proxyFactory.addAdvice(interceptor(repositoryInformation.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    private static MethodInterceptor interceptor(String repositoryName) {
+        return invocation -> {
+            if (!Tracing.current().isRecording()) {
+                return invocation.proceed();
+            }
+            try (Span span = Tracing.start(String.format("mongo %s.%s", repositoryName, invocation.getMethod().getName()))) {
+                try {
+                    return invocation.proceed();
+                } catch (Throwable t) {
+                    span.error(t);
+                    throw t;
+                }
+            }
+        };
+    }
+}
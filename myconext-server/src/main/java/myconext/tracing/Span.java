@@ -0,0 +1,108 @@
+package myconext.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A timed operation in a trace. Spans are started and ended with Tracing, preferably in a try-with-resources block.
+ * The spans started outside a trace are not recording, ending them is a no-op.
+ */
+public class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span(null, null, null, null, null, null);
+
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final Span parent;
+    private final SpanExporter exporter;
+    private final long startNanos = System.nanoTime();
+    private final List<Span> children = new ArrayList<>();
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private long durationNanos = -1;
+    private String error;
+
+    Span(String traceId, String spanId, String parentSpanId, String name, Span parent, SpanExporter exporter) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.parent = parent;
+        this.exporter = exporter;
+    }
+
+    public boolean isRecording() {
+        return this != NOOP;
+    }
+
+    public Span tag(String key, String value) {
+        if (isRecording()) {
+            tags.put(key, value);
+        }
+        return this;
+    }
+
+    public Span error(Throwable throwable) {
+        if (isRecording()) {
+            this.error = throwable.getClass().getSimpleName();
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        Tracing.end(this);
+    }
+
+    void end() {
+        this.durationNanos = System.nanoTime() - startNanos;
+    }
+
+    void addChild(Span child) {
+        children.add(child);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    Span getParent() {
+        return parent;
+    }
+
+    SpanExporter getExporter() {
+        return exporter;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public List<Span> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public Map<String, String> getTags() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,10 @@
+package myconext.tracing;
+
+@FunctionalInterface
+public interface SpanExporter {
+
+    /*
+     * Called with the local root span - and therefore all of its children - when the root span ends
+     */
+    void export(Span root);
+}
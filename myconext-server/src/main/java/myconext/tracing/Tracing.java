@@ -0,0 +1,97 @@
+package myconext.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Lightweight tracing bound to the current thread, like the MDC. A trace is started by the TracingFilter for every
+ * request and the filter phases, repository calls, outbound HTTP calls and mail sends add their spans to it. The
+ * trace id is taken from - and propagated with - the W3C traceparent header.
+ */
+public final class Tracing {
+
+    public static final String TRACEPARENT = "traceparent";
+
+    private static final Pattern TRACEPARENT_PATTERN = Pattern.compile("^00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$");
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private Tracing() {
+    }
+
+    /*
+     * Starts a new trace, or continues the remote trace of the traceparent header
+     */
+    public static Span startTrace(String name, String traceparent, SpanExporter exporter) {
+        String traceId = null;
+        String parentSpanId = null;
+        if (traceparent != null) {
+            Matcher matcher = TRACEPARENT_PATTERN.matcher(traceparent);
+            if (matcher.matches()) {
+                traceId = matcher.group(1);
+                parentSpanId = matcher.group(2);
+            }
+        }
+        return begin(new Span(traceId != null ? traceId : newId(2), newId(1), parentSpanId, name, null, exporter));
+    }
+
+    /*
+     * Continues the trace of a span of another thread, the spans of this thread are exported separately
+     */
+    public static Span continueTrace(Span parent, String name) {
+        if (parent == null || !parent.isRecording()) {
+            return Span.NOOP;
+        }
+        return begin(new Span(parent.getTraceId(), newId(1), parent.getSpanId(), name, null, parent.getExporter()));
+    }
+
+    /*
+     * Starts a child span of the current span, or returns a span which is not recording if there is no current trace
+     */
+    public static Span start(String name) {
+        Span current = CURRENT.get();
+        if (current == null) {
+            return Span.NOOP;
+        }
+        Span span = new Span(current.getTraceId(), newId(1), current.getSpanId(), name, current, current.getExporter());
+        current.addChild(span);
+        return begin(span);
+    }
+
+    public static Span current() {
+        Span current = CURRENT.get();
+        return current != null ? current : Span.NOOP;
+    }
+
+    public static String traceparent(Span span) {
+        return String.format("00-%s-%s-01", span.getTraceId(), span.getSpanId());
+    }
+
+    static void end(Span span) {
+        if (!span.isRecording()) {
+            return;
+        }
+        span.end();
+        Span parent = span.getParent();
+        if (parent == null) {
+            CURRENT.remove();
+            span.getExporter().export(span);
+        } else {
+            CURRENT.set(parent);
+        }
+    }
+
+    private static Span begin(Span span) {
+        CURRENT.set(span);
+        return span;
+    }
+
+    private static String newId(int longs) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder id = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++) {
+            id.append(String.format("%016x", random.nextLong()));
+        }
+        return id.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package myconext.tracing;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+
+/*
+ * Adds a span for every RestTemplate exchange and propagates the trace with the traceparent header
+ */
+public class TracingClientHttpRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        URI uri = request.getURI();
+        try (Span span = Tracing.start(String.format("http %s %s%s", request.getMethodValue(), uri.getHost(), uri.getPath()))) {
+            if (span.isRecording()) {
+                request.getHeaders().set(Tracing.TRACEPARENT, Tracing.traceparent(span));
+            }
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                span.tag("status", String.valueOf(response.getRawStatusCode()));
+                return response;
+            } catch (IOException | RuntimeException e) {
+                span.error(e);
+                throw e;
+            }
+        }
+    }
+}
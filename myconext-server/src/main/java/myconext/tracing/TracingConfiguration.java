@@ -0,0 +1,27 @@
+package myconext.tracing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class TracingConfiguration {
+
+    @Bean
+    public static RepositoryTracingPostProcessor repositoryTracingPostProcessor() {
+        return new RepositoryTracingPostProcessor();
+    }
+
+    @Bean
+    public FilterRegistrationBean<TracingFilter> tracingFilter(@Value("${tracing.enabled}") boolean enabled,
+                                                               @Value("${tracing.log-threshold-millis}") long logThresholdMillis) {
+        FilterRegistrationBean<TracingFilter> registration =
+                new FilterRegistrationBean<>(new TracingFilter(new LogSpanExporter(logThresholdMillis)));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+
+}
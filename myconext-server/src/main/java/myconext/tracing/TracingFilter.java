@@ -0,0 +1,46 @@
+package myconext.tracing;
+
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static myconext.log.MDCContext.TRACE_ID;
+
+/*
+ * Starts a trace for every request - before Spring Session and Spring Security - and puts the trace id in the MDC
+ */
+public class TracingFilter extends OncePerRequestFilter {
+
+    private final SpanExporter exporter;
+
+    public TracingFilter(SpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/internal/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        Span span = Tracing.startTrace(request.getMethod() + " " + request.getRequestURI(),
+                request.getHeader(Tracing.TRACEPARENT), exporter);
+        MDC.put(TRACE_ID, span.getTraceId());
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.tag("status", String.valueOf(response.getStatus()));
+            span.close();
+            MDC.remove(TRACE_ID);
+        }
+    }
+}
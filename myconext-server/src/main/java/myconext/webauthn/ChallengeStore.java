@@ -0,0 +1,21 @@
+package myconext.webauthn;
+
+import myconext.model.Challenge;
+
+import java.util.Optional;
+
+/*
+ * Stores the WebAuthn challenges between the start and the finish of a registration or authentication
+ */
+public interface ChallengeStore {
+
+    /*
+     * Replaces any existing challenge for the same token
+     */
+    void save(Challenge challenge);
+
+    /*
+     * Atomically returns and removes the challenge, a challenge can only be used once
+     */
+    Optional<Challenge> remove(String token);
+}
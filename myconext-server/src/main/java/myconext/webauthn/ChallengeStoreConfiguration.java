@@ -0,0 +1,18 @@
+package myconext.webauthn;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+@Configuration
+public class ChallengeStoreConfiguration {
+
+    @Bean
+    public ChallengeStore challengeStore(MongoTemplate mongoTemplate,
+                                         @Value("${webauthn_challenge_store}") String challengeStore,
+                                         @Value("${webauthn_challenge_ttl_seconds}") long ttlSeconds) {
+        return "memory".equalsIgnoreCase(challengeStore) ?
+                new InMemoryChallengeStore(ttlSeconds) : new MongoChallengeStore(mongoTemplate, ttlSeconds);
+    }
+}
@@ -0,0 +1,33 @@
+package myconext.webauthn;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import myconext.model.Challenge;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Only suitable for a single node or for sticky sessions, as the start and finish of a ceremony must hit the same node
+ */
+public class InMemoryChallengeStore implements ChallengeStore {
+
+    private final Cache<String, Challenge> challenges;
+
+    public InMemoryChallengeStore(long ttlSeconds) {
+        this.challenges = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    @Override
+    public void save(Challenge challenge) {
+        challenges.put(challenge.getToken(), challenge);
+    }
+
+    @Override
+    public Optional<Challenge> remove(String token) {
+        return Optional.ofNullable(challenges.asMap().remove(token));
+    }
+}
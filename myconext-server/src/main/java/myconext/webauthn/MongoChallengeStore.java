@@ -0,0 +1,47 @@
+package myconext.webauthn;
+
+import myconext.model.Challenge;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Works across nodes. Saving is one upsert on the unique token and removing one findAndRemove, expired challenges are
+ * removed by a TTL index. Both indexes are created in MongoMapping.
+ * The TTL monitor of Mongo only runs every minute, so removing also checks the expiry.
+ */
+public class MongoChallengeStore implements ChallengeStore {
+
+    private final MongoTemplate mongoTemplate;
+    private final long ttlSeconds;
+
+    public MongoChallengeStore(MongoTemplate mongoTemplate, long ttlSeconds) {
+        this.mongoTemplate = mongoTemplate;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @Override
+    public void save(Challenge challenge) {
+        Update update = new Update()
+                .set("challenge", challenge.getChallenge())
+                .set("email", challenge.getEmail())
+                .set("created", challenge.getCreated());
+        mongoTemplate.upsert(byToken(challenge.getToken()), update, Challenge.class);
+    }
+
+    @Override
+    public Optional<Challenge> remove(String token) {
+        Date expired = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ttlSeconds));
+        Query query = byToken(token).addCriteria(Criteria.where("created").gt(expired));
+        return Optional.ofNullable(mongoTemplate.findAndRemove(query, Challenge.class));
+    }
+
+    private Query byToken(String token) {
+        return new Query(Criteria.where("token").is(token));
+    }
+}
@@ -1,5 +1,7 @@
 package myconext.webauthn;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.yubico.webauthn.CredentialRepository;
 import com.yubico.webauthn.RegisteredCredential;
 import com.yubico.webauthn.data.ByteArray;
@@ -8,72 +10,141 @@ import com.yubico.webauthn.data.PublicKeyCredentialType;
 import com.yubico.webauthn.data.exception.Base64UrlException;
 import myconext.model.PublicKeyCredentials;
 import myconext.model.User;
+import myconext.model.WebAuthnCredential;
 import myconext.repository.UserRepository;
+import myconext.repository.WebAuthnCredentialRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.util.Collections;
-import java.util.Optional;
-import java.util.Set;
-import java.util.function.Function;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/*
+ * During one WebAuthn ceremony the RelyingParty calls the methods of this repository several times. To prevent a
+ * Mongo read - and the decoding of all credentials - for every call, the credential descriptors of a user are cached
+ * for a few seconds by email and by userHandle. UserController invalidates the cache when credentials change.
+ *
+ * The credentials are also copied to the webauthn_credentials collection, indexed by credentialId and userHandle, to
+ * look up credentials without loading the user. This enables usernameless login with discoverable credentials. The
+ * public key of a credential is always read from this collection and never from the cache, so a removed credential -
+ * or the credential of a deleted user - is rejected immediately on every node.
+ */
 @Component
 public class UserCredentialRepository implements CredentialRepository {
 
     private final UserRepository userRepository;
+    private final WebAuthnCredentialRepository webAuthnCredentialRepository;
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, CachedCredentials> credentialsByEmail;
+    private final Cache<String, CachedCredentials> credentialsByUserHandle;
 
     @Autowired
-    public UserCredentialRepository(UserRepository userRepository) {
+    public UserCredentialRepository(UserRepository userRepository,
+                                    WebAuthnCredentialRepository webAuthnCredentialRepository,
+                                    MongoTemplate mongoTemplate,
+                                    @Value("${webauthn_credential_cache_ttl_seconds}") long cacheTtlSeconds) {
         this.userRepository = userRepository;
+        this.webAuthnCredentialRepository = webAuthnCredentialRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.credentialsByEmail = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10_000)
+                .build();
+        this.credentialsByUserHandle = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10_000)
+                .build();
     }
 
     @Override
     public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String email) {
-        Optional<User> userOptional = userRepository.findUserByEmail(email.trim());
-        return userOptional.map(user -> user.getPublicKeyCredentials().stream()
-                .map(publicKeyCredentials ->
-                        PublicKeyCredentialDescriptor.builder()
-                                .id(byteArrayFromBase64Url(publicKeyCredentials.getIdentifier()))
-                                .type(PublicKeyCredentialType.PUBLIC_KEY)
-                                .build())
-                .collect(Collectors.toSet())).orElse(Collections.emptySet());
+        return credentialsByEmail(email)
+                .map(cachedCredentials -> cachedCredentials.descriptors)
+                .orElse(Collections.emptySet());
     }
 
     @Override
     public Optional<ByteArray> getUserHandleForUsername(String email) {
-        return userRepository.findUserByEmail(email.trim())
-                .map(user -> byteArrayFromBase64Url(user.getUserHandle()));
+        return credentialsByEmail(email).map(cachedCredentials -> cachedCredentials.userHandle);
     }
 
     @Override
     public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
-        return userRepository.findUserByUserHandle(userHandle.getBase64Url()).map(User::getEmail);
+        return credentialsByUserHandle(userHandle).map(cachedCredentials -> cachedCredentials.email);
     }
 
     @Override
     public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
-        String credentialKey = credentialId.getBase64Url();
-        Optional<User> optionalUser = userRepository.findUserByUserHandle(userHandle.getBase64Url());
-        return optionalUser.map(user ->
-                        user.getPublicKeyCredentials()
-                                .stream()
-                                .filter(publicKeyCredential -> publicKeyCredential.getIdentifier().equals(credentialKey))
-                                .map(PublicKeyCredentials::getCredential)
-                                .filter(StringUtils::hasText)
-                                .findFirst())
-                .flatMap(Function.identity())
-                .map(publicKeyCose -> RegisteredCredential.builder()
-                        .credentialId(credentialId)
-                        .userHandle(userHandle)
-                        .publicKeyCose(byteArrayFromBase64Url(publicKeyCose))
-                        .build());
+        return webAuthnCredentialRepository.findByCredentialId(credentialId.getBase64Url())
+                .filter(webAuthnCredential -> userHandle.getBase64Url().equals(webAuthnCredential.getUserHandle()))
+                .map(this::registeredCredential);
     }
 
     @Override
     public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
-        return Collections.emptySet();
+        return webAuthnCredentialRepository.findByCredentialId(credentialId.getBase64Url())
+                .map(this::registeredCredential)
+                .map(Collections::singleton)
+                .orElse(Collections.emptySet());
+    }
+
+    /*
+     * Must be called after the publicKeyCredentials of the user are changed and saved. The credentials are upserted by
+     * credentialId and only the removed credentials are deleted, so there is never a moment without the credentials of
+     * the user and concurrent calls do not collide on the unique credentialId index.
+     */
+    public void synchronize(User user) {
+        List<WebAuthnCredential> webAuthnCredentials = webAuthnCredentials(user);
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, WebAuthnCredential.class);
+        webAuthnCredentials.forEach(webAuthnCredential -> bulkOperations.upsert(
+                Query.query(Criteria.where("credentialId").is(webAuthnCredential.getCredentialId())),
+                new Update()
+                        .set("userHandle", webAuthnCredential.getUserHandle())
+                        .set("userId", webAuthnCredential.getUserId())
+                        .set("publicKeyCose", webAuthnCredential.getPublicKeyCose())));
+        List<String> credentialIds = webAuthnCredentials.stream()
+                .map(WebAuthnCredential::getCredentialId)
+                .collect(Collectors.toList());
+        bulkOperations.remove(Query.query(Criteria.where("userId").is(user.getId()).and("credentialId").nin(credentialIds)));
+        bulkOperations.execute();
+        invalidate(user);
+    }
+
+    public void delete(User user) {
+        webAuthnCredentialRepository.deleteByUserId(user.getId());
+        invalidate(user);
+    }
+
+    public static List<WebAuthnCredential> webAuthnCredentials(User user) {
+        if (!StringUtils.hasText(user.getUserHandle())) {
+            return Collections.emptyList();
+        }
+        return user.getPublicKeyCredentials().stream()
+                .filter(publicKeyCredentials -> StringUtils.hasText(publicKeyCredentials.getCredential()))
+                .map(publicKeyCredentials -> new WebAuthnCredential(user, publicKeyCredentials))
+                .collect(Collectors.toList());
+    }
+
+    public void invalidate(User user) {
+        if (StringUtils.hasText(user.getEmail())) {
+            credentialsByEmail.invalidate(emailKey(user.getEmail()));
+        }
+        if (StringUtils.hasText(user.getUserHandle())) {
+            credentialsByUserHandle.invalidate(user.getUserHandle());
+        }
+    }
+
+    public void invalidateAll() {
+        credentialsByEmail.invalidateAll();
+        credentialsByUserHandle.invalidateAll();
     }
 
     protected ByteArray byteArrayFromBase64Url(String base64Url) {
@@ -83,4 +154,63 @@ public class UserCredentialRepository implements CredentialRepository {
             throw new IllegalArgumentException(e);
         }
     }
+
+    private RegisteredCredential registeredCredential(WebAuthnCredential webAuthnCredential) {
+        return RegisteredCredential.builder()
+                .credentialId(byteArrayFromBase64Url(webAuthnCredential.getCredentialId()))
+                .userHandle(byteArrayFromBase64Url(webAuthnCredential.getUserHandle()))
+                .publicKeyCose(byteArrayFromBase64Url(webAuthnCredential.getPublicKeyCose()))
+                .build();
+    }
+
+    private Optional<CachedCredentials> credentialsByEmail(String email) {
+        CachedCredentials cachedCredentials = credentialsByEmail.getIfPresent(emailKey(email));
+        if (cachedCredentials != null) {
+            return Optional.of(cachedCredentials);
+        }
+        //Unknown users are not cached, a user might register in the meantime
+        return userRepository.findUserByEmail(email.trim()).map(this::cache);
+    }
+
+    private Optional<CachedCredentials> credentialsByUserHandle(ByteArray userHandle) {
+        String base64Url = userHandle.getBase64Url();
+        CachedCredentials cachedCredentials = credentialsByUserHandle.getIfPresent(base64Url);
+        if (cachedCredentials != null) {
+            return Optional.of(cachedCredentials);
+        }
+        return userRepository.findUserByUserHandle(base64Url).map(this::cache);
+    }
+
+    private CachedCredentials cache(User user) {
+        CachedCredentials cachedCredentials = new CachedCredentials(user);
+        credentialsByEmail.put(emailKey(user.getEmail()), cachedCredentials);
+        if (cachedCredentials.userHandle != null) {
+            credentialsByUserHandle.put(user.getUserHandle(), cachedCredentials);
+        }
+        return cachedCredentials;
+    }
+
+    //The email lookup is case-insensitive, see UserRepository#findUserByEmail
+    private String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private class CachedCredentials {
+
+        private final String email;
+        private final ByteArray userHandle;
+        private final Set<PublicKeyCredentialDescriptor> descriptors;
+
+        private CachedCredentials(User user) {
+            this.email = user.getEmail();
+            this.userHandle = StringUtils.hasText(user.getUserHandle()) ? byteArrayFromBase64Url(user.getUserHandle()) : null;
+            List<PublicKeyCredentials> publicKeyCredentials = user.getPublicKeyCredentials();
+            this.descriptors = publicKeyCredentials.stream()
+                    .map(credentials -> PublicKeyCredentialDescriptor.builder()
+                            .id(byteArrayFromBase64Url(credentials.getIdentifier()))
+                            .type(PublicKeyCredentialType.PUBLIC_KEY)
+                            .build())
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+    }
 }
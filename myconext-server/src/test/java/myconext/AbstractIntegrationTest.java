@@ -13,6 +13,8 @@ import myconext.manage.MockServiceProviderResolver;
 import myconext.manage.ServiceProviderResolver;
 import myconext.model.*;
 import myconext.repository.*;
+import myconext.shibboleth.ShibbolethPrincipalCache;
+import myconext.webauthn.UserCredentialRepository;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtil;
 import org.junit.Before;
@@ -112,6 +114,12 @@ public abstract class AbstractIntegrationTest {
     @Autowired
     protected EmailsSendRepository emailsSendRepository;
 
+    @Autowired
+    protected UserCredentialRepository userCredentialRepository;
+
+    @Autowired
+    protected ShibbolethPrincipalCache shibbolethPrincipalCache;
+
     private final SimpleDateFormat issueFormat = new SimpleDateFormat("yyyy-MM-dd'T'H:mm:ss");
 
     protected final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
@@ -128,10 +136,15 @@ public abstract class AbstractIntegrationTest {
                         .insert(readFromFile(clazz))
                         .execute());
         Arrays.asList(PasswordForgottenHash.class, ChangeEmailHash.class, Challenge.class, EmailsSend.class,
-                        Registration.class, Authentication.class, Enrollment.class)
+                        Registration.class, Authentication.class, Enrollment.class, WebAuthnCredential.class, UserDeletion.class,
+                        LoginStat.class)
                 .forEach(clazz -> mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, clazz)
                         .remove(new Query())
                         .execute());
+        mongoTemplate.findAll(User.class)
+                .forEach(user -> mongoTemplate.insertAll(UserCredentialRepository.webAuthnCredentials(user)));
+        userCredentialRepository.invalidateAll();
+        shibbolethPrincipalCache.invalidateAll();
     }
 
     protected String samlAuthnRequest() throws IOException {
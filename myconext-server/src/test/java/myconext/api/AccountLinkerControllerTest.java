@@ -2,14 +2,25 @@ package myconext.api;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
 import io.restassured.http.ContentType;
 import io.restassured.response.Response;
 import myconext.AbstractIntegrationTest;
+import myconext.crypto.OAuthStateSigner;
 import myconext.model.LinkedAccount;
 import myconext.model.MagicLinkRequest;
 import myconext.model.User;
 import org.junit.Rule;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -21,6 +32,7 @@ import org.springframework.web.util.UriComponentsBuilder;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -46,6 +58,12 @@ public class AccountLinkerControllerTest extends AbstractIntegrationTest {
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(8099);
 
+    //The keys are cached by the IdTokenVerifier, so every test signs the id_token with the same key
+    private static final RSAKey RSA_KEY = rsaKey();
+
+    @Autowired
+    private OAuthStateSigner stateSigner;
+
     @Test
     public void linkAccountRedirect() throws IOException {
         Response response = samlAuthnRequestResponseWithLoa(null, null, "");
@@ -145,7 +163,7 @@ public class AccountLinkerControllerTest extends AbstractIntegrationTest {
         given().redirects().follow(false)
                 .when()
                 .queryParam("code", "123456")
-                .queryParam("state", String.format("id=%s&user_uid=%s", authenticationRequestId, "nope"))
+                .queryParam("state", stateSigner.sign("nope", authenticationRequestId))
                 .contentType(ContentType.JSON)
                 .get("/myconext/api/idp/oidc/redirect")
                 .then()
@@ -305,7 +323,7 @@ public class AccountLinkerControllerTest extends AbstractIntegrationTest {
         given().redirects().follow(false)
                 .when()
                 .queryParam("code", "123456")
-                .queryParam("state", passwordEncoder.encode("nope"))
+                .queryParam("state", stateSigner.sign("nope", null))
                 .contentType(ContentType.JSON)
                 .get("/myconext/api/sp/oidc/redirect")
                 .then().statusCode(403);
@@ -324,7 +342,7 @@ public class AccountLinkerControllerTest extends AbstractIntegrationTest {
         String location = given().redirects().follow(false)
                 .when()
                 .queryParam("code", "123456")
-                .queryParam("state", passwordEncoder.encode("1234567890"))
+                .queryParam("state", stateSigner.sign("1234567890", null))
                 .contentType(ContentType.JSON)
                 .get("/myconext/api/sp/oidc/redirect")
                 .getHeader("Location");
@@ -334,6 +352,49 @@ public class AccountLinkerControllerTest extends AbstractIntegrationTest {
         assertEquals(3, user.getLinkedAccounts().size());
     }
 
+    @Test
+    public void spFlowRedirectIdToken() throws IOException, JOSEException {
+        Map<String, Object> claims = idTokenClaims();
+        claims.put("surf-crm-id", "surf-crm-id-mock-idp");
+        stubForTokenIdToken(claims);
+
+        String location = given().redirects().follow(false)
+                .when()
+                .queryParam("code", "123456")
+                .queryParam("state", stateSigner.sign("1234567890", null))
+                .contentType(ContentType.JSON)
+                .get("/myconext/api/sp/oidc/redirect")
+                .getHeader("Location");
+        assertEquals("http://localhost:3001/personal", location);
+
+        //All required claims are in the id_token
+        verify(0, postRequestedFor(urlPathMatching("/oidc/userinfo")));
+        assertEquals("surf-crm-id-mock-idp", linkedAccount("jdoe@example.com", "mock.idp").getInstitutionIdentifier());
+    }
+
+    @Test
+    public void spFlowRedirectIdTokenWithoutSurfCrmId() throws IOException, JOSEException {
+        stubForTokenIdToken(idTokenClaims());
+        Map<Object, Object> userInfo = new HashMap<>(idTokenClaims());
+        userInfo.put("surf-crm-id", "surf-crm-id-mock-idp");
+        stubFor(post(urlPathMatching("/oidc/userinfo")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody(objectMapper.writeValueAsString(userInfo))));
+
+        String location = given().redirects().follow(false)
+                .when()
+                .queryParam("code", "123456")
+                .queryParam("state", stateSigner.sign("1234567890", null))
+                .contentType(ContentType.JSON)
+                .get("/myconext/api/sp/oidc/redirect")
+                .getHeader("Location");
+        assertEquals("http://localhost:3001/personal", location);
+
+        //The surf-crm-id is missing in the id_token, so the userinfo endpoint is called
+        verify(1, postRequestedFor(urlPathMatching("/oidc/userinfo")));
+        assertEquals("surf-crm-id-mock-idp", linkedAccount("jdoe@example.com", "mock.idp").getInstitutionIdentifier());
+    }
+
     @Test
     public void parseUserAffiliations() {
         //No schachome
@@ -363,11 +424,62 @@ public class AccountLinkerControllerTest extends AbstractIntegrationTest {
                 .withBody(objectMapper.writeValueAsString(userInfo))));
     }
 
-    private String stateParameterSp() {
-        return passwordEncoder.encode("mdoe");
+    private void stubForTokenIdToken(Map<String, Object> claims) throws JsonProcessingException, JOSEException {
+        stubFor(get(urlPathMatching("/oidc/.well-known/openid-configuration")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"issuer\":\"http://localhost:8099\"," +
+                        "\"jwks_uri\":\"http://localhost:8099/oidc/certs\"," +
+                        "\"subject_types_supported\":[\"public\"]," +
+                        "\"response_types_supported\":[\"code\"]," +
+                        "\"id_token_signing_alg_values_supported\":[\"RS256\"]}")));
+        stubFor(get(urlPathMatching("/oidc/certs")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody(new JWKSet(RSA_KEY.toPublicJWK()).toString())));
+
+        JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder()
+                .issuer("http://localhost:8099")
+                .subject("jdoe")
+                .audience("myconext.rp.localhost")
+                .issueTime(new Date())
+                .expirationTime(new Date(System.currentTimeMillis() + 60_000));
+        claims.forEach(builder::claim);
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(RSA_KEY.getKeyID()).build(), builder.build());
+        signedJWT.sign(new RSASSASigner(RSA_KEY));
+
+        Map<String, Object> tokens = new HashMap<>();
+        tokens.put("access_token", "123456");
+        tokens.put("id_token", signedJWT.serialize());
+        stubFor(post(urlPathMatching("/oidc/token")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody(objectMapper.writeValueAsString(tokens))));
+    }
+
+    private Map<String, Object> idTokenClaims() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("eduperson_principal_name", "jdoe@mock.idp");
+        claims.put("schac_home_organization", "mock.idp");
+        claims.put("eduperson_affiliation", Collections.singletonList("student"));
+        claims.put("given_name", "John");
+        claims.put("family_name", "Doe");
+        return claims;
+    }
+
+    private LinkedAccount linkedAccount(String email, String schacHomeOrganization) {
+        return userRepository.findOneUserByEmail(email).getLinkedAccounts().stream()
+                .filter(linkedAccount -> linkedAccount.getSchacHomeOrganization().equals(schacHomeOrganization))
+                .findFirst()
+                .get();
+    }
+
+    private static RSAKey rsaKey() {
+        try {
+            return new RSAKeyGenerator(2048).keyID("key_1").generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     private String stateParameterIdP(String authenticationRequestId) {
-        return String.format("id=%s&user_uid=%s", authenticationRequestId, stateParameterSp());
+        return stateSigner.sign("mdoe", authenticationRequestId);
     }
 }
\ No newline at end of file
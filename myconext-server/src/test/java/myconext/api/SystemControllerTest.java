@@ -0,0 +1,91 @@
+package myconext.api;
+
+import io.restassured.http.ContentType;
+import myconext.AbstractIntegrationTest;
+import myconext.metrics.LoginStatsFlusher;
+import myconext.metrics.LoginStatsRollup;
+import myconext.model.LoginStat;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.Assert.assertEquals;
+
+public class SystemControllerTest extends AbstractIntegrationTest {
+
+    @Value("${attribute_aggregation.user}")
+    private String systemUserName;
+
+    @Value("${attribute_aggregation.password}")
+    private String systemPassword;
+
+    @Autowired
+    private LoginStatsRollup loginStatsRollup;
+
+    @Autowired
+    private LoginStatsFlusher loginStatsFlusher;
+
+    @Test
+    public void stats() {
+        loginStatsRollup.record("password", "https://sp", true);
+        loginStatsRollup.record("password", "https://sp", true);
+        loginStatsFlusher.flush();
+        //Every flush increments the count of the same hourly document
+        loginStatsRollup.record("password", "https://sp", true);
+        loginStatsRollup.record("password", "https://other", false);
+        loginStatsRollup.record("magiclink", "https://sp", true);
+        loginStatsFlusher.flush();
+
+        assertEquals(3, mongoTemplate.count(new Query(), LoginStat.class));
+
+        List<Map<String, Object>> stats = stats("login_method,outcome", null);
+        assertEquals(3, stats.size());
+        assertEquals("password", stats.get(0).get("loginMethod"));
+        assertEquals("ok", stats.get(0).get("outcome"));
+        assertEquals(3, stats.get(0).get("count"));
+
+        List<Map<String, Object>> perRequester = stats("requester_entity_id", "ok");
+        assertEquals(1, perRequester.size());
+        assertEquals("https://sp", perRequester.get(0).get("requesterEntityId"));
+        assertEquals(4, perRequester.get(0).get("count"));
+    }
+
+    @Test
+    public void statsUnknownGroupBy() {
+        given()
+                .when()
+                .auth().preemptive().basic(systemUserName, systemPassword)
+                .queryParam("group_by", "nope")
+                .contentType(ContentType.JSON)
+                .get("/myconext/api/system/stats")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void stats401() {
+        given()
+                .when()
+                .contentType(ContentType.JSON)
+                .get("/myconext/api/system/stats")
+                .then()
+                .statusCode(401);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> stats(String groupBy, String outcome) {
+        return given()
+                .when()
+                .auth().preemptive().basic(systemUserName, systemPassword)
+                .queryParam("group_by", groupBy)
+                .queryParams(outcome == null ? Map.of() : Map.of("outcome", outcome))
+                .contentType(ContentType.JSON)
+                .get("/myconext/api/system/stats")
+                .as(List.class);
+    }
+}
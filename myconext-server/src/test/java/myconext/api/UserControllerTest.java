@@ -10,8 +10,10 @@ import io.restassured.http.Cookie;
 import io.restassured.response.Response;
 import io.restassured.response.ValidatableResponse;
 import myconext.AbstractIntegrationTest;
+import myconext.crypto.PasswordHasher;
 import myconext.model.*;
 import myconext.repository.ChallengeRepository;
+import myconext.repository.UserDeletionRepository;
 import myconext.security.ACR;
 import org.apache.commons.io.IOUtil;
 import org.apache.http.client.CookieStore;
@@ -54,6 +56,12 @@ public class UserControllerTest extends AbstractIntegrationTest {
     @Autowired
     private ChallengeRepository challengeRepository;
 
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private UserDeletionRepository userDeletionRepository;
+
     @Test
     public void existingUser() throws IOException {
         MagicLinkResponse magicLinkResponse = magicLinkRequest(user("jdoe@example.com"), HttpMethod.PUT);
@@ -507,6 +515,10 @@ public class UserControllerTest extends AbstractIntegrationTest {
 
         Optional<User> optionalUser = userRepository.findUserByEmail("jdoe@example.com");
         assertFalse(optionalUser.isPresent());
+
+        List<UserDeletion> userDeletions = userDeletionRepository.findAll();
+        assertEquals(1, userDeletions.size());
+        assertEquals(UserDeletionStatus.PENDING, userDeletions.get(0).getStatus());
     }
 
     @Test
@@ -575,6 +587,28 @@ public class UserControllerTest extends AbstractIntegrationTest {
         assertTrue(html.contains("mdoe@example.com"));
     }
 
+    @Test
+    public void loginWithPasswordRehashed() throws IOException {
+        User storedUser = userRepository.findOneUserByEmail("mdoe@example.com");
+        storedUser.rehashPassword("Secret123", new BCryptPasswordEncoder(4));
+        userRepository.save(storedUser);
+
+        User user = user("mdoe@example.com");
+        userSetPassword(user, "Secret123");
+        String authenticationRequestId = samlAuthnRequest();
+        given()
+                .when()
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(new MagicLinkRequest(authenticationRequestId, user, false, true))
+                .put("/myconext/api/idp/magic_link_request")
+                .then()
+                .statusCode(HttpStatus.CREATED.value());
+
+        storedUser = userRepository.findOneUserByEmail("mdoe@example.com");
+        assertTrue(storedUser.getPassword().startsWith(String.format("$2a$%02d$", passwordHasher.getStrength())));
+        assertTrue(passwordHasher.matches("Secret123", storedUser.getPassword()));
+    }
+
     @Test
     public void loginWithWrongPassword() throws IOException {
         User user = user("mdoe@example.com");
@@ -855,9 +889,18 @@ public class UserControllerTest extends AbstractIntegrationTest {
 
     @Test
     public void webAuhthAuthentication() throws Base64UrlException, IOException {
+        doWebAuthnAuthentication(Optional.of("jdoe@example.com"));
+    }
+
+    @Test
+    public void webAuthnUsernamelessAuthentication() throws Base64UrlException, IOException {
+        doWebAuthnAuthentication(Optional.empty());
+    }
+
+    private void doWebAuthnAuthentication(Optional<String> email) throws Base64UrlException, IOException {
         String authenticationRequestId = samlAuthnRequest();
         Map<String, Object> body = new HashMap<>();
-        body.put("email", "jdoe@example.com");
+        email.ifPresent(value -> body.put("email", value));
         body.put("authenticationRequestId", authenticationRequestId);
         given()
                 .when()
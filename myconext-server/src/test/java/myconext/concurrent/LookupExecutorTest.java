@@ -0,0 +1,83 @@
+package myconext.concurrent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.exceptions.UserNotFoundException;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static myconext.concurrent.LookupExecutor.join;
+import static org.junit.Assert.*;
+
+public class LookupExecutorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LookupExecutor lookupExecutor = new LookupExecutor(2, 1, meterRegistry);
+
+    @After
+    public void after() {
+        lookupExecutor.destroy();
+        MDC.clear();
+    }
+
+    @Test
+    public void concurrent() {
+        CountDownLatch latch = new CountDownLatch(2);
+        CompletableFuture<Boolean> first = lookupExecutor.supplyAsync("first", () -> await(latch));
+        CompletableFuture<Boolean> second = lookupExecutor.supplyAsync("second", () -> await(latch));
+
+        assertTrue(join(first));
+        assertTrue(join(second));
+        assertEquals(1L, meterRegistry.get("myconext.lookup").tag("lookup", "first").tag("outcome", "ok").timer().count());
+    }
+
+    @Test
+    public void exception() {
+        CompletableFuture<Object> future = lookupExecutor.supplyAsync("user", () -> {
+            throw new UserNotFoundException("nope");
+        });
+
+        assertThrows(UserNotFoundException.class, () -> join(future));
+        assertEquals(1L, meterRegistry.get("myconext.lookup").tag("lookup", "user").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    public void mdc() {
+        MDC.put("trace_id", "1234");
+
+        assertEquals("1234", join(lookupExecutor.supplyAsync("mdc", () -> MDC.get("trace_id"))));
+    }
+
+    @Test
+    public void callerRunsWhenFull() {
+        CountDownLatch blocked = new CountDownLatch(1);
+        //Two busy threads and a full queue
+        for (int i = 0; i < 3; i++) {
+            lookupExecutor.supplyAsync("blocked", () -> {
+                try {
+                    return blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        String thread = join(lookupExecutor.supplyAsync("caller", () -> Thread.currentThread().getName()));
+        blocked.countDown();
+
+        assertEquals(Thread.currentThread().getName(), thread);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package myconext.cron;
 import myconext.AbstractIntegrationTest;
 import myconext.model.*;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
@@ -13,6 +14,9 @@ import static org.junit.Assert.assertEquals;
 
 public class ResourceCleanerTest extends AbstractIntegrationTest {
 
+    @Autowired
+    private UserDeletionJob userDeletionJob;
+
     @Test
     public void cleanNewUsersNotFinishedRegistration() {
         ResourceCleaner resourceCleaner = getResourceCleaner(true);
@@ -117,7 +121,7 @@ public class ResourceCleanerTest extends AbstractIntegrationTest {
     }
 
     private ResourceCleaner getResourceCleaner(boolean cronJobResponsible) {
-        return new ResourceCleaner(authenticationRequestRepository, userRepository, passwordForgottenHashRepository, changeEmailHashRepository, emailsSendRepository, cronJobResponsible);
+        return new ResourceCleaner(authenticationRequestRepository, userRepository, passwordForgottenHashRepository, changeEmailHashRepository, emailsSendRepository, userDeletionJob, cronJobResponsible);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package myconext.cron;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.*;
+import myconext.repository.UserDeletionRepository;
+import myconext.repository.UserLoginRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+import tiqr.org.model.Registration;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class UserDeletionJobTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private UserDeletionRepository userDeletionRepository;
+
+    @Autowired
+    private UserLoginRepository userLoginRepository;
+
+    @Test
+    public void process() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        passwordForgottenHashRepository.save(new PasswordForgottenHash(user, "hash"));
+        changeEmailHashRepository.save(new ChangeEmailHash(user, "new@example.com", "hash"));
+        Registration registration = new Registration();
+        ReflectionTestUtils.setField(registration, "userId", user.getId());
+        mongoTemplate.insert(registration);
+        for (int i = 0; i < 5; i++) {
+            userLoginRepository.save(new UserLogin(user, Collections.emptyMap()));
+        }
+        UserLogin otherUserLogin = userLoginRepository.save(new UserLogin(user("other@example.com"), Collections.emptyMap()));
+
+        UserDeletionJob userDeletionJob = userDeletionJob(2);
+        userDeletionJob.enqueue(user, "account");
+        userDeletionJob.process();
+
+        assertEquals(0, passwordForgottenHashRepository.findByUserId(user.getId()).size());
+        assertEquals(0, changeEmailHashRepository.findByUserId(user.getId()).size());
+        assertFalse(registrationRepository.findRegistrationByUserId(user.getId()).isPresent());
+        assertEquals(0, mongoTemplate.count(new Query(Criteria.where("userId").is(user.getId())), UserLogin.class));
+        assertTrue(userLoginRepository.findById(otherUserLogin.getId()).isPresent());
+
+        UserDeletion userDeletion = userDeletionRepository.findByUserId(user.getId()).get(0);
+        assertEquals(UserDeletionStatus.COMPLETED, userDeletion.getStatus());
+        assertEquals(1, userDeletion.getAttempts());
+        assertNull(userDeletion.getEmail());
+        assertEquals(5L, userDeletion.getDeleted().get("user_logins").longValue());
+        assertEquals(1L, userDeletion.getDeleted().get("password_forgotten_hashes").longValue());
+    }
+
+    @Test
+    public void processExpiredLock() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        UserDeletionJob userDeletionJob = userDeletionJob(10);
+        UserDeletion userDeletion = userDeletionJob.enqueue(user, "account");
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userDeletion.getId())),
+                new Update().set("status", UserDeletionStatus.IN_PROGRESS).set("lockedUntil", new Date(System.currentTimeMillis() + 60_000)),
+                UserDeletion.class);
+
+        userDeletionJob.process();
+        assertEquals(UserDeletionStatus.IN_PROGRESS, userDeletionRepository.findById(userDeletion.getId()).get().getStatus());
+
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userDeletion.getId())),
+                new Update().set("lockedUntil", new Date(System.currentTimeMillis() - 1)),
+                UserDeletion.class);
+
+        userDeletionJob.process();
+        assertEquals(UserDeletionStatus.COMPLETED, userDeletionRepository.findById(userDeletion.getId()).get().getStatus());
+    }
+
+    @Test
+    public void processAfterBackoff() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        UserDeletionJob userDeletionJob = userDeletionJob(10);
+        UserDeletion userDeletion = userDeletionJob.enqueue(user, "account");
+        //A failed attempt
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userDeletion.getId())),
+                new Update().set("attempts", 1).set("nextAttemptAt", new Date(System.currentTimeMillis() + 60_000)),
+                UserDeletion.class);
+
+        userDeletionJob.process();
+        userDeletion = userDeletionRepository.findById(userDeletion.getId()).get();
+        assertEquals(UserDeletionStatus.PENDING, userDeletion.getStatus());
+        assertEquals(1, userDeletion.getAttempts());
+
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userDeletion.getId())),
+                new Update().set("nextAttemptAt", new Date(System.currentTimeMillis() - 1)),
+                UserDeletion.class);
+
+        userDeletionJob.process();
+        userDeletion = userDeletionRepository.findById(userDeletion.getId()).get();
+        assertEquals(UserDeletionStatus.COMPLETED, userDeletion.getStatus());
+        assertEquals(2, userDeletion.getAttempts());
+    }
+
+    @Test
+    public void completedDeletionsExpire() {
+        assertTrue(mongoTemplate.indexOps(UserDeletion.class).getIndexInfo().stream()
+                .anyMatch(indexInfo -> indexInfo.getName().equals("completed_ttl") &&
+                        indexInfo.getExpireAfter().isPresent()));
+    }
+
+    private UserDeletionJob userDeletionJob(int batchSize) {
+        return new UserDeletionJob(mongoTemplate, userDeletionRepository, batchSize, 0, 3, 10, 5, 10);
+    }
+}
@@ -0,0 +1,72 @@
+package myconext.crypto;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class OAuthStateSignerTest {
+
+    private static final String KEY = "k1:0123456789abcdef0123456789abcdef";
+    private static final String NEW_KEY = "k2:fedcba9876543210fedcba9876543210";
+
+    private final OAuthStateSigner stateSigner = new OAuthStateSigner(KEY, 900, Clock.systemUTC());
+
+    @Test
+    public void signAndVerify() {
+        String state = stateSigner.sign("1234567890", "authn-request-id");
+        assertTrue(stateSigner.verify(state, "1234567890"));
+        assertEquals("authn-request-id", stateSigner.authenticationRequestId(state).get());
+
+        assertFalse(stateSigner.verify(state, "nope"));
+    }
+
+    @Test
+    public void withoutAuthenticationRequestId() {
+        String state = stateSigner.sign("1234567890", null);
+        assertTrue(stateSigner.verify(state, "1234567890"));
+        assertFalse(stateSigner.authenticationRequestId(state).isPresent());
+    }
+
+    @Test
+    public void tampered() {
+        String state = stateSigner.sign("1234567890", "authn-request-id");
+        String[] parts = state.split("\\.");
+        String otherId = stateSigner.sign("1234567890", "other-id").split("\\.")[2];
+
+        assertFalse(stateSigner.verify(String.join(".", parts[0], parts[1], otherId, parts[3]), "1234567890"));
+        assertFalse(stateSigner.verify(String.join(".", parts[0], Long.toString(Long.MAX_VALUE), parts[2], parts[3]), "1234567890"));
+        assertFalse(stateSigner.verify(String.join(".", "k2", parts[1], parts[2], parts[3]), "1234567890"));
+        assertFalse(stateSigner.verify(String.join(".", parts[0], parts[1], parts[2], "!@#"), "1234567890"));
+        assertFalse(stateSigner.verify("nope", "1234567890"));
+        assertFalse(stateSigner.verify(null, "1234567890"));
+        assertFalse(stateSigner.authenticationRequestId("nope").isPresent());
+    }
+
+    @Test
+    public void expired() {
+        String state = stateSigner.sign("1234567890", "authn-request-id");
+        OAuthStateSigner later = new OAuthStateSigner(KEY, 900,
+                Clock.fixed(Instant.now().plusSeconds(901), ZoneOffset.UTC));
+        assertFalse(later.verify(state, "1234567890"));
+    }
+
+    @Test
+    public void keyRotation() {
+        String state = stateSigner.sign("1234567890", "authn-request-id");
+        OAuthStateSigner rotated = new OAuthStateSigner(NEW_KEY + "," + KEY, 900, Clock.systemUTC());
+        assertTrue(rotated.verify(state, "1234567890"));
+
+        String newState = rotated.sign("1234567890", "authn-request-id");
+        assertTrue(newState.startsWith("k2."));
+        assertFalse(stateSigner.verify(newState, "1234567890"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weakKey() {
+        new OAuthStateSigner("k1:short", 900, Clock.systemUTC());
+    }
+}
@@ -0,0 +1,55 @@
+package myconext.crypto;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.exceptions.TooManyRequestsException;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class PasswordHasherTest {
+
+    @Test
+    public void encodeAndMatch() {
+        PasswordHasher passwordHasher = new PasswordHasher(1, 10, 4, new SimpleMeterRegistry());
+        assertEquals(4, passwordHasher.getStrength());
+
+        String encoded = passwordHasher.encode("secret");
+        assertTrue(encoded.startsWith("$2a$04$"));
+        assertTrue(passwordHasher.matches("secret", encoded));
+        assertFalse(passwordHasher.matches("nope", encoded));
+        assertFalse(passwordHasher.matches("secret", null));
+    }
+
+    @Test
+    public void upgradeEncoding() {
+        PasswordHasher passwordHasher = new PasswordHasher(1, 10, 5, new SimpleMeterRegistry());
+        assertFalse(passwordHasher.upgradeEncoding(passwordHasher.encode("secret")));
+        assertTrue(passwordHasher.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+        //Never downgraded, e.g. by a node with a lower strength
+        assertFalse(passwordHasher.upgradeEncoding(new BCryptPasswordEncoder(6).encode("secret")));
+        assertFalse(passwordHasher.upgradeEncoding(null));
+        assertFalse(passwordHasher.upgradeEncoding("plain"));
+    }
+
+    @Test
+    public void queueFull() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PasswordHasher passwordHasher = new PasswordHasher(1, 1, 12, meterRegistry);
+        List<CompletableFuture<String>> futures = IntStream.range(0, 6)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> passwordHasher.encode("secret")))
+                .collect(Collectors.toList());
+        long rejected = futures.stream()
+                .filter(future -> future.handle((result, e) -> e != null && e.getCause() instanceof TooManyRequestsException).join())
+                .count();
+        assertTrue(rejected > 0);
+        assertEquals(rejected, meterRegistry.counter("myconext.password.hashing.rejected").count(), 0);
+        assertEquals(6 - rejected, meterRegistry.find("myconext.password.hashing").tag("operation", "encode").timer().count());
+        passwordHasher.destroy();
+    }
+}
@@ -0,0 +1,57 @@
+package myconext.crypto;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TokenGeneratorTest {
+
+    @Test
+    public void urlSafeToken() {
+        String token = TokenGenerator.urlSafeToken(64);
+        assertTrue(Pattern.compile("^[A-Za-z0-9_-]{86}$").matcher(token).matches());
+        assertNotEquals(token, TokenGenerator.urlSafeToken(64));
+    }
+
+    @Test
+    public void randomBytesLargerThanBuffer() {
+        assertEquals(2048, TokenGenerator.randomBytes(2048).length);
+    }
+
+    @Test
+    public void uuid() {
+        UUID uuid = UUID.fromString(TokenGenerator.uuid());
+        assertEquals(4, uuid.version());
+        assertEquals(2, uuid.variant());
+
+        Set<String> uuids = IntStream.range(0, 10_000).parallel()
+                .mapToObj(i -> TokenGenerator.uuid())
+                .collect(Collectors.toSet());
+        assertEquals(10_000, uuids.size());
+    }
+
+    @Test
+    public void randomCharsIsUniform() {
+        char[] alphabet = "ABC".toCharArray();
+        int[] counts = new int[alphabet.length];
+        int total = 300_000;
+        for (char c : TokenGenerator.randomChars(total, alphabet)) {
+            counts[c - 'A']++;
+        }
+        //Without rejection sampling 'A' would be drawn 86 out of 256 times instead of 1 out of 3
+        for (int count : counts) {
+            assertEquals(total / 3D, count, total * 0.01);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyAlphabet() {
+        TokenGenerator.randomChars(6, new char[0]);
+    }
+}
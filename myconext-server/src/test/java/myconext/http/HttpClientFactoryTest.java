@@ -0,0 +1,109 @@
+package myconext.http;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.exceptions.ServiceUnavailableException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class HttpClientFactoryTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8391);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HttpClientFactory httpClientFactory = new HttpClientFactory(new MockEnvironment()
+            .withProperty("http_clients.defaults.connect-timeout-millis", "500")
+            .withProperty("http_clients.defaults.read-timeout-millis", "2000")
+            .withProperty("http_clients.defaults.max-connections", "5")
+            .withProperty("http_clients.defaults.max-concurrent-requests", "5")
+            .withProperty("http_clients.defaults.bulkhead-wait-millis", "0")
+            .withProperty("http_clients.defaults.idle-timeout-seconds", "30")
+            .withProperty("http_clients.slow.read-timeout-millis", "250")
+            .withProperty("http_clients.slow.max-concurrent-requests", "1"), meterRegistry);
+
+    @After
+    public void after() throws IOException {
+        httpClientFactory.destroy();
+    }
+
+    @Test
+    public void metricsPerDependency() {
+        stubFor(get(urlPathEqualTo("/api")).willReturn(aResponse().withStatus(200).withBody("ok")));
+        RestTemplate restTemplate = httpClientFactory.restTemplate("manage");
+
+        assertEquals("ok", restTemplate.getForObject("http://localhost:8391/api", String.class));
+        assertEquals(1L, meterRegistry.get("myconext.http.client.requests")
+                .tag("dependency", "manage")
+                .tag("status", "200")
+                .timer()
+                .count());
+        assertEquals(5D, meterRegistry.get("myconext.http.client.bulkhead.available")
+                .tag("dependency", "manage")
+                .gauge()
+                .value(), 0D);
+    }
+
+    @Test
+    public void readTimeoutOverridesDefault() {
+        stubFor(get(urlPathEqualTo("/slow")).willReturn(aResponse().withStatus(200).withFixedDelay(1000)));
+        RestTemplate restTemplate = httpClientFactory.restTemplate("slow");
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject("http://localhost:8391/slow", String.class));
+    }
+
+    @Test
+    public void bulkhead() {
+        stubFor(get(urlPathEqualTo("/slow")).willReturn(aResponse().withStatus(200).withFixedDelay(200)));
+        RestTemplate restTemplate = httpClientFactory.restTemplate("slow");
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() ->
+                restTemplate.getForObject("http://localhost:8391/slow", String.class));
+        await().atMost(1, TimeUnit.SECONDS).until(() -> meterRegistry.get("myconext.http.client.bulkhead.available")
+                .tag("dependency", "slow").gauge().value() == 0D);
+
+        assertThrows(ServiceUnavailableException.class, () -> restTemplate.getForObject("http://localhost:8391/slow", String.class));
+        first.join();
+        assertEquals(1D, meterRegistry.get("myconext.http.client.bulkhead.rejected")
+                .tag("dependency", "slow")
+                .counter()
+                .count(), 0D);
+    }
+
+    @Test
+    public void bulkheadUntilBodyRead() {
+        stubFor(get(urlPathEqualTo("/slow")).willReturn(aResponse().withStatus(200).withBody("slow body")
+                .withChunkedDribbleDelay(3, 150)));
+        RestTemplate restTemplate = httpClientFactory.restTemplate("slow");
+
+        String body = restTemplate.execute("http://localhost:8391/slow", HttpMethod.GET, null, response -> {
+            //The headers are received, but the body is still being read
+            assertEquals(0D, meterRegistry.get("myconext.http.client.bulkhead.available")
+                    .tag("dependency", "slow").gauge().value(), 0D);
+            assertNull(meterRegistry.find("myconext.http.client.requests").tag("dependency", "slow").timer());
+            return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+        });
+
+        assertEquals("slow body", body);
+        assertEquals(1D, meterRegistry.get("myconext.http.client.bulkhead.available")
+                .tag("dependency", "slow").gauge().value(), 0D);
+        assertEquals(1L, meterRegistry.get("myconext.http.client.requests")
+                .tag("dependency", "slow").tag("status", "200").timer().count());
+    }
+}
@@ -0,0 +1,327 @@
+package myconext.load;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import myconext.AbstractIntegrationTest;
+import myconext.crypto.KeyGenerator;
+import myconext.model.User;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.mail.util.MimeMessageParser;
+import org.junit.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.saml.SamlTransformer;
+import org.springframework.security.saml.key.KeyType;
+import org.springframework.security.saml.key.SimpleKey;
+import org.springframework.security.saml.saml2.authentication.AuthenticationRequest;
+import org.springframework.security.saml.saml2.authentication.Response;
+import org.springframework.security.saml.saml2.authentication.StatusCode;
+import org.springframework.security.saml.saml2.metadata.IdentityProviderMetadata;
+import org.springframework.security.saml.saml2.signature.AlgorithmMethod;
+import org.springframework.security.saml.saml2.signature.DigestMethod;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.mail.internet.MimeMessage;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+
+/*
+ * End-to-end load test of the SAML magic link login. Every virtual user acts as a SAML SP and repeatedly signs an
+ * AuthnRequest, starts the SSO, requests a magic link, reads the magic link from the mail, follows it and validates the
+ * SAMLResponse posted back to the SP. The SP metadata and Manage are served by WireMock and the mail is received by
+ * GreenMail, so no profile is active and the real MailBox and Manage resolver are used. Mongo is the local instance
+ * which is also used by the other integration tests.
+ *
+ * Not part of the build, run with:
+ * mvn test -Dtest=SamlLoginLoadTest -Dload_test.enabled=true -Dload_test.virtual_users=25 -Dload_test.iterations=40
+ */
+@ActiveProfiles(value = {}, inheritProfiles = false)
+@TestPropertySource(properties = {
+        "sp_entity_metadata_url=http://localhost:8096/sp/metadata",
+        "manage.base_url=http://localhost:8096",
+        "email_guessing_jitter_millis=0",
+        "email_spam_threshold_seconds=0"
+})
+public class SamlLoginLoadTest extends AbstractIntegrationTest {
+
+    private static final Log LOG = LogFactory.getLog(SamlLoginLoadTest.class);
+
+    private static final String SP_ENTITY_ID = "https://engine.test.surfconext.nl/authentication/sp/metadata";
+    private static final String SP_ACS_LOCATION = "https://engine.test.surfconext.nl/authentication/sp/consume-assertion";
+    private static final String REQUESTER_ENTITY_ID = "https://profile.test2.surfconext.nl/authentication/metadata";
+
+    private static final Pattern LOGIN_PATH_PATTERN = Pattern.compile("/login/([^/?]+)");
+    private static final Pattern MAGIC_LINK_PATTERN = Pattern.compile("\\?h=([A-Za-z0-9_\\-]+)");
+    private static final Pattern SAML_RESPONSE_PATTERN = Pattern.compile("name=\"SAMLResponse\" value=\"(.*?)\"");
+
+    private static final List<String> STEPS = Arrays.asList("sso", "magic_link_request", "magic_link_mail", "magic", "saml_response");
+
+    @ClassRule
+    public static WireMockRule wireMockRule = new WireMockRule(8096);
+
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP);
+
+    @Autowired
+    private SamlTransformer samlTransformer;
+
+    private static SimpleKey spSigningKey;
+    private static String spCertificate;
+
+    private final int virtualUsers = Integer.getInteger("load_test.virtual_users", 10);
+    private final int iterations = Integer.getInteger("load_test.iterations", 20);
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final Map<String, StepStatistics> statistics = new LinkedHashMap<>();
+    private List<SimpleKey> idpVerificationKeys;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        Assume.assumeTrue("Load test is not enabled", Boolean.getBoolean("load_test.enabled"));
+        String[] keys = KeyGenerator.generateKeys();
+        spCertificate = keys[1];
+        spSigningKey = new SimpleKey()
+                .setName("load-test-sp")
+                .setPrivateKey(keys[0])
+                .setPassphrase("")
+                .setCertificate(keys[1])
+                .setType(KeyType.SIGNING);
+    }
+
+    @Before
+    public void before() throws Exception {
+        super.before();
+        greenMail.start();
+        greenMail.purgeEmailFromAllMailboxes();
+
+        String certificate = spCertificate
+                .replace("-----BEGIN CERTIFICATE-----", "")
+                .replace("-----END CERTIFICATE-----", "")
+                .trim();
+        wireMockRule.stubFor(get(urlPathEqualTo("/sp/metadata"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/samlmetadata+xml")
+                        .withBody(String.format(readFile("load/sp_metadata.xml"), SP_ENTITY_ID, certificate, SP_ACS_LOCATION))));
+        for (String entityType : Arrays.asList("saml20_sp", "oidc10_rp", "oauth20_rs")) {
+            wireMockRule.stubFor(post(urlPathEqualTo("/manage/api/internal/search/" + entityType))
+                    .willReturn(aResponse()
+                            .withHeader("Content-Type", "application/json")
+                            .withBody(readFile(String.format("manage_%s.json", entityType)))));
+        }
+        STEPS.forEach(step -> statistics.put(step, new StepStatistics(step)));
+
+        HttpResponse<String> metadata = send(HttpRequest.newBuilder(uri("/saml/guest-idp/metadata")).GET());
+        IdentityProviderMetadata identityProviderMetadata = (IdentityProviderMetadata) samlTransformer
+                .fromXml(metadata.body().getBytes(StandardCharsets.UTF_8), null, null);
+        idpVerificationKeys = identityProviderMetadata.getIdentityProvider().getKeys();
+    }
+
+    @After
+    public void after() {
+        greenMail.stop();
+    }
+
+    @Test
+    public void magicLinkLogins() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < virtualUsers; i++) {
+            users.add(userRepository.save(user(String.format("load-test-%s@example.com", i))));
+        }
+        //Warm-up outside of the measurements
+        login(users.get(0), new HashMap<>(), false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(virtualUsers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (User user : users) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                Map<String, Integer> consumedMails = new HashMap<>();
+                consumedMails.put(user.getEmail(), greenMail.getReceivedMessagesForDomain(user.getEmail()).length);
+                int succeeded = 0;
+                for (int i = 0; i < iterations; i++) {
+                    if (login(user, consumedMails, true)) {
+                        succeeded++;
+                    }
+                }
+                return succeeded;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        int logins = 0;
+        for (Future<Integer> future : futures) {
+            logins += future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        StringBuilder report = new StringBuilder(String.format("%n%s virtual users, %s iterations, %s successful logins in %.2f s (%.2f logins/s)%n",
+                virtualUsers, iterations, logins, elapsed / 1_000_000_000D, logins / (elapsed / 1_000_000_000D)));
+        statistics.values().forEach(stepStatistics -> report.append(stepStatistics.report(elapsed)).append(System.lineSeparator()));
+        LOG.info(report);
+
+        assertEquals(virtualUsers * iterations, logins);
+    }
+
+    private boolean login(User user, Map<String, Integer> consumedMails, boolean record) {
+        String step = "sso";
+        long stepStart = System.nanoTime();
+        try {
+            String authenticationRequestId = sso();
+            stepStart = record(step, stepStart, record);
+
+            step = "magic_link_request";
+            magicLinkRequest(authenticationRequestId, user);
+            stepStart = record(step, stepStart, record);
+
+            step = "magic_link_mail";
+            String hash = magicLinkHash(user.getEmail(), consumedMails);
+            stepStart = record(step, stepStart, record);
+
+            step = "magic";
+            String html = magic(hash);
+            stepStart = record(step, stepStart, record);
+
+            step = "saml_response";
+            samlResponse(html);
+            record(step, stepStart, record);
+            return true;
+        } catch (Exception e) {
+            LOG.warn(String.format("Step %s failed for %s: %s", step, user.getEmail(), e.getMessage()));
+            if (record) {
+                statistics.get(step).failure();
+            }
+            return false;
+        }
+    }
+
+    private long record(String step, long stepStart, boolean record) {
+        long now = System.nanoTime();
+        if (record) {
+            statistics.get(step).record(now - stepStart);
+        }
+        return now;
+    }
+
+    private String sso() throws Exception {
+        String xml = String.format(readFile("load/authn_request.xml"), SP_ACS_LOCATION, "ARQ" + UUID.randomUUID(),
+                Instant.now().toString(), SP_ENTITY_ID, REQUESTER_ENTITY_ID);
+        AuthenticationRequest authenticationRequest = (AuthenticationRequest) samlTransformer
+                .fromXml(xml.getBytes(StandardCharsets.UTF_8), null, null);
+        authenticationRequest.setSigningKey(spSigningKey, AlgorithmMethod.RSA_SHA256, DigestMethod.SHA256);
+        String samlRequest = samlTransformer.samlEncode(samlTransformer.toXml(authenticationRequest), true);
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder(
+                uri("/saml/guest-idp/SSO?SAMLRequest=" + URLEncoder.encode(samlRequest, StandardCharsets.UTF_8))).GET());
+        String location = expectRedirect(response);
+        Matcher matcher = LOGIN_PATH_PATTERN.matcher(location);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected SSO redirect " + location);
+        }
+        return matcher.group(1);
+    }
+
+    private void magicLinkRequest(String authenticationRequestId, User user) throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        body.put("authenticationRequestId", authenticationRequestId);
+        body.put("user", Collections.singletonMap("email", user.getEmail()));
+        body.put("rememberMe", false);
+        body.put("usePassword", false);
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/myconext/api/idp/magic_link_request"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))));
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Magic link request returned " + response.statusCode());
+        }
+    }
+
+    private String magicLinkHash(String email, Map<String, Integer> consumedMails) throws Exception {
+        int consumed = consumedMails.getOrDefault(email, greenMail.getReceivedMessagesForDomain(email).length - 1);
+        long deadline = System.currentTimeMillis() + 10_000;
+        MimeMessage[] messages = greenMail.getReceivedMessagesForDomain(email);
+        while (messages.length <= consumed) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("No magic link mail received for " + email);
+            }
+            Thread.sleep(5);
+            messages = greenMail.getReceivedMessagesForDomain(email);
+        }
+        consumedMails.put(email, consumed + 1);
+        String html = new MimeMessageParser(messages[consumed]).parse().getHtmlContent();
+        Matcher matcher = MAGIC_LINK_PATTERN.matcher(html);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No magic link in mail for " + email);
+        }
+        return matcher.group(1);
+    }
+
+    private String magic(String hash) throws Exception {
+        HttpResponse<String> response = magicResponse(hash);
+        //The app nudge and the remember me question redirect back to the magic endpoint with the same hash
+        for (int i = 0; i < 5 && response.statusCode() == 302; i++) {
+            String location = response.headers().firstValue("Location").orElse("");
+            String h = UriComponentsBuilder.fromUriString(location).build().getQueryParams().getFirst("h");
+            if (h == null) {
+                throw new IllegalStateException("Unexpected magic redirect " + location);
+            }
+            response = magicResponse(h);
+        }
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Magic link returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private HttpResponse<String> magicResponse(String hash) throws Exception {
+        return send(HttpRequest.newBuilder(uri("/saml/guest-idp/magic?h=" + hash))
+                .header("Cookie", "BROWSER_SESSION=true")
+                .GET());
+    }
+
+    private void samlResponse(String html) {
+        Matcher matcher = SAML_RESPONSE_PATTERN.matcher(html);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No SAMLResponse posted to the SP");
+        }
+        byte[] xml = Base64.getDecoder().decode(matcher.group(1));
+        Response response = (Response) samlTransformer.fromXml(xml, idpVerificationKeys, null);
+        if (!StatusCode.SUCCESS.equals(response.getStatus().getCode()) || response.getAssertions().isEmpty()) {
+            throw new IllegalStateException("Unsuccessful SAMLResponse " + response.getStatus().getCode());
+        }
+    }
+
+    private String expectRedirect(HttpResponse<String> response) {
+        if (response.statusCode() != 302) {
+            throw new IllegalStateException("Expected a redirect, got " + response.statusCode());
+        }
+        return response.headers().firstValue("Location").orElse("");
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws Exception {
+        return httpClient.send(builder.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
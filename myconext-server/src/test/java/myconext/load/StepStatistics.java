@@ -0,0 +1,60 @@
+package myconext.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Collects the latencies of one step of the SAML login load test and reports throughput and percentiles
+ */
+public class StepStatistics {
+
+    private final String step;
+    private final List<Long> latenciesNanos = new ArrayList<>();
+    private final LongAdder failures = new LongAdder();
+
+    public StepStatistics(String step) {
+        this.step = step;
+    }
+
+    public synchronized void record(long latencyNanos) {
+        latenciesNanos.add(latencyNanos);
+    }
+
+    public void failure() {
+        failures.increment();
+    }
+
+    public synchronized int count() {
+        return latenciesNanos.size();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    public synchronized double percentileMillis(double percentile) {
+        if (latenciesNanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(latenciesNanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1_000_000D;
+    }
+
+    public String report(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        int count = count();
+        return String.format("%-20s count %6d, failures %5d, throughput %8.2f/s, p50 %8.2f ms, p95 %8.2f ms, p99 %8.2f ms",
+                step,
+                count,
+                failures(),
+                elapsedSeconds == 0 ? 0 : count / elapsedSeconds,
+                percentileMillis(50),
+                percentileMillis(95),
+                percentileMillis(99));
+    }
+}
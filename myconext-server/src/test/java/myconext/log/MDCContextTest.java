@@ -0,0 +1,94 @@
+package myconext.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import myconext.model.User;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.Map;
+
+import static myconext.log.MDCContext.*;
+import static org.junit.Assert.*;
+
+public class MDCContextTest {
+
+    private static final Log LOG = LogFactory.getLog(MDCContextTest.class);
+
+    @After
+    public void after() {
+        MDC.clear();
+    }
+
+    @Test
+    public void loginStatsAreRemovedFromMDC() {
+        Logger logger = (Logger) LoggerFactory.getLogger(MDCContextTest.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                //Like the AsyncAppender, take a copy of the MDC on the logging thread
+                event.prepareForDeferredProcessing();
+                super.append(event);
+            }
+        };
+        appender.start();
+        logger.addAppender(appender);
+        //logback-test.xml turns logging off
+        logger.setLevel(Level.INFO);
+        try {
+            User user = new User();
+            user.setEmail("jdoe@example.org");
+            logLoginWithContext(user, "password", false, LOG, "Login");
+
+            ILoggingEvent event = appender.list.get(0);
+            Map<String, String> mdc = event.getMDCPropertyMap();
+            assertEquals(LOGIN_STATS_TAG, mdc.get(TAG));
+            assertEquals("jdoe@example.org", mdc.get(USER_ID));
+            assertEquals("error", mdc.get("result"));
+
+            LoginStatsFilter filter = new LoginStatsFilter();
+            filter.setOnMatch(FilterReply.ACCEPT);
+            filter.setOnMismatch(FilterReply.DENY);
+            filter.start();
+            assertEquals(FilterReply.ACCEPT, filter.decide(event));
+
+            assertNull(MDC.get(TAG));
+            assertNull(MDC.get(USER_ID));
+            assertNull(MDC.get("login_method"));
+        } finally {
+            logger.setLevel(null);
+            logger.detachAppender(appender);
+        }
+    }
+
+    @Test
+    public void existingMDCIsKept() {
+        MDC.put(USER_ID, "other@example.org");
+        logWithContext(null, "update", "user", LOG, "Update");
+        assertEquals("other@example.org", MDC.get(USER_ID));
+        assertNull(MDC.get("action"));
+    }
+
+    @Test
+    public void debugSampling() {
+        Logger logger = new LoggerContext().getLogger("myconext");
+        DebugSamplingTurboFilter filter = new DebugSamplingTurboFilter();
+        filter.setSampleRate(0);
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "", null, null));
+
+        MDC.put(TRACE_ID, "0af7651916cd43dd8448eb211c80319c");
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.DEBUG, "", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.INFO, "", null, null));
+
+        filter.setSampleRate(1);
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "", null, null));
+    }
+}
@@ -0,0 +1,50 @@
+package myconext.log;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static myconext.log.MDCContext.TRACE_ID;
+import static myconext.log.MDCContext.USER_ID;
+import static org.junit.Assert.*;
+
+public class MDCFilterTest {
+
+    @After
+    public void after() {
+        MDC.clear();
+    }
+
+    @Test
+    public void traceIdIsLeftToTheTracingFilter() throws Exception {
+        //Put by the TracingFilter which wraps the MDCFilter
+        MDC.put(TRACE_ID, "0af7651916cd43dd8448eb211c80319c");
+        MDC.put(USER_ID, "stale@example.org");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        String sessionId = request.getSession(true).getId();
+        AtomicReference<String> sessionIdDuringRequest = new AtomicReference<>();
+
+        new MDCFilter().doFilter(request, new MockHttpServletResponse(),
+                new MockFilterChain(new HttpServlet() {
+                    @Override
+                    protected void service(HttpServletRequest req, HttpServletResponse res) {
+                        sessionIdDuringRequest.set(MDC.get("session_id"));
+                        assertNull(MDC.get(USER_ID));
+                    }
+                }));
+
+        assertEquals(sessionId, sessionIdDuringRequest.get());
+        assertNull(MDC.get("session_id"));
+        assertNull(MDC.get(USER_ID));
+        assertEquals("0af7651916cd43dd8448eb211c80319c", MDC.get(TRACE_ID));
+    }
+}
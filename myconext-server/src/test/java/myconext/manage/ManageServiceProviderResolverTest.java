@@ -4,6 +4,7 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import myconext.model.ServiceProvider;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
 
@@ -18,7 +19,7 @@ public class ManageServiceProviderResolverTest {
     public static WireMockRule wireMockRule = new WireMockRule(8999);
 
     private ServiceProviderResolver subject =
-            new ManageServiceProviderResolver("user", "secret", "http://localhost:8999");
+            new ManageServiceProviderResolver(new RestTemplate(), "user", "secret", "http://localhost:8999");
 
     @Test
     public void resolveLocally() throws IOException {
@@ -0,0 +1,43 @@
+package myconext.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoginMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LoginStatsRollup loginStatsRollup = new LoginStatsRollup();
+    private final LoginMetrics loginMetrics = new LoginMetrics(meterRegistry, loginStatsRollup);
+
+    @Test
+    public void flow() {
+        Timer.Sample sample = loginMetrics.start();
+        loginMetrics.flow(sample, "sso", LoginMetrics.OK);
+        loginMetrics.flow(loginMetrics.start(), "sso", LoginMetrics.OK);
+        loginMetrics.flow(loginMetrics.start(), "sso", LoginMetrics.ERROR);
+
+        assertEquals(2L, meterRegistry.get("myconext.idp.flow").tags("flow", "sso", "outcome", "ok").timer().count());
+        assertEquals(1L, meterRegistry.get("myconext.idp.flow").tags("flow", "sso", "outcome", "error").timer().count());
+    }
+
+    @Test
+    public void login() {
+        loginMetrics.login("password", "https://sp", true);
+        loginMetrics.login("password", "https://sp", false);
+        loginMetrics.login("password", "https://sp", false);
+
+        assertEquals(1D, meterRegistry.get("myconext.login").tags("method", "password", "outcome", "ok").counter().count(), 0D);
+        assertEquals(2D, meterRegistry.get("myconext.login").tags("method", "password", "outcome", "error").counter().count(), 0D);
+        assertEquals(2, loginStatsRollup.drain().size());
+    }
+
+    @Test
+    public void stepUp() {
+        loginMetrics.stepUp("started");
+
+        assertEquals(1D, meterRegistry.get("myconext.idp.stepup").tag("outcome", "started").counter().count(), 0D);
+    }
+}
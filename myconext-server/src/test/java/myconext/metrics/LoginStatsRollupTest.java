@@ -0,0 +1,48 @@
+package myconext.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoginStatsRollupTest {
+
+    private final LoginStatsRollup loginStatsRollup = new LoginStatsRollup();
+
+    @Test
+    public void drain() {
+        loginStatsRollup.record("password", "https://sp", true);
+        loginStatsRollup.record("password", "https://sp", true);
+        loginStatsRollup.record("password", "https://sp", false);
+        loginStatsRollup.record("magiclink", null, false);
+
+        Map<LoginStatsRollup.Key, Long> counts = loginStatsRollup.drain();
+        assertEquals(3, counts.size());
+        assertEquals(2L, count(counts, "password", "https://sp", LoginMetrics.OK));
+        assertEquals(1L, count(counts, "password", "https://sp", LoginMetrics.ERROR));
+        assertEquals(1L, count(counts, "magiclink", LoginStatsRollup.UNKNOWN_REQUESTER, LoginMetrics.ERROR));
+
+        assertTrue(loginStatsRollup.drain().isEmpty());
+    }
+
+    @Test
+    public void restore() {
+        loginStatsRollup.record("webauthn", "https://sp", true);
+        Map<LoginStatsRollup.Key, Long> counts = loginStatsRollup.drain();
+        counts.forEach(loginStatsRollup::restore);
+        loginStatsRollup.record("webauthn", "https://sp", true);
+
+        assertEquals(2L, count(loginStatsRollup.drain(), "webauthn", "https://sp", LoginMetrics.OK));
+    }
+
+    private long count(Map<LoginStatsRollup.Key, Long> counts, String loginMethod, String requesterEntityId, String outcome) {
+        return counts.entrySet().stream()
+                .filter(entry -> entry.getKey().getLoginMethod().equals(loginMethod)
+                        && entry.getKey().getRequesterEntityId().equals(requesterEntityId)
+                        && entry.getKey().getOutcome().equals(outcome))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+}
@@ -0,0 +1,112 @@
+package myconext.mongo;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SlowCommandListenerTest {
+
+    private final ConnectionDescription connectionDescription =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    @Test
+    public void shapeRedactsValues() {
+        BsonDocument find = BsonDocument.parse("{find: 'users', filter: {email: 'jdoe@example.org', " +
+                "$or: [{uid: 'x'}, {'linkedAccounts.eduPersonPrincipalName': {$in: ['a', 'b']}}]}, $db: 'surf_id'}");
+        assertEquals("{\"email\": \"?\", \"$or\": [{\"uid\": \"?\"}, {\"linkedAccounts.eduPersonPrincipalName\": {\"$in\": \"?\"}}]}",
+                SlowCommandListener.shape("find", find));
+
+        BsonDocument update = BsonDocument.parse("{update: 'users', updates: [{q: {_id: 1}, u: {$set: {name: 'x'}}}]}");
+        assertEquals("{\"_id\": \"?\"}", SlowCommandListener.shape("update", update));
+
+        BsonDocument aggregate = BsonDocument.parse("{aggregate: 'users', pipeline: [{$match: {created: {$gt: 1}}}, {$count: 'c'}]}");
+        assertEquals("[{\"$match\": {\"created\": {\"$gt\": \"?\"}}}, {\"$count\": \"?\"}]",
+                SlowCommandListener.shape("aggregate", aggregate));
+
+        assertEquals("{}", SlowCommandListener.shape("count", BsonDocument.parse("{count: 'users'}")));
+    }
+
+    @Test
+    public void stages() {
+        Document plan = Document.parse("{stage: 'FETCH', inputStage: {stage: 'IXSCAN', indexName: 'email_1'}}");
+        List<String> stages = new ArrayList<>();
+        SlowCommandListener.stages(plan, stages);
+        assertEquals(Arrays.asList("FETCH", "IXSCAN email_1"), stages);
+
+        stages.clear();
+        SlowCommandListener.stages(Document.parse("{stage: 'SORT', inputStage: {stage: 'COLLSCAN'}}"), stages);
+        assertEquals(Arrays.asList("SORT", "COLLSCAN"), stages);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void slowCommands() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SlowCommandListener listener = new SlowCommandListener(100, 0, 1, 60, mock(ObjectProvider.class), meterRegistry);
+        BsonDocument find = BsonDocument.parse("{find: 'users', filter: {email: 'jdoe@example.org'}}");
+
+        listener.commandStarted(new CommandStartedEvent(1, connectionDescription, "surf_id", "find", find));
+        listener.commandSucceeded(new CommandSucceededEvent(1, connectionDescription, "find", new BsonDocument(),
+                TimeUnit.MILLISECONDS.toNanos(5)));
+        listener.commandStarted(new CommandStartedEvent(2, connectionDescription, "surf_id", "find", find));
+        listener.commandSucceeded(new CommandSucceededEvent(2, connectionDescription, "find", new BsonDocument(),
+                TimeUnit.MILLISECONDS.toNanos(250)));
+        //Not a query, never slow
+        listener.commandStarted(new CommandStartedEvent(3, connectionDescription, "surf_id", "insert",
+                BsonDocument.parse("{insert: 'users'}")));
+        listener.commandSucceeded(new CommandSucceededEvent(3, connectionDescription, "insert", new BsonDocument(),
+                TimeUnit.MILLISECONDS.toNanos(250)));
+
+        assertEquals(1, meterRegistry.find("myconext.mongo.slow.commands").counters().size());
+        assertEquals(1.0, meterRegistry.get("myconext.mongo.slow.commands")
+                .tag("collection", "users").tag("command", "find").counter().count(), 0);
+        assertEquals(0.0, meterRegistry.get("myconext.mongo.slow.explains").tag("outcome", "index").counter().count(), 0);
+        listener.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void explainSampledWriteAsFind() {
+        MongoDatabase database = mock(MongoDatabase.class);
+        when(database.runCommand(any(Bson.class))).thenReturn(
+                Document.parse("{queryPlanner: {winningPlan: {stage: 'IXSCAN', indexName: '_id_'}}}"));
+        MongoDatabaseFactory mongoDatabaseFactory = mock(MongoDatabaseFactory.class);
+        when(mongoDatabaseFactory.getMongoDatabase("surf_id")).thenReturn(database);
+        ObjectProvider<MongoDatabaseFactory> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(mongoDatabaseFactory);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SlowCommandListener listener = new SlowCommandListener(100, 1, 1, 60, provider, meterRegistry);
+        BsonDocument update = BsonDocument.parse("{update: 'users', updates: [{q: {_id: 1}, u: {email: 'jdoe@example.org'}}]}");
+
+        listener.commandStarted(new CommandStartedEvent(1, connectionDescription, "surf_id", "update", update));
+        listener.commandSucceeded(new CommandSucceededEvent(1, connectionDescription, "update", new BsonDocument(),
+                TimeUnit.MILLISECONDS.toNanos(250)));
+
+        //The replacement document is never copied, the write is explained as a find with its filter
+        ArgumentCaptor<Bson> explain = ArgumentCaptor.forClass(Bson.class);
+        verify(database, timeout(5000)).runCommand(explain.capture());
+        assertEquals(BsonDocument.parse("{explain: {find: 'users', filter: {_id: 1}}, verbosity: 'queryPlanner'}"), explain.getValue());
+        listener.destroy();
+    }
+}
@@ -0,0 +1,92 @@
+package myconext.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import myconext.AbstractIntegrationTest;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class UserLoginsCollectionMigrationTest extends AbstractIntegrationTest {
+
+    @After
+    public void after() {
+        UserLoginsCollection.applyRetention(mongoTemplate.getDb(), 365);
+    }
+
+    @Test
+    public void applyChangedRetention() {
+        MongoDatabase database = mongoTemplate.getDb();
+        UserLoginsCollection.applyRetention(database, 30);
+        UserLoginsCollection.applyRetention(database, 60);
+
+        assertEquals(TimeUnit.DAYS.toSeconds(60), expireAfterSeconds(database));
+    }
+
+    @Test
+    public void backfillCreated() {
+        MongoDatabase database = mongoTemplate.getDb();
+        assumeFalse(UserLoginsCollection.isTimeSeries(database));
+        MongoCollection<Document> userLogins = database.getCollection(UserLoginsCollection.COLLECTION_NAME);
+        userLogins.deleteMany(new Document("userId", "legacy"));
+        ObjectId objectId = new ObjectId(new Date(1_600_000_000_000L));
+        userLogins.insertOne(new Document("_id", objectId).append("userId", "legacy"));
+        userLogins.insertOne(new Document("_id", "legacy-string-id").append("userId", "legacy"));
+
+        UserLoginsCollection.backfillCreated(database);
+
+        assertEquals(new Date(1_600_000_000_000L), userLogins.find(new Document("_id", objectId)).first().get("created"));
+        assertNotNull(userLogins.find(new Document("_id", "legacy-string-id")).first().get("created"));
+        assertEquals(0, userLogins.countDocuments(new Document("created", new Document("$exists", false))));
+    }
+
+    @Test
+    public void resumeInterruptedMigration() {
+        MongoDatabase database = mongoTemplate.getDb();
+        assumeTrue(UserLoginsCollection.timeSeriesSupported(database));
+        //Interrupted after the rename, the creation and the copy of the first login
+        database.getCollection(UserLoginsCollection.COLLECTION_NAME).drop();
+        MongoCollection<Document> legacy = database.getCollection("user_logins_legacy");
+        for (int i = 0; i < 3; i++) {
+            legacy.insertOne(new Document("_id", new ObjectId()).append("userId", "legacy"));
+        }
+        database.createCollection(UserLoginsCollection.COLLECTION_NAME, new CreateCollectionOptions()
+                .timeSeriesOptions(new TimeSeriesOptions(UserLoginsCollection.TIME_FIELD)
+                        .metaField(UserLoginsCollection.META_FIELD)
+                        .granularity(TimeSeriesGranularity.HOURS)));
+        MongoCollection<Document> userLogins = database.getCollection(UserLoginsCollection.COLLECTION_NAME);
+        userLogins.insertOne(UserLoginsCollection.fromLegacy(legacy.find().sort(new Document("_id", 1)).first()));
+
+        UserLoginsCollection.create(database);
+
+        assertTrue(UserLoginsCollection.isTimeSeries(database));
+        assertEquals(3, userLogins.countDocuments(new Document("userId", "legacy")));
+        assertFalse(StreamSupport.stream(database.listCollectionNames().spliterator(), false)
+                .anyMatch(name -> name.equals("user_logins_legacy")));
+    }
+
+    private long expireAfterSeconds(MongoDatabase database) {
+        if (UserLoginsCollection.isTimeSeries(database)) {
+            Document collection = database.listCollections()
+                    .filter(new Document("name", UserLoginsCollection.COLLECTION_NAME)).first();
+            return ((Number) collection.get("options", Document.class).get("expireAfterSeconds")).longValue();
+        }
+        Document index = StreamSupport.stream(database.getCollection(UserLoginsCollection.COLLECTION_NAME).listIndexes().spliterator(), false)
+                .filter(document -> "created_ttl".equals(document.getString("name")))
+                .findFirst()
+                .get();
+        return ((Number) index.get("expireAfterSeconds")).longValue();
+    }
+}
@@ -0,0 +1,43 @@
+package myconext.mongo;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class UserLoginsCollectionTest {
+
+    @Test
+    public void fromLegacy() {
+        ObjectId id = new ObjectId(new Date(1_600_000_000_000L));
+        Document legacy = new Document("_id", id)
+                .append("uuid", "8a2b5ee9-2a57-4c1b-9a16-3c4a6b6a0d6e")
+                .append("userId", "user_id")
+                .append("userAgent", "Firefox")
+                .append("ipAddress", "127.0.0.1")
+                .append("_class", "myconext.model.UserLogin");
+
+        Document userLogin = UserLoginsCollection.fromLegacy(legacy);
+
+        assertEquals(id, userLogin.get("_id"));
+        assertEquals(new Date(1_600_000_000_000L), userLogin.get("created"));
+        assertEquals("user_id", userLogin.get("userId"));
+        assertEquals("Firefox", userLogin.get("userAgent"));
+        assertFalse(userLogin.containsKey("uuid"));
+        assertFalse(userLogin.containsKey("forwardedFor"));
+        assertFalse(userLogin.containsKey("_class"));
+    }
+
+    @Test
+    public void supportsMetaFieldDeletes() {
+        assertFalse(UserLoginsCollection.supportsMetaFieldDeletes("4.4.13"));
+        assertFalse(UserLoginsCollection.supportsMetaFieldDeletes("5.0.9"));
+        assertTrue(UserLoginsCollection.supportsMetaFieldDeletes("5.1.0"));
+        assertTrue(UserLoginsCollection.supportsMetaFieldDeletes("6.0.1-rc0"));
+        assertTrue(UserLoginsCollection.supportsMetaFieldDeletes("7.0.0"));
+        assertFalse(UserLoginsCollection.supportsMetaFieldDeletes(null));
+    }
+}
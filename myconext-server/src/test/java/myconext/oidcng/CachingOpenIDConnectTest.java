@@ -0,0 +1,75 @@
+package myconext.oidcng;
+
+import myconext.model.TokenRepresentation;
+import myconext.model.TokenType;
+import myconext.model.User;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingOpenIDConnectTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final OpenIDConnect delegate = new OpenIDConnect() {
+        @Override
+        public List<Map<String, Object>> tokens(User user) {
+            if (user.getId().equals("error")) {
+                calls.incrementAndGet();
+                throw new IllegalStateException("oidcng down");
+            }
+            return Collections.singletonList(Collections.singletonMap("call", calls.incrementAndGet()));
+        }
+
+        @Override
+        public HttpStatus deleteTokens(List<TokenRepresentation> tokenIdentifiers, User user) {
+            return HttpStatus.NO_CONTENT;
+        }
+    };
+    private final CachingOpenIDConnect openIDConnect = new CachingOpenIDConnect(delegate, 60);
+
+    @Test
+    public void tokensCached() {
+        assertEquals(1, openIDConnect.tokens(user("1")).get(0).get("call"));
+        assertEquals(1, openIDConnect.tokens(user("1")).get(0).get("call"));
+        assertEquals(2, openIDConnect.tokens(user("2")).get(0).get("call"));
+    }
+
+    @Test
+    public void deleteTokensEvicts() {
+        openIDConnect.tokens(user("1"));
+        openIDConnect.deleteTokens(Arrays.asList(new TokenRepresentation("id", TokenType.ACCESS)), user("1"));
+
+        assertEquals(2, openIDConnect.tokens(user("1")).get(0).get("call"));
+    }
+
+    @Test
+    public void tokensDeletedOnAnotherNode() throws InterruptedException {
+        assertEquals(1, openIDConnect.tokens(user("1")).get(0).get("call"));
+        Thread.sleep(5);
+        //Deleted on another node, this node still has the tokens cached
+        long deletedAt = System.currentTimeMillis();
+        Thread.sleep(5);
+        assertEquals(2, openIDConnect.tokens(user("1"), deletedAt).get(0).get("call"));
+        assertEquals(2, openIDConnect.tokens(user("1"), deletedAt).get(0).get("call"));
+        assertEquals(2, openIDConnect.tokens(user("1")).get(0).get("call"));
+    }
+
+    @Test
+    public void failuresNotCached() {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> openIDConnect.tokens(user("error")));
+        }
+        assertEquals(2, calls.get());
+    }
+
+    private User user(String id) {
+        User user = new User();
+        ReflectionTestUtils.setField(user, "id", id);
+        return user;
+    }
+}
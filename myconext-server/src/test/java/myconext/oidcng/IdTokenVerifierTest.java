@@ -0,0 +1,146 @@
+package myconext.oidcng;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class IdTokenVerifierTest {
+
+    private static final String ISSUER = "http://localhost:8392";
+    private static final String CLIENT_ID = "myconext.rp.localhost";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8392);
+
+    private final IdTokenVerifier idTokenVerifier = new IdTokenVerifier(new RestTemplate(),
+            ISSUER + "/oidc/.well-known/openid-configuration", CLIENT_ID, 0L);
+
+    private RSAKey rsaKey;
+
+    @Before
+    public void before() throws JOSEException {
+        stubFor(get(urlPathEqualTo("/oidc/.well-known/openid-configuration")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"issuer\":\"" + ISSUER + "\"," +
+                        "\"jwks_uri\":\"" + ISSUER + "/oidc/certs\"," +
+                        "\"subject_types_supported\":[\"public\"]," +
+                        "\"response_types_supported\":[\"code\"]," +
+                        "\"id_token_signing_alg_values_supported\":[\"RS256\"]}")));
+        rsaKey = rotateKey("key_1");
+    }
+
+    @Test
+    public void claims() throws JOSEException {
+        Map<String, Object> claims = idTokenVerifier.claims(idToken(rsaKey, CLIENT_ID)).get();
+
+        assertEquals("mdoe@example.com", claims.get("eduperson_principal_name"));
+        assertEquals(Arrays.asList("student", "member"), claims.get("eduperson_affiliation"));
+        verify(1, getRequestedFor(urlPathEqualTo("/oidc/.well-known/openid-configuration")));
+
+        idTokenVerifier.claims(idToken(rsaKey, CLIENT_ID)).get();
+        verify(1, getRequestedFor(urlPathEqualTo("/oidc/certs")));
+    }
+
+    @Test
+    public void claimsInvalid() throws JOSEException {
+        assertFalse(idTokenVerifier.claims(idToken(rsaKey, "other.rp")).isPresent());
+        assertFalse(idTokenVerifier.claims(idToken(new RSAKeyGenerator(2048).keyID("key_1").generate(), CLIENT_ID)).isPresent());
+        assertFalse(idTokenVerifier.claims("nope").isPresent());
+        assertFalse(idTokenVerifier.claims(null).isPresent());
+    }
+
+    @Test
+    public void claimsRotatedKey() throws JOSEException {
+        assertTrue(idTokenVerifier.claims(idToken(rsaKey, CLIENT_ID)).isPresent());
+
+        RSAKey rotatedKey = rotateKey("key_2");
+        Optional<Map<String, Object>> claims = idTokenVerifier.claims(idToken(rotatedKey, CLIENT_ID));
+
+        assertTrue(claims.isPresent());
+        verify(2, getRequestedFor(urlPathEqualTo("/oidc/certs")));
+        verify(1, getRequestedFor(urlPathEqualTo("/oidc/.well-known/openid-configuration")));
+    }
+
+    @Test
+    public void loadKeysAtStartup() throws JOSEException {
+        idTokenVerifier.loadKeys();
+        verify(1, getRequestedFor(urlPathEqualTo("/oidc/certs")));
+
+        assertTrue(idTokenVerifier.claims(idToken(rsaKey, CLIENT_ID)).isPresent());
+        verify(1, getRequestedFor(urlPathEqualTo("/oidc/certs")));
+    }
+
+    @Test
+    public void missingKeysRefreshRateLimited() throws JOSEException {
+        stubFor(get(urlPathEqualTo("/oidc/.well-known/openid-configuration")).willReturn(aResponse().withStatus(503)));
+        IdTokenVerifier rateLimitedVerifier = new IdTokenVerifier(new RestTemplate(),
+                ISSUER + "/oidc/.well-known/openid-configuration", CLIENT_ID, 60_000L);
+
+        assertFalse(rateLimitedVerifier.claims(idToken(rsaKey, CLIENT_ID)).isPresent());
+        assertFalse(rateLimitedVerifier.claims(idToken(rsaKey, CLIENT_ID)).isPresent());
+        verify(1, getRequestedFor(urlPathEqualTo("/oidc/.well-known/openid-configuration")));
+    }
+
+    @Test
+    public void noWaitForRefreshInProgress() throws Exception {
+        stubFor(get(urlPathEqualTo("/oidc/certs")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody(new JWKSet(rsaKey.toPublicJWK()).toString())
+                .withFixedDelay(2_000)));
+        Thread refresh = new Thread(idTokenVerifier::refresh);
+        refresh.start();
+        await().atMost(1, TimeUnit.SECONDS).until(() -> !findAll(getRequestedFor(urlPathEqualTo("/oidc/.well-known/openid-configuration"))).isEmpty());
+
+        //Falls back to the userinfo endpoint instead of waiting for the refresh
+        long start = System.currentTimeMillis();
+        assertFalse(idTokenVerifier.claims(idToken(rsaKey, CLIENT_ID)).isPresent());
+        assertTrue(System.currentTimeMillis() - start < 1_000);
+
+        refresh.join();
+        assertTrue(idTokenVerifier.claims(idToken(rsaKey, CLIENT_ID)).isPresent());
+    }
+
+    private RSAKey rotateKey(String keyId) throws JOSEException {
+        RSAKey key = new RSAKeyGenerator(2048).keyID(keyId).generate();
+        stubFor(get(urlPathEqualTo("/oidc/certs")).willReturn(aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody(new JWKSet(key.toPublicJWK()).toString())));
+        return key;
+    }
+
+    private String idToken(RSAKey key, String audience) throws JOSEException {
+        JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("mdoe")
+                .audience(audience)
+                .issueTime(new Date())
+                .expirationTime(new Date(System.currentTimeMillis() + 60_000))
+                .claim("eduperson_principal_name", "mdoe@example.com")
+                .claim("eduperson_affiliation", Arrays.asList("student", "member"))
+                .build();
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claimsSet);
+        signedJWT.sign(new RSASSASigner(key));
+        return signedJWT.serialize();
+    }
+}
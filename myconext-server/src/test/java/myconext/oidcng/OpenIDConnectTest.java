@@ -32,6 +32,7 @@ import static org.junit.Assert.assertTrue;
                 "sp_entity_metadata_url=https://engine.test.surfconext.nl/authentication/sp/metadata",
                 "spring.main.lazy-initialization=true",
                 "oidc-token-api.token-url=http://localhost:8098/tokens",
+                "oidc-token-api.cache-ttl-seconds=0",
         })
 public class OpenIDConnectTest extends AbstractIntegrationTest {
 
@@ -2,16 +2,53 @@ package myconext.security;
 
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
 
 public class EmailGuessingPreventionTest {
 
-    private EmailGuessingPrevention subject = new EmailGuessingPrevention(0);
+    private EmailGuessingPrevention subject = new EmailGuessingPrevention(0, 0);
 
     @Test
     public void sanitizeEmail() {
         assertNull(subject.sanitizeEmail(null));
         assertEquals("jdoe@example.com", subject.sanitizeEmail("jdoe@example.com   "));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void potentialUserEmailGuess() {
+        EmailGuessingPrevention prevention = new EmailGuessingPrevention(100, 50);
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future = prevention.potentialUserEmailGuess(() -> "result");
+        assertFalse(future.isDone());
+
+        assertEquals("result", future.join());
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void potentialUserEmailGuessException() {
+        EmailGuessingPrevention prevention = new EmailGuessingPrevention(100, 0);
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future = prevention.potentialUserEmailGuess(() -> {
+            throw new IllegalArgumentException();
+        });
+        try {
+            future.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void destroy() {
+        EmailGuessingPrevention prevention = new EmailGuessingPrevention(100, 0);
+        prevention.destroy();
+        prevention.potentialUserEmailGuess(() -> "result");
+    }
+}
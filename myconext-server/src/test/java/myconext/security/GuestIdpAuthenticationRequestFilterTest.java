@@ -1,7 +1,10 @@
 package myconext.security;
 
 import myconext.AbstractIntegrationTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import myconext.manage.MockServiceProviderResolver;
+import myconext.metrics.LoginMetrics;
+import myconext.metrics.LoginStatsRollup;
 import myconext.model.LinkedAccount;
 import myconext.model.User;
 import myconext.repository.UserLoginRepository;
@@ -39,7 +42,8 @@ public class GuestIdpAuthenticationRequestFilterTest {
             null,
             null,
             expiryNonValidatedDurationDays,
-            removalNonValidatedDurationDays);
+            removalNonValidatedDurationDays,
+            new LoginMetrics(new SimpleMeterRegistry(), new LoginStatsRollup()));
 
     @Test
     public void isUserVerifiedByInstitutionNoLinkedAccounts() {
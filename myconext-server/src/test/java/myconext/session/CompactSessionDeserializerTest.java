@@ -0,0 +1,54 @@
+package myconext.session;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.User;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+public class CompactSessionDeserializerTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private CompactSessionDeserializer compactSessionDeserializer;
+
+    private final CompactSessionSerializer compactSessionSerializer = new CompactSessionSerializer();
+
+    @Test
+    public void principalRebuiltAfterUpdate() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        byte[] bytes = compactSessionSerializer.convert(CompactSessionSerializerTest.attributes(
+                new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities())));
+        assertEquals(user.getGivenName(), principal(bytes).getGivenName());
+
+        user.setGivenName("Changed");
+        userRepository.save(user);
+
+        assertEquals("Changed", principal(bytes).getGivenName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void unauthenticatedAfterDelete() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        byte[] bytes = compactSessionSerializer.convert(CompactSessionSerializerTest.attributes(
+                new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities())));
+        assertEquals(user.getId(), principal(bytes).getId());
+
+        userRepository.delete(user);
+
+        Map<String, Object> attributes = (Map<String, Object>) compactSessionDeserializer.convert(bytes);
+        assertFalse(attributes.containsKey(SPRING_SECURITY_CONTEXT_KEY));
+    }
+
+    @SuppressWarnings("unchecked")
+    private User principal(byte[] bytes) {
+        Map<String, Object> attributes = (Map<String, Object>) compactSessionDeserializer.convert(bytes);
+        return (User) ((SecurityContext) attributes.get(SPRING_SECURITY_CONTEXT_KEY)).getAuthentication().getPrincipal();
+    }
+}
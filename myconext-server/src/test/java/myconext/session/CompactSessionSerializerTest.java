@@ -0,0 +1,140 @@
+package myconext.session;
+
+import myconext.manage.MockServiceProviderResolver;
+import myconext.model.LinkedAccountTest;
+import myconext.model.User;
+import myconext.repository.UserRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+public class CompactSessionSerializerTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final CompactSessionSerializer serializer = new CompactSessionSerializer();
+    private final CompactSessionDeserializer deserializer = new CompactSessionDeserializer(userRepository, 60);
+
+    @Test
+    public void roundTripPreAuthenticated() {
+        User user = user();
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+
+        Map<String, Object> attributes = attributes(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities()));
+        byte[] bytes = serializer.convert(attributes);
+        assertTrue(bytes.length < new SerializingConverter().convert(attributes).length);
+
+        Authentication authentication = authentication(deserializer.convert(bytes));
+        assertEquals(PreAuthenticatedAuthenticationToken.class, authentication.getClass());
+        assertTrue(authentication.isAuthenticated());
+        assertEquals("N/A", authentication.getCredentials());
+        assertEquals(user.getId(), ((User) authentication.getPrincipal()).getId());
+        assertEquals(1, authentication.getAuthorities().size());
+        assertEquals("value", ((Map<String, Object>) deserializer.convert(bytes)).get("other"));
+        //Second rehydration is served from the cache
+        verify(userRepository, times(1)).findById(user.getId());
+    }
+
+    @Test
+    public void roundTripUsernamePassword() {
+        User user = user();
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+
+        byte[] bytes = serializer.convert(attributes(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+
+        Authentication authentication = authentication(deserializer.convert(bytes));
+        assertEquals(UsernamePasswordAuthenticationToken.class, authentication.getClass());
+        assertTrue(authentication.isAuthenticated());
+        assertEquals(user.getEmail(), ((User) authentication.getPrincipal()).getEmail());
+    }
+
+    @Test
+    public void deletedUser() {
+        User user = user();
+        when(userRepository.findById(user.getId())).thenReturn(Optional.empty());
+
+        byte[] bytes = serializer.convert(attributes(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities())));
+
+        Map<String, Object> attributes = (Map<String, Object>) deserializer.convert(bytes);
+        assertFalse(attributes.containsKey(SPRING_SECURITY_CONTEXT_KEY));
+        assertEquals("value", attributes.get("other"));
+    }
+
+    @Test
+    public void rebuiltAfterUpdate() {
+        User user = user();
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        byte[] bytes = serializer.convert(attributes(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities())));
+        assertEquals("John", ((User) authentication(deserializer.convert(bytes)).getPrincipal()).getGivenName());
+
+        User updated = user();
+        updated.setGivenName("Jane");
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(updated));
+        deserializer.onAfterSave(new AfterSaveEvent<>(updated, new Document(), "users"));
+
+        assertEquals("Jane", ((User) authentication(deserializer.convert(bytes)).getPrincipal()).getGivenName());
+        verify(userRepository, times(2)).findById(user.getId());
+    }
+
+    @Test
+    public void unauthenticatedAfterDelete() {
+        User user = user();
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        byte[] bytes = serializer.convert(attributes(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities())));
+        assertNotNull(authentication(deserializer.convert(bytes)));
+
+        when(userRepository.findById(user.getId())).thenReturn(Optional.empty());
+        deserializer.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", new ObjectId(user.getId())), User.class, "users"));
+
+        assertFalse(((Map<String, Object>) deserializer.convert(bytes)).containsKey(SPRING_SECURITY_CONTEXT_KEY));
+    }
+
+    @Test
+    public void unauthenticated() {
+        Map<String, Object> attributes = attributes(new UsernamePasswordAuthenticationToken("anonymous", null));
+        Map<String, Object> result = (Map<String, Object>) deserializer.convert(serializer.convert(attributes));
+
+        assertEquals("anonymous", authentication(result).getPrincipal());
+        verifyNoInteractions(userRepository);
+    }
+
+    static User user() {
+        User user = new User("uid", "jdoe@example.com", "John", "Doe", "example.com", "en",
+                "http://mock-sp", new MockServiceProviderResolver());
+        ReflectionTestUtils.setField(user, "id", "5f0c4d2e8e4b2a6d3c1b0a99");
+        IntStream.range(0, 10).forEach(i ->
+                user.computeEduIdForServiceProviderIfAbsent("http://mock-sp-" + i, new MockServiceProviderResolver()));
+        IntStream.range(0, 3).forEach(i ->
+                user.getLinkedAccounts().add(LinkedAccountTest.linkedAccount("John", "Doe", new Date())));
+        return user;
+    }
+
+    static Map<String, Object> attributes(Authentication authentication) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(authentication));
+        attributes.put("other", "value");
+        return attributes;
+    }
+
+    private Authentication authentication(Object attributes) {
+        return ((SecurityContext) ((Map<String, Object>) attributes).get(SPRING_SECURITY_CONTEXT_KEY)).getAuthentication();
+    }
+}
@@ -0,0 +1,107 @@
+package myconext.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
+import org.springframework.session.data.mongo.MongoSession;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WriteAvoidingSessionRepositoryTest {
+
+    private final MongoIndexedSessionRepository delegate = mock(MongoIndexedSessionRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WriteAvoidingSessionRepository repository =
+            new WriteAvoidingSessionRepository(delegate, mongoTemplate, "sessions", Duration.ofSeconds(60), meterRegistry);
+
+    @Test
+    public void newSessionIsWritten() {
+        when(delegate.createSession()).thenReturn(new MongoSession());
+
+        repository.save(repository.createSession());
+
+        verify(delegate).save(any(MongoSession.class));
+        assertEquals(1D, saves("full"), 0D);
+    }
+
+    @Test
+    public void unchangedSessionIsNotWritten() {
+        WriteAvoidingSessionRepository.TrackedSession session = existingSession();
+        session.getAttribute("key");
+        session.setLastAccessedTime(session.getLastAccessedTime().plusSeconds(10));
+
+        repository.save(session);
+
+        verify(delegate, never()).save(any(MongoSession.class));
+        verifyNoInteractions(mongoTemplate);
+        assertEquals(1D, saves("skipped"), 0D);
+        assertEquals(0D, saves("last_accessed"), 0D);
+    }
+
+    @Test
+    public void lastAccessedTimeIsThrottled() {
+        WriteAvoidingSessionRepository.TrackedSession session = existingSession();
+        Instant lastAccessedTime = session.getLastAccessedTime().plusSeconds(61);
+        session.setLastAccessedTime(lastAccessedTime);
+
+        repository.save(session);
+        repository.save(session);
+
+        verify(delegate, never()).save(any(MongoSession.class));
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq("sessions"));
+        assertEquals(1D, saves("last_accessed"), 0D);
+        assertEquals(1D, saves("skipped"), 0D);
+    }
+
+    @Test
+    public void changedAttributesAreWritten() {
+        WriteAvoidingSessionRepository.TrackedSession session = existingSession();
+        session.setAttribute("key", "changed");
+        repository.save(session);
+
+        session.removeAttribute("nope");
+        repository.save(session);
+
+        session.removeAttribute("key");
+        repository.save(session);
+
+        verify(delegate, times(2)).save(any(MongoSession.class));
+        assertEquals(1D, saves("skipped"), 0D);
+    }
+
+    @Test
+    public void changedSessionIdIsWritten() {
+        WriteAvoidingSessionRepository.TrackedSession session = existingSession();
+        session.changeSessionId();
+
+        repository.save(session);
+
+        verify(delegate).save(any(MongoSession.class));
+    }
+
+    @Test
+    public void findById() {
+        assertNull(repository.findById("nope"));
+    }
+
+    private WriteAvoidingSessionRepository.TrackedSession existingSession() {
+        MongoSession mongoSession = new MongoSession();
+        mongoSession.setAttribute("key", "value");
+        when(delegate.findById(mongoSession.getId())).thenReturn(mongoSession);
+        return repository.findById(mongoSession.getId());
+    }
+
+    private double saves(String write) {
+        return meterRegistry.get("myconext.session.saves").tag("write", write).counter().count();
+    }
+}
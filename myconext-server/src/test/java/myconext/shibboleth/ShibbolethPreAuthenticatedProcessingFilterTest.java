@@ -6,18 +6,22 @@ import myconext.AbstractIntegrationTest;
 import myconext.model.User;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static io.restassured.RestAssured.given;
 import static myconext.shibboleth.ShibbolethPreAuthenticatedProcessingFilter.*;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 
 @ActiveProfiles(value = "shib", inheritProfiles = false)
 public class ShibbolethPreAuthenticatedProcessingFilterTest extends AbstractIntegrationTest {
@@ -59,6 +63,33 @@ public class ShibbolethPreAuthenticatedProcessingFilterTest extends AbstractInte
         assertEquals("surfguest.nl", user.getSchacHomeOrganization());
     }
 
+    @Test
+    public void getPreAuthenticatedPrincipalConcurrentFirstLogins() {
+        String uid = UUID.randomUUID().toString();
+        Headers headers = headers(uid, "concurrent.doe@example.org", oneGiniEntityId);
+        IntStream.range(0, 8).parallel().forEach(i -> given()
+                .headers(headers)
+                .when()
+                .get("/myconext/api/sp/me")
+                .then()
+                .statusCode(200));
+
+        Query query = new Query(Criteria.where("uid").is(uid));
+        assertEquals(1, mongoTemplate.count(query, User.class));
+    }
+
+    @Test
+    public void principalCacheEvictedOnSave() {
+        User user = super.userRepository.findOneUserByEmail("jdoe@example.com");
+        assertEquals(user.getId(), shibbolethPrincipalCache.get(user.getUid(), () -> user).getId());
+        //Served from the cache
+        assertEquals(user.getId(), shibbolethPrincipalCache.get(user.getUid(), () -> null).getId());
+
+        userRepository.save(user);
+        User reloaded = shibbolethPrincipalCache.get(user.getUid(), () -> userRepository.findUserByUid(user.getUid()).get());
+        assertNotSame(user, reloaded);
+    }
+
     @Test
     public void getPreAuthenticatedPrincipalMissingAttributes() {
         Headers headers = headers(UUID.randomUUID().toString(), "steven.doe@example.org", oneGiniEntityId);
@@ -0,0 +1,136 @@
+package myconext.sms;
+
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import myconext.WireMockExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.exceptions.ServiceUnavailableException;
+import myconext.http.HttpClientFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Locale;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncSMSServiceTest {
+
+    @RegisterExtension
+    WireMockExtension mockServer = new WireMockExtension(8382);
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(2, 60_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AsyncSMSService smsService = new AsyncSMSService(smsServiceImpl(), 1, 10, 3, 10, 1000, circuitBreaker, meterRegistry);
+
+    private static SMSServiceImpl smsServiceImpl() {
+        return new SMSServiceImpl("http://localhost:8382/sms", "secret", new HttpClientFactory(new MockEnvironment()
+                .withProperty("http_clients.defaults.connect-timeout-millis", "500")
+                .withProperty("http_clients.defaults.read-timeout-millis", "500")
+                .withProperty("http_clients.defaults.max-connections", "2")
+                .withProperty("http_clients.defaults.max-concurrent-requests", "2")
+                .withProperty("http_clients.defaults.bulkhead-wait-millis", "0")
+                .withProperty("http_clients.defaults.idle-timeout-seconds", "30"), new SimpleMeterRegistry())
+                    .restTemplate("sms"));
+    }
+
+    @Test
+    void send() {
+        stubFor(post(urlPathMatching("/sms")).willReturn(aResponse().withStatus(200)));
+
+        String msg = smsService.send("31639115008", "123456", Locale.forLanguageTag("en"));
+        assertTrue(msg.contains("your verification code"));
+
+        await().until(() -> messages("sent") == 1L);
+        assertEquals(1L, messages("queued"));
+        assertEquals(1L, meterRegistry.timer("myconext.sms.latency").count());
+        verify(1, postRequestedFor(urlPathMatching("/sms")));
+    }
+
+    @Test
+    void sendWithRetry() {
+        stubFor(post(urlPathMatching("/sms")).inScenario("retry")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("available"));
+        stubFor(post(urlPathMatching("/sms")).inScenario("retry")
+                .whenScenarioStateIs("available")
+                .willReturn(aResponse().withStatus(200)));
+
+        smsService.send("31639115008", "123456", Locale.forLanguageTag("nl"));
+
+        await().until(() -> messages("sent") == 1L);
+        assertEquals(1L, (long) meterRegistry.counter("myconext.sms.retries").count());
+        verify(2, postRequestedFor(urlPathMatching("/sms")));
+    }
+
+    @Test
+    void sendWithClientErrorIsNotRetried() {
+        stubFor(post(urlPathMatching("/sms")).willReturn(aResponse().withStatus(400)));
+
+        smsService.send("31639115008", "123456", Locale.forLanguageTag("nl"));
+
+        await().until(() -> messages("failed") == 1L);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        verify(1, postRequestedFor(urlPathMatching("/sms")));
+    }
+
+    @Test
+    void circuitBreakerOpens() {
+        stubFor(post(urlPathMatching("/sms")).willReturn(aResponse().withStatus(500)));
+
+        smsService.send("31639115008", "123456", Locale.forLanguageTag("nl"));
+
+        await().until(() -> messages("circuit_open") == 1L);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(1.0, meterRegistry.get("myconext.sms.circuit.breaker").tag("state", "open").gauge().value());
+        verify(2, postRequestedFor(urlPathMatching("/sms")));
+
+        assertEquals(0L, messages("failed"));
+        assertThrows(ServiceUnavailableException.class, () -> smsService.send("31639115008", "123456", Locale.forLanguageTag("nl")));
+        assertEquals(1L, messages("rejected"));
+    }
+
+    @Test
+    void circuitBreakerHalfOpenQueuedMessagesWaitForTrial() throws Exception {
+        stubFor(post(urlPathMatching("/sms")).willReturn(aResponse().withStatus(200).withFixedDelay(250)));
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure();
+        SimpleMeterRegistry halfOpenMeterRegistry = new SimpleMeterRegistry();
+        AsyncSMSService halfOpenService = new AsyncSMSService(smsServiceImpl(), 3, 10, 1, 10, 5000, breaker, halfOpenMeterRegistry);
+        try {
+            for (int i = 0; i < 3; i++) {
+                halfOpenService.send("31639115008", "123456", Locale.forLanguageTag("nl"));
+            }
+            //Only the trial is sent while the circuit is half open, the other messages are sent after it closes
+            await().until(() -> messages(halfOpenMeterRegistry, "sent") == 3L);
+            assertEquals(0L, messages(halfOpenMeterRegistry, "failed"));
+            assertEquals(0L, messages(halfOpenMeterRegistry, "circuit_open"));
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            verify(3, postRequestedFor(urlPathMatching("/sms")));
+        } finally {
+            halfOpenService.destroy();
+        }
+    }
+
+    @Test
+    void circuitBreakerHalfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private long messages(String outcome) {
+        return messages(meterRegistry, outcome);
+    }
+
+    private static long messages(SimpleMeterRegistry meterRegistry, String outcome) {
+        return (long) meterRegistry.get("myconext.sms.messages").tag("outcome", outcome).counter().count();
+    }
+}
@@ -3,6 +3,7 @@ package myconext.sms;
 import myconext.WireMockExtension;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.web.client.RestTemplate;
 
 import java.util.Locale;
 
@@ -15,7 +16,7 @@ class SMSServiceTest {
     @RegisterExtension
     WireMockExtension mockServer = new WireMockExtension(8381);
 
-    private final SMSService smsService = new SMSServiceImpl("http://localhost:8381/sms", "secret");
+    private final SMSService smsService = new SMSServiceImpl("http://localhost:8381/sms", "secret", new RestTemplate());
 
     @Test
     void send() {
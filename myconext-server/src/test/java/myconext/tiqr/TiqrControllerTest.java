@@ -622,6 +622,13 @@ public class TiqrControllerTest extends AbstractIntegrationTest {
                 .get("/tiqr/poll-enrollment")
                 .as(String.class);
         assertEquals(EnrollmentStatus.PROCESSED.name(), enrollmentStatus);
+
+        enrollmentStatus = given()
+                .queryParam("enrollmentKey", enrollmentKey)
+                .queryParam("status", EnrollmentStatus.RETRIEVED.name())
+                .get("/tiqr/long-poll-enrollment")
+                .as(String.class);
+        assertEquals(EnrollmentStatus.PROCESSED.name(), enrollmentStatus);
     }
 
     private String decryptRegistrationSecret(String encryptedSecret) throws Exception {
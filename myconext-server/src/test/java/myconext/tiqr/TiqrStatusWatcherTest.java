@@ -0,0 +1,135 @@
+package myconext.tiqr;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class TiqrStatusWatcherTest {
+
+    private final TiqrStatusWatcher tiqrStatusWatcher = new TiqrStatusWatcher(null, 25, false, 4, 100);
+
+    @After
+    public void after() {
+        tiqrStatusWatcher.destroy();
+    }
+
+    @Test
+    public void immediate() throws Exception {
+        DeferredResult<String> deferredResult = tiqrStatusWatcher.await(() -> Optional.of("changed"), () -> "unchanged", "key");
+
+        assertEquals("changed", deferredResult.getResult());
+    }
+
+    @Test
+    public void signal() throws Exception {
+        AtomicInteger evaluations = new AtomicInteger();
+        AtomicReference<String> status = new AtomicReference<>();
+        DeferredResult<String> deferredResult = tiqrStatusWatcher.await(() -> {
+            evaluations.incrementAndGet();
+            return Optional.ofNullable(status.get());
+        }, () -> "unchanged", "key", "other");
+        assertFalse(deferredResult.hasResult());
+
+        //A signal without a status change keeps the request parked
+        tiqrStatusWatcher.signal("key");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> evaluations.get() == 2);
+        assertFalse(deferredResult.hasResult());
+
+        status.set("changed");
+        tiqrStatusWatcher.signal("nope");
+        assertFalse(deferredResult.hasResult());
+
+        tiqrStatusWatcher.signal("other");
+        await().atMost(5, TimeUnit.SECONDS).until(deferredResult::hasResult);
+        assertEquals("changed", deferredResult.getResult());
+    }
+
+    @Test
+    public void reEvaluate() throws Exception {
+        AtomicInteger evaluations = new AtomicInteger();
+        AtomicReference<String> status = new AtomicReference<>();
+        DeferredResult<String> deferredResult = tiqrStatusWatcher.await(() -> {
+            evaluations.incrementAndGet();
+            return Optional.ofNullable(status.get());
+        }, () -> "unchanged", "key", "other");
+
+        //The status is changed on another node, so there is no signal
+        status.set("changed");
+        tiqrStatusWatcher.reEvaluate();
+
+        await().atMost(5, TimeUnit.SECONDS).until(deferredResult::hasResult);
+        assertEquals("changed", deferredResult.getResult());
+        //The waiter is registered for two keys but only evaluated once by the initial call and once by the re-evaluation
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    public void signalDuringFirstEvaluation() throws Exception {
+        AtomicInteger evaluations = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicReference<String> status = new AtomicReference<>();
+        CountDownLatch firstEvaluationStarted = new CountDownLatch(1);
+        CountDownLatch signalled = new CountDownLatch(1);
+        //The status changes and is signalled after the first evaluation read the unchanged status
+        Thread signaller = new Thread(() -> {
+            try {
+                firstEvaluationStarted.await(5, TimeUnit.SECONDS);
+                status.set("changed");
+                tiqrStatusWatcher.signal("key");
+                signalled.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        signaller.start();
+
+        DeferredResult<String> deferredResult = tiqrStatusWatcher.await(() -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                String current = status.get();
+                if (evaluations.incrementAndGet() == 1) {
+                    firstEvaluationStarted.countDown();
+                    signalled.await(5, TimeUnit.SECONDS);
+                    //Give the signalled evaluation the chance to run concurrently
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+                return Optional.ofNullable(current);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }, () -> "unchanged", "key");
+        signaller.join();
+
+        //The signal is not lost, but evaluated after the first evaluation and never concurrently
+        await().atMost(5, TimeUnit.SECONDS).until(deferredResult::hasResult);
+        assertEquals("changed", deferredResult.getResult());
+        assertEquals(2, evaluations.get());
+        assertEquals(1, maxConcurrent.get());
+    }
+
+    @Test
+    public void reEvaluateWithChangeStream() throws Exception {
+        TiqrStatusWatcher changeStreamWatcher = new TiqrStatusWatcher(null, 25, true, 4, 100);
+        try {
+            AtomicReference<String> status = new AtomicReference<>();
+            DeferredResult<String> deferredResult = changeStreamWatcher.await(() -> Optional.ofNullable(status.get()), () -> "unchanged", "key");
+            status.set("changed");
+            changeStreamWatcher.reEvaluate();
+
+            TimeUnit.MILLISECONDS.sleep(250);
+            assertFalse(deferredResult.hasResult());
+        } finally {
+            changeStreamWatcher.destroy();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package myconext.tracing;
+
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class TracingTest {
+
+    private final List<Span> exported = new ArrayList<>();
+
+    @Test
+    public void spans() {
+        try (Span root = Tracing.startTrace("GET /saml/guest-idp/SSO", null, exported::add)) {
+            assertEquals(32, root.getTraceId().length());
+            try (Span child = Tracing.start("idp sso")) {
+                try (Span grandChild = Tracing.start("mongo UserRepository.findUserByEmail")) {
+                    assertEquals(grandChild, Tracing.current());
+                }
+                assertEquals(child, Tracing.current());
+            }
+            Tracing.start("saml sign").close();
+        }
+        assertFalse(Tracing.current().isRecording());
+        assertEquals(1, exported.size());
+
+        Span root = exported.get(0);
+        assertEquals(2, root.getChildren().size());
+        Span child = root.getChildren().get(0);
+        assertEquals("idp sso", child.getName());
+        assertEquals(root.getSpanId(), child.getParentSpanId());
+        assertEquals(root.getTraceId(), child.getChildren().get(0).getTraceId());
+        assertTrue(root.getDurationNanos() >= child.getDurationNanos());
+    }
+
+    @Test
+    public void noTrace() {
+        Span span = Tracing.start("mail magic_link");
+        assertFalse(span.isRecording());
+        span.tag("status", "200").close();
+        assertFalse(Tracing.current().isRecording());
+    }
+
+    @Test
+    public void traceparent() {
+        String traceparent = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+        try (Span root = Tracing.startTrace("GET /", traceparent, exported::add)) {
+            assertEquals("0af7651916cd43dd8448eb211c80319c", root.getTraceId());
+            assertEquals("b7ad6b7169203331", root.getParentSpanId());
+            assertEquals("00-0af7651916cd43dd8448eb211c80319c-" + root.getSpanId() + "-01", Tracing.traceparent(root));
+        }
+        try (Span root = Tracing.startTrace("GET /", "nope", exported::add)) {
+            assertNull(root.getParentSpanId());
+        }
+    }
+
+    @Test
+    public void continueTrace() {
+        try (Span root = Tracing.startTrace("PUT /myconext/api/idp/magic_link_request", null, exported::add)) {
+            CompletableFuture.runAsync(() -> {
+                try (Span span = Tracing.continueTrace(root, "smtp send")) {
+                    assertTrue(span.isRecording());
+                }
+            }).join();
+        }
+        assertEquals(2, exported.size());
+        Span async = exported.get(0);
+        Span root = exported.get(1);
+        assertEquals("smtp send", async.getName());
+        assertEquals(root.getTraceId(), async.getTraceId());
+        assertEquals(root.getSpanId(), async.getParentSpanId());
+        assertTrue(root.getChildren().isEmpty());
+    }
+
+    @Test
+    public void restTemplate() {
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.getInterceptors().add(new TracingClientHttpRequestInterceptor());
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo("https://manage.example.org/manage/api/internal/search/saml20_sp"))
+                .andExpect(header(Tracing.TRACEPARENT, org.hamcrest.Matchers.startsWith("00-")))
+                .andRespond(withSuccess());
+
+        try (Span root = Tracing.startTrace("GET /", null, exported::add)) {
+            restTemplate.exchange("https://manage.example.org/manage/api/internal/search/saml20_sp", HttpMethod.POST, null, Void.class);
+        }
+        server.verify();
+        Span http = exported.get(0).getChildren().get(0);
+        assertEquals("http POST manage.example.org/manage/api/internal/search/saml20_sp", http.getName());
+        assertEquals("200", http.getTags().get("status"));
+    }
+}
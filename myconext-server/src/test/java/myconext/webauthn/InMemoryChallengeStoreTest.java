@@ -0,0 +1,29 @@
+package myconext.webauthn;
+
+import myconext.model.Challenge;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryChallengeStoreTest {
+
+    @Test
+    void saveAndRemove() {
+        ChallengeStore challengeStore = new InMemoryChallengeStore(60);
+        challengeStore.save(new Challenge("token", "challenge", "jdoe@example.com"));
+        challengeStore.save(new Challenge("token", "replaced", "jdoe@example.com"));
+
+        Challenge challenge = challengeStore.remove("token").get();
+        assertEquals("replaced", challenge.getChallenge());
+        assertEquals("jdoe@example.com", challenge.getEmail());
+        //Only once
+        assertFalse(challengeStore.remove("token").isPresent());
+    }
+
+    @Test
+    void expired() {
+        ChallengeStore challengeStore = new InMemoryChallengeStore(0);
+        challengeStore.save(new Challenge("token", "challenge"));
+        assertFalse(challengeStore.remove("token").isPresent());
+    }
+}
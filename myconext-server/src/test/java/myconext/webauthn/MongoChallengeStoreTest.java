@@ -0,0 +1,79 @@
+package myconext.webauthn;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.Challenge;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MongoChallengeStoreTest extends AbstractIntegrationTest {
+
+    @Test
+    public void saveAndRemove() {
+        ChallengeStore challengeStore = new MongoChallengeStore(mongoTemplate, 60);
+        challengeStore.save(new Challenge("token", "challenge", "jdoe@example.com"));
+        challengeStore.save(new Challenge("token", "replaced", "jdoe@example.com"));
+        assertEquals(1L, mongoTemplate.count(new Query(), Challenge.class));
+
+        Challenge challenge = challengeStore.remove("token").get();
+        assertEquals("replaced", challenge.getChallenge());
+        assertEquals("jdoe@example.com", challenge.getEmail());
+        //Only once
+        assertFalse(challengeStore.remove("token").isPresent());
+        assertFalse(challengeStore.remove("nope").isPresent());
+    }
+
+    @Test
+    public void indexes() {
+        List<IndexInfo> indexInfo = mongoTemplate.indexOps(Challenge.class).getIndexInfo();
+        assertTrue(indexInfo.stream().anyMatch(index -> index.isIndexForFields(List.of("token")) && index.isUnique()));
+        assertTrue(indexInfo.stream().anyMatch(index -> index.getName().equals("created_ttl") && index.getExpireAfter().isPresent()));
+    }
+
+    @Test
+    public void expired() {
+        ChallengeStore challengeStore = new MongoChallengeStore(mongoTemplate, 0);
+        challengeStore.save(new Challenge("token", "challenge"));
+        //Not yet removed by the TTL monitor, but expired nonetheless
+        assertFalse(challengeStore.remove("token").isPresent());
+    }
+
+    @Test
+    public void acrossNodes() throws Exception {
+        ChallengeStore node1 = new MongoChallengeStore(mongoTemplate, 60);
+        ChallengeStore node2 = new MongoChallengeStore(mongoTemplate, 60);
+        node1.save(new Challenge("token", "challenge", "jdoe@example.com"));
+
+        //The finish of the ceremony on both nodes at the same time, only one of them gets the challenge
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Optional<Challenge>>> futures = IntStream.range(0, 2)
+                    .mapToObj(i -> executor.submit(() -> {
+                        start.await();
+                        return (i == 0 ? node1 : node2).remove("token");
+                    }))
+                    .collect(Collectors.toList());
+            start.countDown();
+            long removed = 0;
+            for (Future<Optional<Challenge>> future : futures) {
+                Optional<Challenge> challenge = future.get(10, TimeUnit.SECONDS);
+                if (challenge.isPresent()) {
+                    assertEquals("challenge", challenge.get().getChallenge());
+                    removed++;
+                }
+            }
+            assertEquals(1L, removed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -6,9 +6,14 @@ import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 import com.yubico.webauthn.data.exception.Base64UrlException;
 import myconext.AbstractIntegrationTest;
 import myconext.model.User;
+import myconext.model.WebAuthnCredential;
+import myconext.repository.WebAuthnCredentialRepository;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.Set;
@@ -18,7 +23,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class UserCredentialRepositoryTest extends AbstractIntegrationTest {
 
     @Autowired
-    private UserCredentialRepository userCredentialRepository;
+    private WebAuthnCredentialRepository webAuthnCredentialRepository;
 
     @Test
     public void getCredentialIdsForUsername() {
@@ -67,8 +72,72 @@ public class UserCredentialRepositoryTest extends AbstractIntegrationTest {
     }
 
     @Test
-    public void lookupAll() {
-        assertEquals(0, userCredentialRepository.lookupAll(null).size());
+    public void cachedCredentials() throws Base64UrlException {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        ByteArray userHandle = ByteArray.fromBase64Url(user.getUserHandle());
+        String credentialId = user.getPublicKeyCredentials().iterator().next().getIdentifier();
+        assertEquals(1, userCredentialRepository.getCredentialIdsForUsername("JDoe@example.com ").size());
+
+        user.setPublicKeyCredentials(new ArrayList<>());
+        userRepository.save(user);
+        //Served from the cache
+        assertEquals(1, userCredentialRepository.getCredentialIdsForUsername("jdoe@example.com").size());
+        assertTrue(userCredentialRepository.lookup(ByteArray.fromBase64Url(credentialId), userHandle).isPresent());
+
+        //The public key is never served from the cache, e.g. when the credentials were removed on another node
+        webAuthnCredentialRepository.deleteByUserId(user.getId());
+        assertFalse(userCredentialRepository.lookup(ByteArray.fromBase64Url(credentialId), userHandle).isPresent());
+
+        userCredentialRepository.invalidate(user);
+        assertEquals(0, userCredentialRepository.getCredentialIdsForUsername("jdoe@example.com").size());
+    }
+
+    @Test
+    public void lookupAll() throws Base64UrlException {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        String credentialId = user.getPublicKeyCredentials().iterator().next().getIdentifier();
+
+        Set<RegisteredCredential> registeredCredentials = userCredentialRepository.lookupAll(ByteArray.fromBase64Url(credentialId));
+        assertEquals(1, registeredCredentials.size());
+        assertEquals(user.getUserHandle(), registeredCredentials.iterator().next().getUserHandle().getBase64Url());
+
+        String base64url = Base64.getEncoder().encodeToString(new String("nope").getBytes());
+        assertEquals(0, userCredentialRepository.lookupAll(ByteArray.fromBase64Url(base64url)).size());
+    }
+
+    @Test
+    public void synchronize() throws Base64UrlException {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        ByteArray userHandle = ByteArray.fromBase64Url(user.getUserHandle());
+        String credentialId = user.getPublicKeyCredentials().iterator().next().getIdentifier();
+
+        //Warm the cache
+        assertEquals(1, userCredentialRepository.getCredentialIdsForUsername("jdoe@example.com").size());
+
+        user.setPublicKeyCredentials(new ArrayList<>());
+        userRepository.save(user);
+        userCredentialRepository.synchronize(user);
+
+        assertEquals(0, userCredentialRepository.lookupAll(ByteArray.fromBase64Url(credentialId)).size());
+        assertFalse(userCredentialRepository.lookup(ByteArray.fromBase64Url(credentialId), userHandle).isPresent());
+        //The cached credentials are invalidated
+        assertEquals(0, userCredentialRepository.getCredentialIdsForUsername("jdoe@example.com").size());
+    }
+
+    @Test
+    public void synchronizeKeepsExistingCredentials() throws Base64UrlException {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        String credentialId = user.getPublicKeyCredentials().iterator().next().getIdentifier();
+        String id = webAuthnCredentialRepository.findByCredentialId(credentialId).get().getId();
+
+        //Synchronizing twice - e.g. by two concurrent requests - does not duplicate or recreate the credential
+        userCredentialRepository.synchronize(user);
+        userCredentialRepository.synchronize(user);
+
+        assertEquals(id, webAuthnCredentialRepository.findByCredentialId(credentialId).get().getId());
+        assertEquals(1, userCredentialRepository.lookupAll(ByteArray.fromBase64Url(credentialId)).size());
+        assertEquals(user.getPublicKeyCredentials().size(), mongoTemplate.count(
+                Query.query(Criteria.where("userId").is(user.getId())), WebAuthnCredential.class));
     }
 
     @Test(expected = IllegalArgumentException.class)
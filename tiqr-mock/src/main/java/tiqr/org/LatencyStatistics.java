@@ -0,0 +1,59 @@
+package tiqr.org;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Collects the latencies of one operation of the load generator and reports throughput and percentiles
+ */
+public class LatencyStatistics {
+
+    private final String operation;
+    private final List<Long> latenciesNanos = new ArrayList<>();
+    private final LongAdder failures = new LongAdder();
+
+    public LatencyStatistics(String operation) {
+        this.operation = operation;
+    }
+
+    public synchronized void record(long latencyNanos) {
+        latenciesNanos.add(latencyNanos);
+    }
+
+    public void failure() {
+        failures.increment();
+    }
+
+    public synchronized int count() {
+        return latenciesNanos.size();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    public synchronized double percentileMillis(double percentile) {
+        if (latenciesNanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(latenciesNanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1_000_000D;
+    }
+
+    public String report(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        int count = count();
+        return String.format("%-25s count %6d, failures %5d, throughput %8.2f/s, p50 %8.2f ms, p99 %8.2f ms",
+                operation,
+                count,
+                failures(),
+                elapsedSeconds == 0 ? 0 : count / elapsedSeconds,
+                percentileMillis(50),
+                percentileMillis(99));
+    }
+}
@@ -0,0 +1,253 @@
+package tiqr.org;
+
+import myconext.http.HttpClientFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.*;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+import tiqr.org.model.Authentication;
+import tiqr.org.secure.Challenge;
+import tiqr.org.secure.OCRA;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/*
+ * Headless load generator which simulates virtual Tiqr devices. First all devices enroll - which provisions a user
+ * through the Shibboleth headers of the /tiqr/sp endpoints - and then authentications are started and answered at
+ * the configured rate. The OCRA responses are computed with the secret the device registered, just like the app does.
+ *
+ * Run with --load_generator.enabled=true --spring.main.web-application-type=none against an eduID server which
+ * accepts the Shibboleth headers directly, e.g. a local or test instance.
+ */
+@Component
+@ConditionalOnProperty(name = "load_generator.enabled", havingValue = "true")
+@SuppressWarnings("unchecked")
+public class LoadGenerator implements ApplicationRunner {
+
+    private static final Log LOG = LogFactory.getLog(LoadGenerator.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final String eduIDBaseUrl;
+    private final int devices;
+    private final int concurrency;
+    private final double ratePerSecond;
+    private final int durationSeconds;
+    private final RestTemplate restTemplate;
+
+    private final LatencyStatistics startEnrollment = new LatencyStatistics("GET /tiqr/sp/start-enrollment");
+    private final LatencyStatistics metaData = new LatencyStatistics("GET /tiqr/metadata");
+    private final LatencyStatistics enrollment = new LatencyStatistics("POST /tiqr/enrollment");
+    private final LatencyStatistics finishRegistration = new LatencyStatistics("GET /tiqr/sp/generate-backup-code");
+    private final LatencyStatistics startAuthentication = new LatencyStatistics("POST /tiqr/sp/start-authentication");
+    private final LatencyStatistics authentication = new LatencyStatistics("POST /tiqr/authentication");
+
+    @Autowired
+    public LoadGenerator(MongoTemplate mongoTemplate,
+                         @Value("${eduid.base_url}") String eduIDBaseUrl,
+                         @Value("${load_generator.devices}") int devices,
+                         @Value("${load_generator.concurrency}") int concurrency,
+                         @Value("${load_generator.rate_per_second}") double ratePerSecond,
+                         @Value("${load_generator.duration_seconds}") int durationSeconds,
+                         HttpClientFactory httpClientFactory) {
+        this.mongoTemplate = mongoTemplate;
+        this.eduIDBaseUrl = eduIDBaseUrl;
+        this.devices = devices;
+        this.concurrency = concurrency;
+        this.ratePerSecond = ratePerSecond;
+        this.durationSeconds = durationSeconds;
+        //Every worker has its own connection, see http_clients.load_generator
+        this.restTemplate = httpClientFactory.restTemplate("load_generator");
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            String runId = Long.toString(System.currentTimeMillis(), 36);
+            List<VirtualDevice> virtualDevices = Collections.synchronizedList(new ArrayList<>());
+
+            LOG.info(String.format("Enrolling %s virtual devices at %s/s against %s", devices, ratePerSecond, eduIDBaseUrl));
+            long start = System.nanoTime();
+            runAtRate(scheduler, workers, devices, i -> enroll(runId, i).ifPresent(virtualDevices::add));
+            report(System.nanoTime() - start, startEnrollment, metaData, enrollment, finishRegistration);
+
+            if (virtualDevices.isEmpty()) {
+                LOG.error("No virtual device enrolled successfully, skipping authentications");
+                return;
+            }
+            int authentications = (int) (ratePerSecond * durationSeconds);
+            LOG.info(String.format("Running %s authentications for %s virtual devices at %s/s", authentications, virtualDevices.size(), ratePerSecond));
+            start = System.nanoTime();
+            runAtRate(scheduler, workers, authentications, i -> authenticate(virtualDevices.get(i % virtualDevices.size())));
+            report(System.nanoTime() - start, startAuthentication, authentication);
+        } finally {
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private void runAtRate(ScheduledExecutorService scheduler, ExecutorService workers, int total, IntConsumer task) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(total);
+        AtomicInteger next = new AtomicInteger();
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(() -> {
+            int i = next.getAndIncrement();
+            if (i < total) {
+                workers.execute(() -> {
+                    try {
+                        task.accept(i);
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+        latch.await();
+        future.cancel(false);
+    }
+
+    private Optional<VirtualDevice> enroll(String runId, int index) {
+        String uid = String.format("tiqr-load-%s-%s", runId, index);
+        HttpHeaders shibbolethHeaders = new HttpHeaders();
+        shibbolethHeaders.add("uid", uid);
+        shibbolethHeaders.add("schacHomeOrganization", "example.org");
+        shibbolethHeaders.add("Shib-InetOrgPerson-mail", uid + "@example.org");
+        shibbolethHeaders.add("Shib-givenName", "Virtual");
+        shibbolethHeaders.add("Shib-surName", "Device " + index);
+        try {
+            Map<String, String> enrollmentResult = timed(startEnrollment, () -> restTemplate.exchange(
+                    new RequestEntity<>(shibbolethHeaders, HttpMethod.GET, URI.create(eduIDBaseUrl + "/tiqr/sp/start-enrollment")),
+                    Map.class).getBody());
+            String enrollmentKey = enrollmentResult.get("enrollmentKey");
+
+            Map<String, Object> metaDataResult = timed(metaData, () -> restTemplate.getForEntity(
+                    String.format("%s/tiqr/metadata?enrollment_key=%s", eduIDBaseUrl, enrollmentKey), Map.class).getBody());
+            String userId = (String) ((Map<String, Object>) metaDataResult.get("identity")).get("identifier");
+            String enrollmentUrl = (String) ((Map<String, Object>) metaDataResult.get("service")).get("enrollmentUrl");
+            String enrollmentSecret = UriComponentsBuilder.fromUriString(enrollmentUrl).build().getQueryParams().getFirst("enrollment_secret");
+
+            String secret = Challenge.generateSessionKey();
+            MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
+            map.add("userId", userId);
+            map.add("secret", secret);
+            map.add("language", "en");
+            map.add("notificationType", "APNS");
+            map.add("notificationAddress", "1234567890");
+            map.add("version", "2");
+            map.add("operation", "register");
+            timed(enrollment, () -> expectOk(postForm(String.format("%s/tiqr/enrollment?enrollment_secret=%s", eduIDBaseUrl, enrollmentSecret), map)));
+
+            timed(finishRegistration, () -> restTemplate.exchange(
+                    new RequestEntity<>(shibbolethHeaders, HttpMethod.GET, URI.create(eduIDBaseUrl + "/tiqr/sp/generate-backup-code")),
+                    Map.class).getBody());
+
+            return Optional.of(new VirtualDevice(shibbolethHeaders, userId, secret));
+        } catch (RuntimeException e) {
+            LOG.warn(String.format("Enrollment of virtual device %s failed: %s", uid, e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    private void authenticate(VirtualDevice virtualDevice) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.addAll(virtualDevice.shibbolethHeaders);
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            Map<String, Object> authenticationResult = timed(startAuthentication, () -> restTemplate.exchange(
+                    new RequestEntity<>(Collections.emptyMap(), headers, HttpMethod.POST, URI.create(eduIDBaseUrl + "/tiqr/sp/start-authentication")),
+                    Map.class).getBody());
+            String sessionKey = (String) authenticationResult.get("sessionKey");
+            String challenge = challenge((String) authenticationResult.get("url"), sessionKey);
+            String ocra = OCRA.generateOCRA(virtualDevice.secret, challenge, sessionKey);
+
+            MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
+            map.add("sessionKey", sessionKey);
+            map.add("userId", virtualDevice.userId);
+            map.add("response", ocra);
+            map.add("language", "en");
+            map.add("operation", "login");
+            map.add("notificationType", "APNS");
+            map.add("notificationAddress", "1234567890");
+            timed(authentication, () -> expectOk(postForm(eduIDBaseUrl + "/tiqr/authentication", map)));
+        } catch (RuntimeException e) {
+            LOG.debug(String.format("Authentication of virtual device %s failed: %s", virtualDevice.userId, e.getMessage()));
+        }
+    }
+
+    /*
+     * The app reads the challenge from the authentication URL in the QR code. Fall back to the database if the URL
+     * format changes.
+     */
+    private String challenge(String authenticationUrl, String sessionKey) {
+        String challenge = UriComponentsBuilder.fromUriString(authenticationUrl).build().getQueryParams().getFirst("q");
+        if (StringUtils.hasText(challenge)) {
+            return challenge;
+        }
+        Document document = AnnotationUtils.findAnnotation(Authentication.class, Document.class);
+        Query query = new Query(Criteria.where("sessionKey").is(sessionKey));
+        return mongoTemplate.findOne(query, Authentication.class, document.collection()).getChallenge();
+    }
+
+    private String postForm(String url, MultiValueMap<String, String> map) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        return restTemplate.exchange(new RequestEntity<>(map, headers, HttpMethod.POST, URI.create(url)), String.class).getBody();
+    }
+
+    private String expectOk(String body) {
+        if (!"OK".equals(body)) {
+            throw new IllegalStateException("Unexpected response " + body);
+        }
+        return body;
+    }
+
+    private <T> T timed(LatencyStatistics statistics, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            statistics.record(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            statistics.failure();
+            throw e;
+        }
+    }
+
+    private void report(long elapsedNanos, LatencyStatistics... statistics) {
+        Arrays.stream(statistics).forEach(s -> LOG.info(s.report(elapsedNanos)));
+    }
+
+    private static class VirtualDevice {
+
+        private final HttpHeaders shibbolethHeaders;
+        private final String userId;
+        private final String secret;
+
+        private VirtualDevice(HttpHeaders shibbolethHeaders, String userId, String secret) {
+            this.shibbolethHeaders = shibbolethHeaders;
+            this.userId = userId;
+            this.secret = secret;
+        }
+    }
+}
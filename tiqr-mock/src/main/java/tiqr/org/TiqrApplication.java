@@ -1,9 +1,13 @@
 package tiqr.org;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import myconext.http.HttpClientFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
 
 @SpringBootApplication(exclude = {ManagementWebSecurityAutoConfiguration.class, SecurityAutoConfiguration.class})
 public class TiqrApplication {
@@ -12,4 +16,9 @@ public class TiqrApplication {
 		SpringApplication.run(TiqrApplication.class, args);
 	}
 
+	@Bean
+	public HttpClientFactory httpClientFactory(Environment environment, MeterRegistry meterRegistry) {
+		return new HttpClientFactory(environment, meterRegistry);
+	}
+
 }
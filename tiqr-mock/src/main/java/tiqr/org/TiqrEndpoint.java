@@ -1,5 +1,6 @@
 package tiqr.org;
 
+import myconext.http.HttpClientFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,11 +46,12 @@ public class TiqrEndpoint {
     public TiqrEndpoint(MongoTemplate mongoTemplate,
                         @Value("${eduid.base_url}") String eduIDBaseUrl,
                         @Value("${environment}") String environment,
-                        @Value("${encryption_secret}") String encryptionSecret) {
+                        @Value("${encryption_secret}") String encryptionSecret,
+                        HttpClientFactory httpClientFactory) {
         this.mongoTemplate = mongoTemplate;
         this.eduIDBaseUrl = eduIDBaseUrl;
         this.environment = environment;
-        this.restTemplate = new RestTemplate();
+        this.restTemplate = httpClientFactory.restTemplate("eduid");
         this.secretCipher = new SecretCipher(encryptionSecret);
 
     }
@@ -0,0 +1,33 @@
+package tiqr.org;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyStatisticsTest {
+
+    @Test
+    void percentiles() {
+        LatencyStatistics statistics = new LatencyStatistics("test");
+        LongStream.rangeClosed(1, 100).forEach(i -> statistics.record(TimeUnit.MILLISECONDS.toNanos(i)));
+        statistics.failure();
+
+        assertEquals(50D, statistics.percentileMillis(50));
+        assertEquals(99D, statistics.percentileMillis(99));
+        assertEquals(1L, statistics.failures());
+
+        String report = statistics.report(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(report.contains("count    100"));
+        assertTrue(report.contains("throughput    10.00/s"));
+    }
+
+    @Test
+    void empty() {
+        LatencyStatistics statistics = new LatencyStatistics("test");
+        assertEquals(0D, statistics.percentileMillis(99));
+    }
+}